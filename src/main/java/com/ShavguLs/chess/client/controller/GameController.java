@@ -6,10 +6,14 @@ import com.ShavguLs.chess.common.logic.*;
 import com.ShavguLs.chess.client.view.GameWindow;
 
 import javax.swing.*;
+import java.util.List;
 
 // Make sure it implements the listener interface
 public class GameController implements ServerUpdateListener {
 
+    // How often the running clock's display is redrawn; the clock itself does not depend on it
+    private static final int CLOCK_REFRESH_MS = 200;
+
     // --- Fields for both Local and Online games ---
     private Board logicBoard;
     private boolean isWhiteTurn;
@@ -33,6 +37,12 @@ public class GameController implements ServerUpdateListener {
     private NetworkClient networkClient;
     private boolean isOnlineGame = false;
     private boolean isPlayerWhite; // What color am I in an online game?
+    // Last clock readings from the server and when they arrived; the display counts down from them
+    private long serverWhiteMillis;
+    private long serverBlackMillis;
+    private boolean whiteClockRunning;
+    private boolean blackClockRunning;
+    private long clocksReceivedNanos;
 
     // ======================================================================
     // --- CONSTRUCTOR 1: FOR LOCAL GAMES (Your Original Constructor) ---
@@ -163,13 +173,17 @@ public class GameController implements ServerUpdateListener {
             boolean wasPawnMove = selectedPiece instanceof Pawn;
             boolean isCastling = selectedPiece instanceof King && Math.abs(destCol - srcCol) == 2;
 
+            List<Integer> legalMovesBefore = logicBoard.generateLegalMoves(isWhiteTurn);
             boolean moveWasSuccessful = logicBoard.attemptMove(srcRow, srcCol, destRow, destCol, isWhiteTurn, promotionChoice);
 
             if (moveWasSuccessful) {
+                switchClocks(isWhiteTurn);
                 this.isWhiteTurn = logicBoard.isWhiteTurn();
                 String moveNotation = generateMoveNotation(selectedPiece, srcRow, srcCol, destRow, destCol,
-                        wasCapture, isCastling, logicBoard.getPieceAt(destRow, destCol));
+                        wasCapture, isCastling, promotionChoice, legalMovesBefore);
                 moveTracker.addMove(moveNotation);
+                moveTracker.addMoveCode(MoveCodec.encode(srcRow, srcCol, destRow, destCol,
+                        promotionChoice != null ? promotionChoice.getFenChar() : ' '));
                 moveTracker.updateMoveCounter(wasCapture, wasPawnMove);
                 moveTracker.addPosition(logicBoard.generatePositionString());
                 checkGameEndingConditions();
@@ -216,12 +230,14 @@ public class GameController implements ServerUpdateListener {
 
     private String generateMoveNotation(Piece piece, int srcRow, int srcCol,
                                         int destRow, int destCol, boolean wasCapture,
-                                        boolean isCastling, Piece promotedPiece) {
-        boolean causesCheck = logicBoard.isKingInCheck(!isWhiteTurn);
-        boolean causesCheckmate = causesCheck && !logicBoard.hasLegalMoves(!isWhiteTurn);
+                                        boolean isCastling, Piece promotedPiece,
+                                        List<Integer> legalMovesBefore) {
+        // isWhiteTurn already belongs to the side that has to answer the move
+        boolean causesCheck = logicBoard.isKingInCheck(isWhiteTurn);
+        boolean causesCheckmate = causesCheck && !logicBoard.hasLegalMoves(isWhiteTurn);
         return MoveConverter.convertMoveToNotation(piece, srcRow, srcCol, destRow, destCol,
                 logicBoard, wasCapture, causesCheck,
-                causesCheckmate, isCastling, promotedPiece);
+                causesCheckmate, isCastling, promotedPiece, legalMovesBefore);
     }
 
     private void checkGameEndingConditions() {
@@ -255,29 +271,35 @@ public class GameController implements ServerUpdateListener {
                 timer.stop();
                 timer = null;
             }
+            if (whiteClock != null) {
+                long now = System.nanoTime();
+                whiteClock.halt(now);
+                blackClock.halt(now);
+            }
         }
     }
 
     public void startTimer() {
         stopTimer();
         synchronized (timerLock) {
-            timer = new Timer(1000, e -> {
+            (isWhiteTurn ? whiteClock : blackClock).start(System.nanoTime());
+            // The clocks run on timestamps; the timer only redraws the running one and notices the flag
+            timer = new Timer(CLOCK_REFRESH_MS, e -> {
                 synchronized (timerLock) {
                     if (timer == null) return;
+                    Clock running = isWhiteTurn ? whiteClock : blackClock;
+                    long now = System.nanoTime();
+                    String time = Clock.formatTime(running.remainingMillis(now));
                     if (isWhiteTurn) {
-                        whiteClock.decr();
-                        SwingUtilities.invokeLater(() -> gameWindow.updateWhiteClock(whiteClock.getTime()));
-                        if (whiteClock.outOfTime()) {
-                            pgnManager.setResult("0-1");
-                            SwingUtilities.invokeLater(() -> gameWindow.timeOut(true));
-                        }
+                        gameWindow.updateWhiteClock(time);
                     } else {
-                        blackClock.decr();
-                        SwingUtilities.invokeLater(() -> gameWindow.updateBlackClock(blackClock.getTime()));
-                        if (blackClock.outOfTime()) {
-                            pgnManager.setResult("1-0");
-                            SwingUtilities.invokeLater(() -> gameWindow.timeOut(false));
-                        }
+                        gameWindow.updateBlackClock(time);
+                    }
+                    if (running.remainingNanos(now) <= 0) {
+                        stopTimer();
+                        pgnManager.setResult(isWhiteTurn ? "0-1" : "1-0");
+                        boolean whiteTimedOut = isWhiteTurn;
+                        SwingUtilities.invokeLater(() -> gameWindow.timeOut(whiteTimedOut));
                     }
                 }
             });
@@ -285,6 +307,25 @@ public class GameController implements ServerUpdateListener {
         }
     }
 
+    // After a local move: charge the mover, credit any increment, and start the opponent's clock
+    private void switchClocks(boolean whiteMoved) {
+        if (whiteClock == null) {
+            return;
+        }
+        synchronized (timerLock) {
+            if (timer == null) return;
+            long now = System.nanoTime();
+            Clock mover = whiteMoved ? whiteClock : blackClock;
+            mover.stop(now);
+            (whiteMoved ? blackClock : whiteClock).start(now);
+            if (whiteMoved) {
+                gameWindow.updateWhiteClock(mover.getTime());
+            } else {
+                gameWindow.updateBlackClock(mover.getTime());
+            }
+        }
+    }
+
 
     // --- Getters ---
     public Board getLogicBoard() { return logicBoard; }
@@ -322,8 +363,8 @@ public class GameController implements ServerUpdateListener {
     }
 
     @Override
-    public void onGameStateUpdate(String fen) {
-        logicBoard.loadFen(fen);
+    public void onBoardUpdate(Board board) {
+        this.logicBoard = board;
         this.isWhiteTurn = logicBoard.isWhiteTurn();
         this.selectedPiece = null;
         gameWindow.getChessBoardPanel().repaint();
@@ -347,13 +388,41 @@ public class GameController implements ServerUpdateListener {
     }
 
     @Override
-    public void onClockUpdate(String whiteTime, String blackTime) {
-        if (isOnlineGame) {
-            gameWindow.updateWhiteClock(whiteTime);
-            gameWindow.updateBlackClock(blackTime);
+    public void onClockUpdate(long whiteMillis, long blackMillis, boolean whiteRunning, boolean blackRunning) {
+        if (!isOnlineGame) {
+            return;
+        }
+        serverWhiteMillis = whiteMillis;
+        serverBlackMillis = blackMillis;
+        whiteClockRunning = whiteRunning;
+        blackClockRunning = blackRunning;
+        clocksReceivedNanos = System.nanoTime();
+        showOnlineClocks();
+        if (whiteRunning || blackRunning) {
+            startOnlineClockDisplay();
+        } else {
+            stopTimer();
         }
     }
 
+    // The server only sends clocks once per move, so the running one is counted down here in between
+    private void startOnlineClockDisplay() {
+        synchronized (timerLock) {
+            if (timer == null) {
+                timer = new Timer(CLOCK_REFRESH_MS, e -> showOnlineClocks());
+                timer.start();
+            }
+        }
+    }
+
+    private void showOnlineClocks() {
+        long elapsed = (System.nanoTime() - clocksReceivedNanos) / 1_000_000;
+        long white = whiteClockRunning ? Math.max(0, serverWhiteMillis - elapsed) : serverWhiteMillis;
+        long black = blackClockRunning ? Math.max(0, serverBlackMillis - elapsed) : serverBlackMillis;
+        gameWindow.updateWhiteClock(Clock.formatTime(white));
+        gameWindow.updateBlackClock(Clock.formatTime(black));
+    }
+
     @Override
     public void onReceivePgn(String pgn) {
         if (isOnlineGame) {
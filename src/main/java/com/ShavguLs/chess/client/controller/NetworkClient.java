@@ -1,23 +1,44 @@
 package com.ShavguLs.chess.client.controller;
 
 import com.ShavguLs.chess.common.MoveObject;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import com.ShavguLs.chess.common.protocol.Compression;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
 
 import javax.swing.*;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 public class NetworkClient implements Runnable {
 
+    // How long to keep trying to get back into a game after the connection drops; the server holds the seat as long
+    private static final long RESUME_WINDOW_MS = 30_000;
+    private static final long RESUME_RETRY_MS = 1000;
+
     private final String serverAddress;
     private final int serverPort;
     private final ServerUpdateListener listener;
-    private ObjectOutputStream out;
-    private Socket socket;
+    private OutputStream out;
+    // Replaced when the server redirects the game to another cluster node
+    private volatile Socket socket;
     private String playerNickname; // Store the player's nickname
+    // Players are only paired with others who asked for the same time control
+    private String timeControl = "10+0";
+    // Only touched on the Swing thread, like the rest of handleServerMessage
+    private final RemoteBoard remoteBoard = new RemoteBoard();
+    // Reader thread state for resuming: the token from Welcome, the moves received so far, and when the connection dropped
+    private String resumeToken;
+    private int movesReceived = -1;
+    private boolean gameOver;
+    private long droppedNanos;
 
     public NetworkClient(String serverAddress, int serverPort, ServerUpdateListener listener) {
         this.serverAddress = serverAddress;
@@ -29,6 +50,10 @@ public class NetworkClient implements Runnable {
         this.playerNickname = nickname;
     }
 
+    public void setTimeControl(String timeControl) {
+        this.timeControl = timeControl;
+    }
+
     public String getPlayerNickname() {
         return this.playerNickname;
     }
@@ -41,16 +66,12 @@ public class NetworkClient implements Runnable {
         try {
             socket = new Socket(serverAddress, serverPort);
 
-            // First, send a plain text line to identify this connection as a game player
-            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-            writer.println("PLAY_CHESS");
-            writer.flush();
-
-            // IMPORTANT
-            Thread.sleep(100);
-
-            // Set up the object stream for sending game objects
-            out = new ObjectOutputStream(socket.getOutputStream());
+            // First, send a plain text line to identify this connection as a game player.
+            // The time control and nickname let the server pick an opponent of similar strength.
+            // Everything after it is binary message frames, so there is no stream header to wait for.
+            out = socket.getOutputStream();
+            String nickname = playerNickname != null ? playerNickname : "";
+            out.write((Compression.ACCEPT_PREFIX + "PLAY_CHESS:" + timeControl + ":" + nickname + "\n").getBytes(StandardCharsets.UTF_8));
             out.flush();
 
             new Thread(this).start(); // Start the listener thread
@@ -61,34 +82,115 @@ public class NetworkClient implements Runnable {
         } catch (IOException e) {
             SwingUtilities.invokeLater(() -> listener.onNetworkError("Connection failed: Could not connect to server at '" + serverAddress + ":" + serverPort + "'"));
             return false;
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         }
     }
 
     /**
      * This is the heart of the client's listening mechanism.
-     * It runs in a separate thread and continuously waits for objects from the server.
+     * It runs in a separate thread and continuously waits for messages from the server.
      */
     @Override
     public void run() {
-        try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
             while (!socket.isClosed()) {
-                Object serverMessage = in.readObject();
+                Message serverMessage;
+                try {
+                    serverMessage = MessageCodec.read(in);
+                } catch (IOException e) {
+                    DataInputStream resumed = resume();
+                    if (resumed == null) {
+                        throw e;
+                    }
+                    in = resumed;
+                    continue;
+                }
+                track(serverMessage);
 
                 // Handle nickname request immediately in this thread
-                if (serverMessage instanceof String && serverMessage.equals("REQUEST_NICKNAME")) {
+                if (serverMessage instanceof Message.RequestNickname) {
                     sendNickname();
+                } else if (serverMessage instanceof Message.Redirect redirect) {
+                    in = followRedirect(redirect);
                 } else {
                     // Other messages go to the UI thread
                     SwingUtilities.invokeLater(() -> handleServerMessage(serverMessage));
                 }
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             if (!socket.isClosed()) {
                 SwingUtilities.invokeLater(() -> listener.onNetworkError("Lost connection to server."));
             }
+        } finally {
+            disconnect();
+        }
+    }
+
+    // Remembers what a resume needs, as messages arrive
+    private void track(Message message) {
+        switch (message) {
+            case Message.Welcome welcome -> resumeToken = welcome.resumeToken();
+            case Message.Snapshot snapshot -> movesReceived = MoveCodec.moveCount(snapshot.moves());
+            case Message.MoveMade update -> movesReceived = update.seq();
+            case Message.GameOver over -> gameOver = true;
+            case Message.GameNotFound notFound -> gameOver = true; // Too late to resume
+            default -> { }
+        }
+        if (message instanceof Message.Snapshot || message instanceof Message.MoveMade || message instanceof Message.ClockUpdate) {
+            droppedNanos = 0; // The game is flowing again
+        }
+    }
+
+    /**
+     * After the connection dropped mid-game, reconnects to the same server and asks for
+     * the moves missed since the last one received. Keeps trying for RESUME_WINDOW_MS.
+     * @return The new connection's stream, or null if the game can not be resumed.
+     */
+    private DataInputStream resume() {
+        if (resumeToken == null || gameOver || socket.isClosed()) {
+            return null; // Not in a game, or the player closed the connection
+        }
+        if (droppedNanos == 0) {
+            droppedNanos = System.nanoTime();
+            System.out.println("Connection lost, trying to resume the game...");
+        }
+        String host = socket.getInetAddress().getHostAddress();
+        int port = socket.getPort();
+        while (System.nanoTime() - droppedNanos < TimeUnit.MILLISECONDS.toNanos(RESUME_WINDOW_MS)) {
+            try {
+                return reconnect(host, port, "RESUME_GAME:" + resumeToken + ":" + movesReceived);
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(RESUME_RETRY_MS);
+                } catch (InterruptedException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves to the cluster node that hosts the game: connects there, sends the command
+     * line the redirect names and returns the new connection's stream.
+     */
+    private DataInputStream followRedirect(Message.Redirect redirect) throws IOException {
+        return reconnect(redirect.host(), redirect.port(), redirect.command());
+    }
+
+    private DataInputStream reconnect(String host, int port, String command) throws IOException {
+        Socket moved = new Socket(host, port);
+        OutputStream movedOut = moved.getOutputStream();
+        movedOut.write((Compression.ACCEPT_PREFIX + command + "\n").getBytes(StandardCharsets.UTF_8));
+        movedOut.flush();
+        Socket old;
+        synchronized (this) {
+            old = socket;
+            socket = moved;
+            out = movedOut;
         }
+        old.close();
+        return new DataInputStream(new BufferedInputStream(moved.getInputStream()));
     }
 
     /**
@@ -96,12 +198,8 @@ public class NetworkClient implements Runnable {
      */
     private void sendNickname() {
         try {
-            if (playerNickname != null && !playerNickname.isEmpty()) {
-                out.writeObject(playerNickname);
-            } else {
-                out.writeObject("Anonymous");
-            }
-            out.flush();
+            String nickname = playerNickname != null && !playerNickname.isEmpty() ? playerNickname : "Anonymous";
+            send(new Message.Nickname(nickname));
         } catch (IOException e) {
             System.err.println("Failed to send nickname: " + e.getMessage());
         }
@@ -113,13 +211,28 @@ public class NetworkClient implements Runnable {
      */
     public void sendMove(MoveObject move) {
         try {
-            out.writeObject(move);
-            out.flush();
+            int code = MoveCodec.encode(move.startRow(), move.startCol(), move.endRow(), move.endCol(), move.promotionPiece());
+            send(new Message.Move(code));
         } catch (IOException e) {
             listener.onNetworkError("Failed to send move: " + e.getMessage());
         }
     }
 
+    // Asks the server for a full snapshot after a missed or mismatched move update
+    private void requestResync() {
+        try {
+            send(new Message.ResyncRequest());
+        } catch (IOException e) {
+            listener.onNetworkError("Failed to request game state: " + e.getMessage());
+        }
+    }
+
+    // The listener thread (nickname) and the UI thread (moves) both send
+    private synchronized void send(Message message) throws IOException {
+        out.write(MessageCodec.encode(message));
+        out.flush();
+    }
+
     /**
      * Disconnects from the server gracefully.
      */
@@ -136,31 +249,32 @@ public class NetworkClient implements Runnable {
     /**
      * A helper method to process messages received from the server.
      */
-    private void handleServerMessage(Object message) {
-        if (message instanceof String) {
-            String text = (String) message;
-
-            if (text.startsWith("FEN:")) {
-                listener.onGameStateUpdate(text.substring(4));
-            } else if (text.startsWith("WELCOME:")) {
-                String[] parts = text.substring(8).split(":", 2);
-                String color = parts[0];
-                String opponentName = parts.length > 1 ? parts[1] : "Opponent";
-                listener.onGameStart(color, opponentName);
-            } else if (text.startsWith("GAMEOVER:")) {
-                listener.onGameOver(text.substring(9));
-            } else if (text.startsWith("INVALID_MOVE:")) {
-                listener.onInvalidMove(text.substring(13));
-            } else if (text.startsWith("CLOCK_UPDATE:")) {
-                String[] parts = text.substring(13).split(";");
-                if (parts.length == 2) {
-                    listener.onClockUpdate(parts[0], parts[1]);
+    private void handleServerMessage(Message message) {
+        switch (message) {
+            case Message.Snapshot snapshot -> {
+                try {
+                    remoteBoard.applySnapshot(snapshot);
+                    listener.onBoardUpdate(remoteBoard.getBoard());
+                } catch (IllegalMoveException e) {
+                    listener.onNetworkError("Received an invalid game snapshot: " + e.getMessage());
+                }
+            }
+            case Message.MoveMade update -> {
+                boolean wasInSync = remoteBoard.isInSync();
+                if (remoteBoard.applyMove(update)) {
+                    listener.onBoardUpdate(remoteBoard.getBoard());
+                } else if (wasInSync) {
+                    requestResync();
                 }
-            } else if (text.startsWith("FINAL_PGN:")) {
-                listener.onReceivePgn(text.substring(10));
-            } else {
-                System.out.println("Server says: " + text);
             }
+            case Message.Welcome welcome -> listener.onGameStart(welcome.white() ? "WHITE" : "BLACK", welcome.opponent());
+            case Message.GameOver gameOver -> listener.onGameOver(gameOver.result());
+            case Message.InvalidMove invalidMove -> listener.onInvalidMove(invalidMove.reason());
+            case Message.ClockUpdate clocks -> listener.onClockUpdate(clocks.whiteMillis(), clocks.blackMillis(),
+                    clocks.whiteRunning(), clocks.blackRunning());
+            case Message.FinalPgn finalPgn -> listener.onReceivePgn(finalPgn.pgn());
+            case Message.ServerError error -> System.out.println("Server says: " + error.text());
+            default -> System.out.println("Unexpected message from server: " + message);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.ShavguLs.chess.client.controller;
+
+import com.ShavguLs.chess.common.logic.Board;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import com.ShavguLs.chess.common.logic.Zobrist;
+import com.ShavguLs.chess.common.protocol.Message;
+
+/**
+ * The client's copy of a game played on the server.
+ * It starts from a Snapshot and then applies each MoveMade update to the same Board,
+ * so a move costs one attemptMove instead of rebuilding the board from a FEN string.
+ * If an update arrives out of sequence, or the resulting position does not match the
+ * server's hash, the copy is marked out of date and the caller should ask for a snapshot.
+ */
+public class RemoteBoard {
+
+    private Board board = new Board();
+    // Moves applied so far, or -1 while waiting for a snapshot
+    private int seq = -1;
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public void applySnapshot(Message.Snapshot snapshot) throws IllegalMoveException {
+        board = MoveCodec.replay(snapshot.moves());
+        seq = MoveCodec.moveCount(snapshot.moves());
+    }
+
+    /**
+     * Applies one move update.
+     * @return False if the update could not be applied; the board then waits for a new snapshot
+     *         and ignores further updates.
+     */
+    public boolean applyMove(Message.MoveMade update) {
+        if (seq < 0) {
+            return false;
+        }
+        if (update.seq() != seq + 1
+                || !MoveCodec.applyMove(board, update.code())
+                || Zobrist.hash(board) != update.hash()) {
+            seq = -1;
+            return false;
+        }
+        seq = update.seq();
+        return true;
+    }
+
+    public boolean isInSync() {
+        return seq >= 0;
+    }
+
+    /**
+     * The number of moves applied, or -1 while waiting for a snapshot.
+     */
+    public int getSeq() {
+        return seq;
+    }
+}
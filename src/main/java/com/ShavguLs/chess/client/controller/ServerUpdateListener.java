@@ -1,5 +1,7 @@
 package com.ShavguLs.chess.client.controller;
 
+import com.ShavguLs.chess.common.logic.Board;
+
 /**
  * This interface defines the callback methods that our NetworkClient will use
  * to communicate with the GameController. It allows the networking logic to be
@@ -8,11 +10,12 @@ package com.ShavguLs.chess.client.controller;
 public interface ServerUpdateListener {
 
     /**
-     * Called when the server sends a full game state update.
-     * The FEN string represents the entire board layout and whose turn it is.
-     * @param fen The FEN string for the current board state.
+     * Called when the game position changed, either because a move was played or because
+     * the server sent a full snapshot.
+     * @param board The client's up-to-date copy of the server's board. It may be a new
+     *              object after a snapshot, so listeners should not keep an older reference.
      */
-    void onGameStateUpdate(String fen);
+    void onBoardUpdate(Board board);
 
     /**
      * Called when the server assigns a color to this client at the start of the game.
@@ -42,11 +45,14 @@ public interface ServerUpdateListener {
     // ... (keep the existing methods)
 
     /**
-     * Called when the server sends updated clock times.
-     * @param whiteTime The formatted time string for white's clock.
-     * @param blackTime The formatted time string for black's clock.
+     * Called when the server sends the clocks, once per move.
+     * The running clock keeps going until the next update; the listener counts it down itself.
+     * @param whiteMillis White's remaining time when the server sent the update.
+     * @param blackMillis Black's remaining time when the server sent the update.
+     * @param whiteRunning Whether white's clock is running.
+     * @param blackRunning Whether black's clock is running.
      */
-    void onClockUpdate(String whiteTime, String blackTime);
+    void onClockUpdate(long whiteMillis, long blackMillis, boolean whiteRunning, boolean blackRunning);
 
     /**
      * Called when the server sends the final PGN string at the end of the game.
@@ -2,35 +2,36 @@ package com.ShavguLs.chess.client.controller;
 
 import com.ShavguLs.chess.client.view.SpectatorMode;
 import com.ShavguLs.chess.common.logic.Board;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.protocol.Compression;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
 import javax.swing.*;
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 public class SpectatorController implements Runnable {
     private SpectatorMode spectatorWindow;
     private int gameId;
     private boolean isConnected = false;
-    protected Board logicBoard;
-    private Socket socket;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
+    private final RemoteBoard remoteBoard = new RemoteBoard();
+    // Replaced when the game runs on another cluster node
+    private volatile Socket socket;
+    private DataInputStream in;
+    private volatile OutputStream out;
     private boolean running = false;
-    private Timer refreshTimer;
 
     public SpectatorController(SpectatorMode window, String serverAddress, int port, int gameId) {
         this.spectatorWindow = window;
         this.gameId = gameId;
-        this.logicBoard = new Board();
 
         try {
             socket = new Socket(serverAddress, port);
-            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-            writer.println("SPECTATE_GAME:" + gameId);
-            Thread.sleep(200);
-            out = new ObjectOutputStream(socket.getOutputStream());
+            out = socket.getOutputStream();
+            out.write((Compression.ACCEPT_PREFIX + "SPECTATE_GAME:" + gameId + "\n").getBytes(StandardCharsets.UTF_8));
             out.flush();
-            Thread.sleep(100);
-            in = new ObjectInputStream(socket.getInputStream());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         } catch (Exception e) {
             System.err.println("Connection failed: " + e.getMessage());
         }
@@ -41,7 +42,6 @@ public class SpectatorController implements Runnable {
             isConnected = true;
             running = true;
             new Thread(this).start();
-            startAutoRefresh();
             spectatorWindow.onConnected();
             return true;
         }
@@ -51,49 +51,26 @@ public class SpectatorController implements Runnable {
 
     public void disconnect() {
         running = false;
-        stopAutoRefresh();
         try { if (socket != null) socket.close(); } catch (Exception e) {}
         isConnected = false;
     }
 
-    private void startAutoRefresh() {
-        refreshTimer = new Timer(1000, e -> requestGameState()); // Refresh every 1 second
-        refreshTimer.start();
-    }
-
-    private void stopAutoRefresh() {
-        if (refreshTimer != null) {
-            refreshTimer.stop();
-            refreshTimer = null;
-        }
-    }
-
-    public Board getLogicBoard() { return logicBoard; }
-
-    public void requestGameState() {
-        try {
-            if (out != null && isConnected && running) {
-                out.writeObject("REQUEST_UPDATE");
-                out.flush();
-            }
-        } catch (IOException e) {
-            // Ignore failed refresh requests
-        }
-    }
+    public Board getLogicBoard() { return remoteBoard.getBoard(); }
 
+    /**
+     * The server pushes every move and clock change, so this thread only has to read.
+     */
     @Override
     public void run() {
         try {
             while (running && !socket.isClosed()) {
-                socket.setSoTimeout(2000); // 2 second timeout
-                Object message = in.readObject();
-                if (message instanceof String) {
-                    handleMessage((String) message);
+                Message message = MessageCodec.read(in);
+                if (message instanceof Message.Redirect redirect) {
+                    followRedirect(redirect);
+                } else {
+                    handleMessage(message);
                 }
             }
-        } catch (java.net.SocketTimeoutException e) {
-            // Normal timeout, continue
-            if (running) run();
         } catch (Exception e) {
             if (running) {
                 SwingUtilities.invokeLater(() -> spectatorWindow.updateStatus("Connection lost"));
@@ -101,28 +78,61 @@ public class SpectatorController implements Runnable {
         }
     }
 
-    private void handleMessage(String message) {
+    // Connects to the cluster node that runs the game and carries on reading from there
+    private void followRedirect(Message.Redirect redirect) throws IOException {
+        Socket moved = new Socket(redirect.host(), redirect.port());
+        OutputStream movedOut = moved.getOutputStream();
+        movedOut.write((Compression.ACCEPT_PREFIX + redirect.command() + "\n").getBytes(StandardCharsets.UTF_8));
+        movedOut.flush();
+        Socket old = socket;
+        socket = moved;
+        out = movedOut;
+        in = new DataInputStream(new BufferedInputStream(moved.getInputStream()));
+        old.close();
+    }
+
+    private void showPosition() {
+        spectatorWindow.refreshBoard();
+        String turn = remoteBoard.getBoard().isWhiteTurn() ? "White" : "Black";
+        spectatorWindow.updateStatus("Current turn: " + turn);
+    }
+
+    // Asks the server for a full snapshot after a missed or mismatched move update
+    private void requestResync() {
+        try {
+            out.write(MessageCodec.encode(new Message.ResyncRequest()));
+            out.flush();
+        } catch (IOException e) {
+            spectatorWindow.updateStatus("Connection lost");
+        }
+    }
+
+    private void handleMessage(Message message) {
         SwingUtilities.invokeLater(() -> {
-            if (message.startsWith("SPECTATOR_WELCOME:")) {
-                String[] parts = message.substring(18).split(":");
-                if (parts.length >= 2) {
-                    spectatorWindow.updatePlayerNames(parts[0], parts[1]);
+            if (message instanceof Message.SpectatorWelcome welcome) {
+                spectatorWindow.updatePlayerNames(welcome.white(), welcome.black());
+            } else if (message instanceof Message.Snapshot snapshot) {
+                try {
+                    remoteBoard.applySnapshot(snapshot);
+                    showPosition();
+                } catch (IllegalMoveException e) {
+                    spectatorWindow.updateStatus("Received an invalid game snapshot");
                 }
-            } else if (message.startsWith("FEN:")) {
-                logicBoard.loadFen(message.substring(4));
-                spectatorWindow.refreshBoard();
-                String turn = logicBoard.isWhiteTurn() ? "White" : "Black";
-                spectatorWindow.updateStatus("Current turn: " + turn);
-            } else if (message.startsWith("CLOCK_UPDATE:")) {
-                // Just update status with current turn info
-                String turn = logicBoard.isWhiteTurn() ? "White" : "Black";
+            } else if (message instanceof Message.MoveMade update) {
+                boolean wasInSync = remoteBoard.isInSync();
+                if (remoteBoard.applyMove(update)) {
+                    showPosition();
+                } else if (wasInSync) {
+                    requestResync();
+                }
+            } else if (message instanceof Message.ClockUpdate) {
+                // Spectators have no clock display; use the update to refresh the turn info
+                String turn = remoteBoard.getBoard().isWhiteTurn() ? "White" : "Black";
                 spectatorWindow.updateStatus("Current turn: " + turn);
-            } else if (message.startsWith("GAMEOVER:")) {
-                stopAutoRefresh();
-                spectatorWindow.showGameOver(message.substring(9));
+            } else if (message instanceof Message.GameOver gameOver) {
+                spectatorWindow.showGameOver(gameOver.result());
                 running = false;
-            } else if (message.equals("GAME_NOT_FOUND")) {
-                stopAutoRefresh();
+            } else if (message instanceof Message.GameNotFound) {
                 spectatorWindow.updateStatus("Game not found");
                 JOptionPane.showMessageDialog(spectatorWindow, "Game not found");
             }
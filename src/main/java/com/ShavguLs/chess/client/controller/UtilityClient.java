@@ -1,34 +1,46 @@
 package com.ShavguLs.chess.client.controller;
 
 import com.ShavguLs.chess.common.HandshakeObject;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import com.ShavguLs.chess.common.protocol.Compression;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 public class UtilityClient {
     /**
-     * Sends a HandshakeObject to the server and returns the server's String response.
+     * Sends a one-line utility command to the server and returns the server's one-line response.
+     * The command goes out as "COMMAND:data", with line breaks in the data escaped as ||NEWLINE||.
+     * A large command, such as a PGN import, is sent compressed, and a compressed response is inflated.
      * @param serverAddress The server's IP or hostname.
      * @param port The server's port.
      * @param handshake The HandshakeObject containing the command and data.
      * @return The String response from the server.
      */
     public static String sendCommand(String serverAddress, int port, HandshakeObject handshake) {
-        try (Socket socket = new Socket(serverAddress, port);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
+        try (Socket socket = new Socket(serverAddress, port)) {
+            String line = handshake.command();
+            if (handshake.data() != null) {
+                line += ":" + handshake.data().replace("\r\n", "\n").replace("\n", "||NEWLINE||");
+            }
 
-            out.flush(); // Send stream header first.
-            out.writeObject(handshake); // Send the entire object.
+            OutputStream out = socket.getOutputStream();
+            String compressed = Compression.compressLine(line);
+            line = compressed != line ? compressed : Compression.ACCEPT_PREFIX + line;
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
             out.flush();
 
             // Now, wait for and read the response.
-            try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-                return (String) in.readObject();
-            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String response = in.readLine();
+            return response != null ? Compression.decompressLine(response, Compression.MAX_REPLY_BYTES)
+                    : "ERROR: The server closed the connection without replying.";
 
         } catch (Exception e) {
             e.printStackTrace();
             return "ERROR: Could not communicate with server. " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+}
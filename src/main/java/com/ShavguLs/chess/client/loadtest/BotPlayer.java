@@ -0,0 +1,170 @@
+package com.ShavguLs.chess.client.loadtest;
+
+import com.ShavguLs.chess.client.controller.RemoteBoard;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.protocol.Compression;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A headless player: asks for a game, answers the nickname request and plays random legal
+ * moves after a think time, game after game until the run ends.
+ * It follows the server's protocol like NetworkClient does, redirects included, so the server
+ * cannot tell it from a person with very fast hands.
+ */
+final class BotPlayer implements Runnable {
+
+    private final LoadGenerator.Options options;
+    private final LoadStats stats;
+    private final String nickname;
+    private final long deadlineNanos;
+
+    private Socket socket;
+    private DataInputStream in;
+    private OutputStream out;
+
+    BotPlayer(LoadGenerator.Options options, LoadStats stats, int number, long deadlineNanos) {
+        this.options = options;
+        this.stats = stats;
+        this.nickname = "bot" + number;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadlineNanos) {
+            try {
+                playGame();
+            } catch (IOException | IllegalMoveException e) {
+                if (System.nanoTime() < deadlineNanos) {
+                    stats.errors.increment();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                close();
+            }
+        }
+    }
+
+    private void playGame() throws IOException, IllegalMoveException, InterruptedException {
+        connect(options.host(), options.port(), "PLAY_CHESS:" + options.timeControl() + ":" + nickname);
+        long requestedNanos = System.nanoTime();
+        RemoteBoard board = new RemoteBoard();
+        boolean white = false;
+        // Only white's bot counts the game, so it is not counted twice
+        boolean counted = false;
+        // The seq our last move's MoveMade will have and when the move went out; -1 when none is pending
+        int pendingSeq = -1;
+        long pendingSince = 0;
+        try {
+            while (true) {
+                Message message = MessageCodec.read(in);
+                switch (message) {
+                    case Message.RequestNickname request -> send(new Message.Nickname(nickname));
+                    case Message.Welcome welcome -> {
+                        white = welcome.white();
+                        stats.pairingLatency.recordNanos(System.nanoTime() - requestedNanos);
+                        if (white) {
+                            counted = true;
+                            stats.gamesStarted.increment();
+                            stats.activeGames.incrementAndGet();
+                        }
+                    }
+                    case Message.Snapshot snapshot -> {
+                        board.applySnapshot(snapshot);
+                        pendingSeq = moveIfOurTurn(board, white);
+                        pendingSince = System.nanoTime();
+                    }
+                    case Message.MoveMade update -> {
+                        if (update.seq() == pendingSeq) {
+                            stats.moveLatency.recordNanos(System.nanoTime() - pendingSince);
+                            stats.moves.increment();
+                            pendingSeq = -1;
+                        }
+                        if (!board.applyMove(update)) {
+                            stats.resyncs.increment();
+                            send(new Message.ResyncRequest());
+                            continue;
+                        }
+                        pendingSeq = moveIfOurTurn(board, white);
+                        pendingSince = System.nanoTime();
+                    }
+                    case Message.InvalidMove invalid -> {
+                        stats.invalidMoves.increment();
+                        send(new Message.ResyncRequest());
+                    }
+                    case Message.Redirect redirect -> {
+                        close();
+                        connect(redirect.host(), redirect.port(), redirect.command());
+                    }
+                    case Message.GameOver over -> {
+                        if (counted) {
+                            stats.gamesFinished.increment();
+                        }
+                        return;
+                    }
+                    case Message.GameNotFound notFound -> {
+                        stats.errors.increment();
+                        return;
+                    }
+                    default -> { }
+                }
+            }
+        } finally {
+            if (counted) {
+                stats.activeGames.decrementAndGet();
+            }
+        }
+    }
+
+    // Thinks, then sends a random legal move; returns the seq its MoveMade will have, or -1
+    private int moveIfOurTurn(RemoteBoard board, boolean white) throws IOException, InterruptedException {
+        if (!board.isInSync() || board.getBoard().isWhiteTurn() != white) {
+            return -1;
+        }
+        List<Integer> moves = board.getBoard().generateLegalMoves(white);
+        if (moves.isEmpty()) {
+            return -1; // The server ends the game
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (options.thinkMillis() > 0) {
+            // Between half and one and a half times the think time, so games do not move in lockstep
+            Thread.sleep(options.thinkMillis() / 2 + random.nextLong(options.thinkMillis() + 1));
+        }
+        send(new Message.Move(moves.get(random.nextInt(moves.size()))));
+        return board.getSeq() + 1;
+    }
+
+    private void connect(String host, int port, String command) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out.write((Compression.ACCEPT_PREFIX + command + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void send(Message message) throws IOException {
+        MessageCodec.write(out, message);
+    }
+
+    private void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore close errors
+            }
+        }
+    }
+}
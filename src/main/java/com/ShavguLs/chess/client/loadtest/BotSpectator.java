@@ -0,0 +1,104 @@
+package com.ShavguLs.chess.client.loadtest;
+
+import com.ShavguLs.chess.client.controller.RemoteBoard;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.protocol.Compression;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A headless spectator: picks a running game from LIST_GAMES and follows it to the end,
+ * keeping its own board in step and asking for a snapshot when it falls out of sync.
+ * Then it picks the next game.
+ */
+final class BotSpectator implements Runnable {
+
+    // How long to wait before looking again when no game is running yet
+    private static final long EMPTY_LOBBY_WAIT_MS = 500;
+
+    private final LoadGenerator.Options options;
+    private final LoadStats stats;
+    private final long deadlineNanos;
+    private Socket socket;
+
+    BotSpectator(LoadGenerator.Options options, LoadStats stats, long deadlineNanos) {
+        this.options = options;
+        this.stats = stats;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadlineNanos) {
+            try {
+                int[] games = LoadGenerator.listGames(options, stats);
+                if (games.length == 0) {
+                    Thread.sleep(EMPTY_LOBBY_WAIT_MS);
+                    continue;
+                }
+                watch(games[ThreadLocalRandom.current().nextInt(games.length)]);
+            } catch (IOException | IllegalMoveException e) {
+                if (System.nanoTime() < deadlineNanos) {
+                    stats.errors.increment();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                close();
+            }
+        }
+    }
+
+    private void watch(int gameId) throws IOException, IllegalMoveException {
+        String command = "SPECTATE_GAME:" + gameId;
+        socket = new Socket(options.host(), options.port());
+        OutputStream out = socket.getOutputStream();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out.write((Compression.ACCEPT_PREFIX + command + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        RemoteBoard board = new RemoteBoard();
+        while (true) {
+            Message message = MessageCodec.read(in);
+            switch (message) {
+                case Message.Snapshot snapshot -> board.applySnapshot(snapshot);
+                case Message.MoveMade update -> {
+                    stats.spectatorUpdates.increment();
+                    if (board.isInSync() && !board.applyMove(update)) {
+                        stats.resyncs.increment();
+                        MessageCodec.write(out, new Message.ResyncRequest());
+                    }
+                }
+                case Message.Redirect redirect -> {
+                    close();
+                    socket = new Socket(redirect.host(), redirect.port());
+                    out = socket.getOutputStream();
+                    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    out.write((Compression.ACCEPT_PREFIX + redirect.command() + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                // The game ended between the list and the request, or just now
+                case Message.GameNotFound notFound -> { return; }
+                case Message.GameOver over -> { return; }
+                default -> { }
+            }
+        }
+    }
+
+    private void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore close errors
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.ShavguLs.chess.client.loadtest;
+
+import com.ShavguLs.chess.common.protocol.Compression;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Puts a chess server under load with bots instead of people, and reports what it measured.
+ *
+ * Bot players pair up through PLAY_CHESS and play random legal moves after a think time,
+ * spectators follow running games, and pollers refresh the lobby with LIST_GAMES. Every bot
+ * runs on a virtual thread, so thousands of connections need no more than a few carrier threads.
+ * A progress line is printed every few seconds; at the end come throughput and latency
+ * percentiles for moves (send to MoveMade), pairing (PLAY_CHESS to Welcome) and list requests.
+ *
+ * Usage: LoadGenerator [--host localhost] [--port 8888] [--games 100] [--think 500] [--tc 10+0]
+ *                      [--spectators 0] [--pollers 0] [--poll-interval 1000] [--duration 60] [--ramp 200]
+ * --games is the number of games played at once (two bots each), --think the average think
+ * time in milliseconds, --duration the length of the run in seconds and --ramp the number of
+ * new connections per second while the bots start up.
+ * All bots share one address, so the server under test needs its per address limits raised,
+ * e.g. -Dchess.limit.connect=2000/4000 -Dchess.limit.list=1000/1000 -Dchess.limit.spectate=1000/1000.
+ */
+public class LoadGenerator {
+
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    /**
+     * The settings of one run; see the class comment.
+     */
+    record Options(String host, int port, int games, long thinkMillis, String timeControl, int spectators,
+                   int pollers, long pollIntervalMillis, int durationSeconds, int rampPerSecond) { }
+
+    public static void main(String[] args) {
+        String host = "localhost", timeControl = "10+0";
+        int port = 8888, games = 100, spectators = 0, pollers = 0, duration = 60, ramp = 200;
+        long think = 500, pollInterval = 1000;
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--host" -> host = args[i + 1];
+                    case "--port" -> port = Integer.parseInt(args[i + 1]);
+                    case "--games" -> games = Integer.parseInt(args[i + 1]);
+                    case "--think" -> think = Long.parseLong(args[i + 1]);
+                    case "--tc" -> timeControl = args[i + 1];
+                    case "--spectators" -> spectators = Integer.parseInt(args[i + 1]);
+                    case "--pollers" -> pollers = Integer.parseInt(args[i + 1]);
+                    case "--poll-interval" -> pollInterval = Long.parseLong(args[i + 1]);
+                    case "--duration" -> duration = Integer.parseInt(args[i + 1]);
+                    case "--ramp" -> ramp = Math.max(1, Integer.parseInt(args[i + 1]));
+                    default -> System.err.println("Ignoring unknown option " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Not a number: " + e.getMessage());
+            return;
+        }
+        Options options = new Options(host, port, games, think, timeControl, spectators, pollers, pollInterval, duration, ramp);
+        try {
+            LoadStats stats = run(options);
+            System.out.print(stats.summary());
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted.");
+        }
+    }
+
+    /**
+     * Starts the bots, waits for the run to end and returns what was measured.
+     */
+    static LoadStats run(Options options) throws InterruptedException {
+        LoadStats stats = new LoadStats();
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        ThreadFactory bots = Thread.ofVirtual().name("bot-", 0).factory();
+        List<Thread> threads = new ArrayList<>();
+        System.out.println("Starting " + options.games() * 2 + " players, " + options.spectators() + " spectators and "
+                + options.pollers() + " pollers against " + options.host() + ":" + options.port());
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < options.games() * 2; i++) {
+            tasks.add(new BotPlayer(options, stats, i, deadlineNanos));
+        }
+        for (int i = 0; i < options.spectators(); i++) {
+            tasks.add(new BotSpectator(options, stats, deadlineNanos));
+        }
+        for (int i = 0; i < options.pollers(); i++) {
+            tasks.add(() -> poll(options, stats, deadlineNanos));
+        }
+        // Connections are opened at the ramp rate rather than all at once, which would only measure the accept backlog
+        long nextProgress = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS);
+        for (int i = 0; i < tasks.size(); i++) {
+            long startAt = startNanos + i * TimeUnit.SECONDS.toNanos(1) / options.rampPerSecond();
+            TimeUnit.NANOSECONDS.sleep(startAt - System.nanoTime());
+            Thread thread = bots.newThread(tasks.get(i));
+            thread.start();
+            threads.add(thread);
+            if (System.nanoTime() >= nextProgress) {
+                System.out.println(stats.progressLine());
+                nextProgress += TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS);
+            }
+        }
+        while (System.nanoTime() < deadlineNanos) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(nextProgress, deadlineNanos) - System.nanoTime());
+            if (System.nanoTime() >= nextProgress) {
+                System.out.println(stats.progressLine());
+                nextProgress += TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS);
+            }
+        }
+        // Interrupting a virtual thread that is blocked on a socket closes the socket, so this stops every bot now
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return stats;
+    }
+
+    // Refreshes the lobby like an idle client would
+    private static void poll(Options options, LoadStats stats, long deadlineNanos) {
+        try {
+            while (System.nanoTime() < deadlineNanos) {
+                listGames(options, stats);
+                Thread.sleep(options.pollIntervalMillis());
+            }
+        } catch (IOException e) {
+            stats.errors.increment();
+        } catch (InterruptedException e) {
+            // The run is over
+        }
+    }
+
+    /**
+     * Sends one LIST_GAMES request, records its latency and returns the ids of the listed games.
+     */
+    static int[] listGames(Options options, LoadStats stats) throws IOException {
+        long sentNanos = System.nanoTime();
+        String reply;
+        try (Socket socket = new Socket(options.host(), options.port())) {
+            OutputStream out = socket.getOutputStream();
+            out.write((Compression.ACCEPT_PREFIX + "LIST_GAMES\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            reply = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+        }
+        stats.listLatency.recordNanos(System.nanoTime() - sentNanos);
+        if (reply != null) {
+            reply = Compression.decompressLine(reply, Compression.MAX_REPLY_BYTES);
+        }
+        if (reply == null || !reply.startsWith("GAMES:")) {
+            throw new IOException("Unexpected reply to LIST_GAMES: " + reply);
+        }
+        return parseGameIds(reply);
+    }
+
+    // GAMES:id,white,black,...|id,white,black,...
+    static int[] parseGameIds(String reply) {
+        String body = reply.substring(6);
+        if (body.isEmpty()) {
+            return new int[0];
+        }
+        String[] games = body.split("\\|");
+        int[] ids = new int[games.length];
+        for (int i = 0; i < games.length; i++) {
+            ids[i] = Integer.parseInt(games[i].substring(0, games[i].indexOf(',')));
+        }
+        return ids;
+    }
+}
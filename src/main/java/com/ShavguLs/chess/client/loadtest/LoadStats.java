@@ -0,0 +1,79 @@
+package com.ShavguLs.chess.client.loadtest;
+
+import com.ShavguLs.chess.server.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a load run measured. Bots record into it from any thread.
+ */
+final class LoadStats {
+
+    // From sending a move to seeing the server's MoveMade for it
+    final LatencyHistogram moveLatency = new LatencyHistogram();
+    // From sending PLAY_CHESS to the Welcome, matchmaking included
+    final LatencyHistogram pairingLatency = new LatencyHistogram();
+    // A LIST_GAMES round trip on a fresh connection
+    final LatencyHistogram listLatency = new LatencyHistogram();
+
+    final AtomicInteger activeGames = new AtomicInteger();
+    final LongAdder gamesStarted = new LongAdder();
+    final LongAdder gamesFinished = new LongAdder();
+    final LongAdder moves = new LongAdder();
+    final LongAdder invalidMoves = new LongAdder();
+    final LongAdder spectatorUpdates = new LongAdder();
+    final LongAdder resyncs = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+    // The counters as of the last progress line, for per-interval rates
+    private long lastNanos = startNanos;
+    private long lastMoves;
+    private long lastLists;
+
+    /**
+     * One line of progress since the previous call. Only the reporting thread calls this.
+     */
+    String progressLine() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+        long totalMoves = moves.sum();
+        long totalLists = listLatency.count();
+        String line = String.format(Locale.ROOT,
+                "%6.1fs  games %d active, %d done  moves/s %.1f  lists/s %.1f  move p50 %s p99 %s  errors %d",
+                (now - startNanos) / 1e9, activeGames.get(), gamesFinished.sum(),
+                (totalMoves - lastMoves) / seconds, (totalLists - lastLists) / seconds,
+                millis(moveLatency.percentileMicros(50)), millis(moveLatency.percentileMicros(99)), errors.sum());
+        lastNanos = now;
+        lastMoves = totalMoves;
+        lastLists = totalLists;
+        return line;
+    }
+
+    String summary() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Ran %.1f s: %d games started, %d finished, %d moves (%.1f/s), %d invalid%n",
+                seconds, gamesStarted.sum(), gamesFinished.sum(), moves.sum(), moves.sum() / seconds, invalidMoves.sum()));
+        out.append(String.format(Locale.ROOT, "Spectators got %d updates and needed %d resyncs; %d errors%n",
+                spectatorUpdates.sum(), resyncs.sum(), errors.sum()));
+        appendLatency(out, "move", moveLatency, seconds);
+        appendLatency(out, "pairing", pairingLatency, seconds);
+        appendLatency(out, "list", listLatency, seconds);
+        return out.toString();
+    }
+
+    private static void appendLatency(StringBuilder out, String name, LatencyHistogram histogram, double seconds) {
+        out.append(String.format(Locale.ROOT, "%-8s n=%d (%.1f/s)  mean %s  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                name, histogram.count(), histogram.count() / seconds, millis((long) histogram.meanMicros()),
+                millis(histogram.percentileMicros(50)), millis(histogram.percentileMicros(90)),
+                millis(histogram.percentileMicros(99)), millis(histogram.percentileMicros(99.9)),
+                millis(histogram.maxMicros())));
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2fms", micros / 1000.0);
+    }
+}
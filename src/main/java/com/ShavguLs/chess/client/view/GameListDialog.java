@@ -1,5 +1,7 @@
 package com.ShavguLs.chess.client.view;
 
+import com.ShavguLs.chess.common.protocol.Compression;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
@@ -9,6 +11,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class GameListDialog extends JDialog {
+    // The server pages its list; the dialog shows the first page
+    private static final int MAX_LISTED_GAMES = 200;
     private JTable gamesTable;
     private DefaultTableModel tableModel;
     private JButton spectateButton;
@@ -30,7 +34,7 @@ public class GameListDialog extends JDialog {
         setSize(600, 350);
         setLocationRelativeTo(getParent());
 
-        String[] columnNames = {"Game ID", "White Player", "Black Player", "Status"};
+        String[] columnNames = {"Game ID", "White Player", "Black Player", "Status", "Time Control", "Watching"};
         tableModel = new DefaultTableModel(columnNames, 0) {
             public boolean isCellEditable(int row, int column) { return false; }
         };
@@ -86,8 +90,11 @@ public class GameListDialog extends JDialog {
              PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
              BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
 
-            out.println("LIST_GAMES");
+            out.println(Compression.ACCEPT_PREFIX + "LIST_GAMES:size=" + MAX_LISTED_GAMES);
             String response = in.readLine();
+            if (response != null) {
+                response = Compression.decompressLine(response, Compression.MAX_REPLY_BYTES);
+            }
 
             if (response != null && response.startsWith("GAMES:")) {
                 String gamesData = response.substring(6);
@@ -95,8 +102,11 @@ public class GameListDialog extends JDialog {
                     String[] gameStrings = gamesData.split("\\|");
                     for (String gameString : gameStrings) {
                         String[] parts = gameString.split(",");
-                        if (parts.length >= 4) {
-                            games.add(new GameInfo(Integer.parseInt(parts[0]), parts[1], parts[2], parts[3]));
+                        if (parts.length >= 9) {
+                            games.add(new GameInfo(Integer.parseInt(parts[0]), parts[1] + " (" + parts[6] + ")",
+                                    parts[2] + " (" + parts[7] + ")", parts[3] + ", " + parts[4], parts[5], parts[8]));
+                        } else if (parts.length >= 4) {
+                            games.add(new GameInfo(Integer.parseInt(parts[0]), parts[1], parts[2], parts[3], "", ""));
                         }
                     }
                 }
@@ -108,11 +118,12 @@ public class GameListDialog extends JDialog {
     private void updateTable(List<GameInfo> games) {
         tableModel.setRowCount(0);
         if (games.isEmpty()) {
-            tableModel.addRow(new Object[]{"No games", "available", "at the", "moment"});
+            tableModel.addRow(new Object[]{"No games", "available", "at the", "moment", "", ""});
             spectateButton.setEnabled(false);
         } else {
             for (GameInfo game : games) {
-                tableModel.addRow(new Object[]{game.gameId, game.whitePlayer, game.blackPlayer, game.status});
+                tableModel.addRow(new Object[]{game.gameId, game.whitePlayer, game.blackPlayer, game.status,
+                        game.timeControl, game.spectators});
             }
         }
     }
@@ -129,12 +140,14 @@ public class GameListDialog extends JDialog {
 
     private static class GameInfo {
         int gameId;
-        String whitePlayer, blackPlayer, status;
-        GameInfo(int gameId, String whitePlayer, String blackPlayer, String status) {
+        String whitePlayer, blackPlayer, status, timeControl, spectators;
+        GameInfo(int gameId, String whitePlayer, String blackPlayer, String status, String timeControl, String spectators) {
             this.gameId = gameId;
             this.whitePlayer = whitePlayer;
             this.blackPlayer = blackPlayer;
             this.status = status;
+            this.timeControl = timeControl;
+            this.spectators = spectators;
         }
     }
 }
\ No newline at end of file
@@ -1,13 +1,11 @@
 package com.ShavguLs.chess.common;
 
-import java.io.Serializable;
-
 /**
  * A structured object for initial client-server utility commands.
  * This allows sending a command and its data (like a PGN string) together.
+ * UtilityClient turns it into the one-line text command the server expects.
  */
-public record HandshakeObject(String command, String data) implements Serializable {
-    private static final long serialVersionUID = 1L;
+public record HandshakeObject(String command, String data) {
 
     // A convenience constructor for commands that don't need data.
     public HandshakeObject(String command) {
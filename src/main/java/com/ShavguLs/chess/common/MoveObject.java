@@ -1,13 +1,11 @@
 package com.ShavguLs.chess.common;
 
-import java.io.Serializable;
-
 /**
  * A record to represent a chess move.
  * Can be a simple move or a move that includes a promotion choice.
+ * On the wire it travels as a Message.Move in MoveCodec's 16 bit form.
  */
-public record MoveObject(int startRow, int startCol, int endRow, int endCol, char promotionPiece) implements Serializable {
-    private static final long serialVersionUID = 2L; // Version 2
+public record MoveObject(int startRow, int startCol, int endRow, int endCol, char promotionPiece) {
 
     /**
      * Constructor for a standard move without promotion.
@@ -0,0 +1,95 @@
+package com.ShavguLs.chess.common.log;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes log records from a ring buffer on a thread of its own.
+ * Logging threads only put a record into the buffer; formatting and the console, which is
+ * synchronized and slow, are the writer's business. If the writer falls behind and the buffer
+ * fills up, new records are dropped and counted rather than making the caller wait.
+ */
+final class AsyncAppender {
+
+    static final int DEFAULT_CAPACITY = 8192;
+
+    private final RingBuffer<LogRecord> buffer;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    // The writer and the shutdown hook both drain; the buffer allows one consumer at a time
+    private final Lock drainLock = new ReentrantLock();
+    // Set while the writer is parked, so producers know to wake it
+    private volatile boolean writerWaiting;
+
+    AsyncAppender(int capacity, PrintStream out, PrintStream err) {
+        this.buffer = new RingBuffer<>(capacity);
+        this.out = out;
+        this.err = err;
+        this.writer = Thread.ofPlatform().name("log-writer").daemon(true).unstarted(this::run);
+        this.writer.start();
+        // Records still in the buffer when the process exits are written out
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-flush"));
+    }
+
+    void append(LogRecord record) {
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (writerWaiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    long droppedCount() {
+        return dropped.get();
+    }
+
+    private void run() {
+        while (true) {
+            if (!drain()) {
+                writerWaiting = true;
+                // A record added between the drain and the flag is picked up by the timeout
+                LockSupport.parkNanos(this, 10_000_000L);
+                writerWaiting = false;
+            }
+        }
+    }
+
+    // Writes everything buffered; returns whether there was anything
+    private boolean drain() {
+        drainLock.lock();
+        try {
+            return writeBuffered();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private boolean writeBuffered() {
+        boolean wrote = false;
+        LogRecord record;
+        while ((record = buffer.poll()) != null) {
+            PrintStream stream = record.level().compareTo(Level.WARN) >= 0 ? err : out;
+            stream.println(record.format());
+            if (record.error() != null && record.level() == Level.ERROR) {
+                record.error().printStackTrace(stream);
+            }
+            wrote = true;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            err.println(lost + " log records were dropped because the log buffer was full.");
+        }
+        if (wrote) {
+            out.flush();
+            err.flush();
+        }
+        return wrote;
+    }
+}
@@ -0,0 +1,8 @@
+package com.ShavguLs.chess.common.log;
+
+/**
+ * How important a log record is. A logger passes on records at or above the configured level.
+ */
+public enum Level {
+    TRACE, DEBUG, INFO, WARN, ERROR, OFF
+}
@@ -0,0 +1,89 @@
+package com.ShavguLs.chess.common.log;
+
+/**
+ * A named logger with levels and structured fields.
+ *
+ * Usage: {@code LOG.info("Game over", "game", gameId, "reason", reason)}. Fields come in name and
+ * value pairs and end up on the line as name=value. Records go through an asynchronous appender,
+ * so the caller only pays for creating the record. Below the level nothing is created at all, but
+ * the arguments are still evaluated, so hot paths with expensive arguments check isEnabled first.
+ *
+ * The level is INFO unless the chess.log.level system property or setLevel says otherwise.
+ */
+public final class Log {
+
+    private static final Object[] NO_FIELDS = new Object[0];
+    private static final AsyncAppender APPENDER = new AsyncAppender(AsyncAppender.DEFAULT_CAPACITY, System.out, System.err);
+    private static volatile Level threshold = parseLevel(System.getProperty("chess.log.level"), Level.INFO);
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(Class<?> type) {
+        return new Log(type.getSimpleName());
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static Level getLevel() {
+        return threshold;
+    }
+
+    /**
+     * Parses a level name in any case, falling back to the default for null or unknown names.
+     */
+    public static Level parseLevel(String text, Level defaultLevel) {
+        if (text == null) {
+            return defaultLevel;
+        }
+        try {
+            return Level.valueOf(text.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultLevel;
+        }
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0 && level != Level.OFF;
+    }
+
+    public void trace(String message, Object... fields) {
+        log(Level.TRACE, message, fields, null);
+    }
+
+    public void debug(String message, Object... fields) {
+        log(Level.DEBUG, message, fields, null);
+    }
+
+    public void info(String message, Object... fields) {
+        log(Level.INFO, message, fields, null);
+    }
+
+    public void warn(String message, Object... fields) {
+        log(Level.WARN, message, fields, null);
+    }
+
+    public void error(String message, Object... fields) {
+        log(Level.ERROR, message, fields, null);
+    }
+
+    /**
+     * Logs at ERROR with the exception's stack trace.
+     */
+    public void error(String message, Throwable error, Object... fields) {
+        log(Level.ERROR, message, fields, error);
+    }
+
+    private void log(Level level, String message, Object[] fields, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        APPENDER.append(new LogRecord(System.currentTimeMillis(), level, name, Thread.currentThread().getName(),
+                message, fields == null ? NO_FIELDS : fields, error));
+    }
+}
@@ -0,0 +1,45 @@
+package com.ShavguLs.chess.common.log;
+
+import java.time.Instant;
+
+/**
+ * One log event, created on the calling thread and formatted later by the appender's writer.
+ * @param fields Alternating names and values, e.g. "game", 12, "ply", 31.
+ * @param error May be null.
+ */
+public record LogRecord(long timeMillis, Level level, String logger, String thread, String message,
+                        Object[] fields, Throwable error) {
+
+    /**
+     * The record as one line, e.g.
+     * 2026-10-19T09:15:02.118Z INFO  [game-events-3] GameSession - Game over game=12 reason=DRAW
+     */
+    public String format() {
+        StringBuilder line = new StringBuilder(96);
+        line.append(Instant.ofEpochMilli(timeMillis)).append(' ');
+        line.append(level.name());
+        for (int i = level.name().length(); i < 5; i++) {
+            line.append(' ');
+        }
+        line.append(" [").append(thread).append("] ").append(logger).append(" - ").append(message);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=');
+            appendValue(line, fields[i + 1]);
+        }
+        if (error != null) {
+            line.append(" error=");
+            appendValue(line, error.toString());
+        }
+        return line.toString();
+    }
+
+    // Values with spaces are quoted so the line can still be split into fields
+    private static void appendValue(StringBuilder line, Object value) {
+        String text = String.valueOf(value);
+        if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('"') >= 0) {
+            line.append('"').append(text.replace("\"", "\\\"")).append('"');
+        } else {
+            line.append(text);
+        }
+    }
+}
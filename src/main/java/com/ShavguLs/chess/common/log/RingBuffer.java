@@ -0,0 +1,61 @@
+package com.ShavguLs.chess.common.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue for many producers and one consumer that never blocks.
+ * A producer claims a sequence number with one CAS and fills its slot; when the buffer
+ * is full, offer fails at once instead of waiting, so logging can never stall a game.
+ */
+final class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    // Only written by the consumer
+    private volatile long consumed;
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false if the buffer is full.
+     */
+    boolean offer(T item) {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= slots.length()) {
+                return false;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) sequence & mask, item);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The oldest item, or null if there is none yet. Only one thread may call this.
+     */
+    T poll() {
+        int index = (int) consumed & mask;
+        T item = slots.get(index);
+        if (item == null) {
+            return null; // Empty, or claimed but not filled in yet
+        }
+        slots.set(index, null);
+        consumed = consumed + 1;
+        return item;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
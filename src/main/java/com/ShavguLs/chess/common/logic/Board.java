@@ -1,6 +1,7 @@
 package com.ShavguLs.chess.common.logic;
 
-
+import java.util.ArrayList;
+import java.util.List;
 
 public class Board {
     private static final int BOARD_SIZE = 8;
@@ -249,22 +250,57 @@ public class Board {
     }
 
     public boolean hasLegalMoves(boolean isWhiteSide) {
+        return collectLegalMoves(isWhiteSide, null);
+    }
+
+    /**
+     * Lists every legal move of one side in MoveCodec form. A promotion shows up
+     * four times, once for each piece the pawn can become.
+     */
+    public List<Integer> generateLegalMoves(boolean isWhiteSide) {
+        List<Integer> moves = new ArrayList<>();
+        collectLegalMoves(isWhiteSide, moves);
+        return moves;
+    }
+
+    // Walks all moves of one side. With a null list it stops at the first legal move found.
+    private boolean collectLegalMoves(boolean isWhiteSide, List<Integer> moves) {
+        boolean found = false;
         for (int r = 0; r < 8; r++) {
             for (int c = 0; c < 8; c++) {
                 Piece piece = getPieceAt(r, c);
-                if (piece != null && piece.isWhite() == isWhiteSide) {
-                    for (int destR = 0; destR < 8; destR++) {
-                        for (int destC = 0; destC < 8; destC++) {
-                            Board tempBoard = this.copy();
-                            if (tempBoard.attemptMove(r, c, destR, destC, isWhiteSide)) {
-                                return true;
+                if (piece == null || piece.isWhite() != isWhiteSide) {
+                    continue;
+                }
+                boolean isPawn = piece instanceof Pawn;
+                for (int destR = 0; destR < 8; destR++) {
+                    for (int destC = 0; destC < 8; destC++) {
+                        // Cheap shape check first, only candidates pay for the copy and the king safety check
+                        if (!piece.isValidMove(r, c, destR, destC, board)
+                                && !(isPawn && isEnPassantMove(r, c, destR, destC, isWhiteSide))) {
+                            continue;
+                        }
+                        boolean isPromotion = isPawn && (destR == 0 || destR == 7);
+                        Board tempBoard = this.copy();
+                        if (!tempBoard.attemptMove(r, c, destR, destC, isWhiteSide, isPromotion ? new Queen(isWhiteSide) : null)) {
+                            continue;
+                        }
+                        if (moves == null) {
+                            return true;
+                        }
+                        found = true;
+                        if (isPromotion) {
+                            for (char promo : new char[]{'Q', 'R', 'B', 'N'}) {
+                                moves.add(MoveCodec.encode(r, c, destR, destC, promo));
                             }
+                        } else {
+                            moves.add(MoveCodec.encode(r, c, destR, destC, ' '));
                         }
                     }
                 }
             }
         }
-        return false;
+        return found;
     }
 
     public boolean isEnPassantMove(int srcRow, int srcCol, int destRow, int destCol, boolean isWhiteTurn) {
@@ -1,60 +1,204 @@
 package com.ShavguLs.chess.common.logic;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chess clock that keeps its remaining time in nanoseconds.
+ * While running it does no work at all: start and stop take System.nanoTime() readings,
+ * and the time in between is charged when the player's move is done.
+ *
+ * Supports a Fischer increment (added after every move) and a Bronstein delay
+ * (the time used on a move is given back, up to the delay).
+ */
 public class Clock {
-    private int hh;
-    private int mm;
-    private int ss;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
     private final int initialSeconds;
+    private final long incrementNanos;
+    private final long delayNanos;
+    private long remainingNanos;
+    // Set while the clock runs
+    private boolean running;
+    private long startedNanos;
 
     public Clock(int hh, int mm, int ss) {
-        this.hh = hh;
-        this.mm = mm;
-        this.ss = ss;
+        this(hh, mm, ss, 0, 0);
+    }
+
+    /**
+     * @param incrementSeconds Fischer increment, added after each move.
+     * @param delaySeconds Bronstein delay, the part of each move's thinking time that is given back.
+     */
+    public Clock(int hh, int mm, int ss, int incrementSeconds, int delaySeconds) {
         this.initialSeconds = hh * 3600 + mm * 60 + ss;
+        this.remainingNanos = initialSeconds * NANOS_PER_SECOND;
+        this.incrementNanos = incrementSeconds * NANOS_PER_SECOND;
+        this.delayNanos = delaySeconds * NANOS_PER_SECOND;
     }
 
     public boolean outOfTime() {
-        return (hh == 0 && mm == 0 && ss == 0);
+        return remainingNanos <= 0;
+    }
+
+    /**
+     * Starts the clock for a move, at a time taken from System.nanoTime().
+     */
+    public void start(long nowNanos) {
+        if (!running) {
+            running = true;
+            startedNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Stops the clock when the player's move is done and charges the time since start.
+     * If the flag has not fallen, the delay and increment are credited.
+     * @return false if the player ran out of time during this move.
+     */
+    public boolean stop(long nowNanos) {
+        if (!running) {
+            return !outOfTime();
+        }
+        running = false;
+        long used = Math.max(0, nowNanos - startedNanos);
+        remainingNanos -= used;
+        if (remainingNanos <= 0) {
+            remainingNanos = 0;
+            return false;
+        }
+        remainingNanos += Math.min(used, delayNanos) + incrementNanos;
+        return true;
+    }
+
+    /**
+     * Stops the clock and charges the time used, without crediting delay or increment.
+     * For when the game ends for some other reason than a move.
+     */
+    public void halt(long nowNanos) {
+        if (running) {
+            running = false;
+            remainingNanos = Math.max(0, remainingNanos - Math.max(0, nowNanos - startedNanos));
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Remaining time at the given moment, counting the current move if the clock runs.
+     */
+    public long remainingNanos(long nowNanos) {
+        if (!running) {
+            return remainingNanos;
+        }
+        return Math.max(0, remainingNanos - (nowNanos - startedNanos));
+    }
+
+    public long remainingMillis(long nowNanos) {
+        return remainingNanos(nowNanos) / NANOS_PER_MILLI;
     }
 
     public void decr() {
-        if (this.ss == 0) {
-            if (this.mm == 0) {
-                if (this.hh > 0) {
-                    this.hh--;
-                    this.mm = 59;
-                    this.ss = 59;
-                }
-            } else {
-                this.mm--;
-                this.ss = 59;
+        spend(1000);
+    }
+
+    /**
+     * Charges time directly, outside of start and stop. The clock never goes below zero.
+     */
+    public void spend(long millis) {
+        remainingNanos = Math.max(0, remainingNanos - TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public String getTime() {
+        return formatTime(getRemainingMillis());
+    }
+
+    // Time left when the clock was last stopped
+    public int getRemainingMillis() {
+        return (int) (remainingNanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Formats a remaining time the way getTime does, e.g. 00:09:59.
+     */
+    public static String formatTime(long millis) {
+        char[] text = new char[24];
+        return new String(text, 0, formatTime(millis, text));
+    }
+
+    /**
+     * Writes a remaining time as hh:mm:ss into the buffer without allocating,
+     * for callers that refresh a display many times a second.
+     * @param buffer At least 8 characters, more if there can be over 99 hours.
+     * @return The number of characters written.
+     */
+    public static int formatTime(long millis, char[] buffer) {
+        long totalSeconds = Math.max(0, millis) / 1000;
+        long hours = totalSeconds / 3600;
+        int pos;
+        if (hours > 99) {
+            int digits = (int) Math.log10(hours) + 1;
+            for (int i = digits - 1; i >= 0; i--) {
+                buffer[i] = (char) ('0' + hours % 10);
+                hours /= 10;
             }
+            pos = digits;
         } else {
-            this.ss--;
+            pos = writeTwoDigits(buffer, 0, (int) hours);
         }
+        buffer[pos++] = ':';
+        pos = writeTwoDigits(buffer, pos, (int) (totalSeconds / 60 % 60));
+        buffer[pos++] = ':';
+        return writeTwoDigits(buffer, pos, (int) (totalSeconds % 60));
     }
 
-    public String getTime() {
-        String fHrs = String.format("%02d", this.hh);
-        String fMins = String.format("%02d", this.mm);
-        String fSecs = String.format("%02d", this.ss);
-        String fTime = fHrs + ":" + fMins + ":" + fSecs;
-        return fTime;
+    /**
+     * Appends a remaining time as hh:mm:ss, e.g. to a game list being built.
+     */
+    public static StringBuilder appendTime(StringBuilder out, long millis) {
+        long totalSeconds = Math.max(0, millis) / 1000;
+        long hours = totalSeconds / 3600;
+        if (hours < 10) {
+            out.append('0');
+        }
+        out.append(hours).append(':');
+        appendTwoDigits(out, (int) (totalSeconds / 60 % 60)).append(':');
+        return appendTwoDigits(out, (int) (totalSeconds % 60));
+    }
+
+    private static int writeTwoDigits(char[] buffer, int pos, int value) {
+        buffer[pos] = (char) ('0' + value / 10);
+        buffer[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
     }
 
     public int getInitialSeconds() {
         return initialSeconds;
     }
 
+    public int getIncrementSeconds() {
+        return (int) (incrementNanos / NANOS_PER_SECOND);
+    }
+
+    public int getDelaySeconds() {
+        return (int) (delayNanos / NANOS_PER_SECOND);
+    }
+
     public int getHours(){
-        return hh;
+        return (int) (remainingNanos / (3600 * NANOS_PER_SECOND));
     }
 
     public int getMinutes(){
-        return mm;
+        return (int) (remainingNanos / (60 * NANOS_PER_SECOND) % 60);
     }
 
     public int getSeconds(){
-        return ss;
+        return (int) (remainingNanos / NANOS_PER_SECOND % 60);
     }
-}
\ No newline at end of file
+}
@@ -17,6 +17,15 @@ public class GameRecorder {
     private String finalResult;
     private ArrayList<String> gameMovements;
     private String timeSettings;
+    private final String gameDate;
+
+    // The movetext is built up as moves arrive instead of on every createPGNText call:
+    // full lines that are already wrapped, plus the line that is still being filled.
+    private final StringBuilder finishedMoveLines;
+    private final StringBuilder currentMoveLine;
+    // Cached pieces of the output, cleared whenever something they depend on changes
+    private String headerText;
+    private String pgnText;
 
     public GameRecorder() {
         this.gameName = "Chess Game";
@@ -24,11 +33,16 @@ public class GameRecorder {
         this.roundNumber = "1";
         this.finalResult = "*"; // means game is still going
         this.gameMovements = new ArrayList<String>();
+        Date currentDate = new Date();
+        this.gameDate = String.format("%tY.%tm.%td", currentDate, currentDate, currentDate);
+        this.finishedMoveLines = new StringBuilder();
+        this.currentMoveLine = new StringBuilder();
     }
 
     public void setPlayerNames(String whiteName, String blackName) {
         this.player1Name = whiteName;
         this.player2Name = blackName;
+        clearHeader();
     }
 
     public String getWhitePlayerName() { return this.player1Name; }
@@ -45,6 +59,7 @@ public class GameRecorder {
         if (round != null && !round.equals("")) {
             this.roundNumber = round;
         }
+        clearHeader();
     }
 
     public void setTimeInformation(int hours, int minutes, int seconds) {
@@ -54,63 +69,102 @@ public class GameRecorder {
             int totalTime = hours * 3600 + minutes * 60 + seconds;
             this.timeSettings = String.valueOf(totalTime);
         }
+        clearHeader();
+    }
+
+    // Same as above with a Fischer increment, written the PGN way, e.g. "600+5"
+    public void setTimeInformation(int hours, int minutes, int seconds, int incrementSeconds) {
+        setTimeInformation(hours, minutes, seconds);
+        if (incrementSeconds > 0 && !timeSettings.equals("No time limit")) {
+            this.timeSettings = timeSettings + "+" + incrementSeconds;
+        }
     }
 
     public void addMove(String move) {
         this.gameMovements.add(move);
+        appendToMoveText(move, gameMovements.size() - 1);
+        this.pgnText = null;
     }
 
     public void setAllMoves(ArrayList<String> moves) {
         this.gameMovements = new ArrayList<String>(moves);
+        finishedMoveLines.setLength(0);
+        currentMoveLine.setLength(0);
+        for (int i = 0; i < gameMovements.size(); i++) {
+            appendToMoveText(gameMovements.get(i), i);
+        }
+        this.pgnText = null;
+    }
+
+    public int getMoveCount() {
+        return gameMovements.size();
     }
 
     public void setGameResult(String result) {
         this.finalResult = result;
+        clearHeader();
     }
 
-    public String createPGNText() {
-        StringBuilder pgnText = new StringBuilder();
-        pgnText.append("[Event \"").append(gameName).append("\"]\n");
-        pgnText.append("[Site \"").append(gameLocation).append("\"]\n");
-        Date currentDate = new Date();
-        String dateString = String.format("%tY.%tm.%td", currentDate, currentDate, currentDate);
-        pgnText.append("[Date \"").append(dateString).append("\"]\n");
-        pgnText.append("[Round \"").append(roundNumber).append("\"]\n");
+    // Adds one move to the movetext, wrapping lines once they grow past 75 characters
+    private void appendToMoveText(String move, int index) {
+        if (index % 2 == 0) {
+            if (currentMoveLine.length() > 0) {
+                currentMoveLine.append(" ");
+            }
+            int moveNumber = (index / 2) + 1;
+            currentMoveLine.append(moveNumber).append(". ");
+        } else {
+            currentMoveLine.append(" ");
+        }
+        currentMoveLine.append(move);
+        if (currentMoveLine.length() > 75) {
+            finishedMoveLines.append(currentMoveLine).append("\n");
+            currentMoveLine.setLength(0);
+        }
+    }
+
+    private void clearHeader() {
+        this.headerText = null;
+        this.pgnText = null;
+    }
+
+    private String createHeaderText() {
+        StringBuilder header = new StringBuilder();
+        header.append("[Event \"").append(gameName).append("\"]\n");
+        header.append("[Site \"").append(gameLocation).append("\"]\n");
+        header.append("[Date \"").append(gameDate).append("\"]\n");
+        header.append("[Round \"").append(roundNumber).append("\"]\n");
         String whiteName = (player1Name != null) ? player1Name : "White Player";
         String blackName = (player2Name != null) ? player2Name : "Black Player";
-        pgnText.append("[White \"").append(whiteName).append("\"]\n");
-        pgnText.append("[Black \"").append(blackName).append("\"]\n");
-        pgnText.append("[Result \"").append(finalResult).append("\"]\n");
+        header.append("[White \"").append(whiteName).append("\"]\n");
+        header.append("[Black \"").append(blackName).append("\"]\n");
+        header.append("[Result \"").append(finalResult).append("\"]\n");
 
         if (timeSettings != null) {
-            pgnText.append("[TimeControl \"").append(timeSettings).append("\"]\n");
+            header.append("[TimeControl \"").append(timeSettings).append("\"]\n");
         }
-        pgnText.append("\n");
-        if (gameMovements != null && gameMovements.size() > 0) {
-            StringBuilder moveLine = new StringBuilder();
-            for (int i = 0; i < gameMovements.size(); i++) {
-                if (i % 2 == 0) {
-                    if (moveLine.length() > 0) {
-                        moveLine.append(" ");
-                    }
-                    int moveNumber = (i / 2) + 1;
-                    moveLine.append(moveNumber).append(". ");
-                } else {
-                    moveLine.append(" ");
-                }
-                moveLine.append(gameMovements.get(i));
-                if (moveLine.length() > 75) {
-                    pgnText.append(moveLine.toString()).append("\n");
-                    moveLine = new StringBuilder();
-                }
-            }
-            if (moveLine.length() > 0) {
-                pgnText.append(moveLine.toString());
-            }
+        header.append("\n");
+        return header.toString();
+    }
+
+    /**
+     * Returns the full PGN of the game so far. The text is cached until the next
+     * move or header change, so repeated calls (e.g. live snapshots) cost nothing.
+     */
+    public String createPGNText() {
+        if (pgnText != null) {
+            return pgnText;
+        }
+        if (headerText == null) {
+            headerText = createHeaderText();
         }
-        pgnText.append(" ").append(finalResult).append("\n");
+        StringBuilder text = new StringBuilder(headerText.length() + finishedMoveLines.length()
+                + currentMoveLine.length() + finalResult.length() + 2);
+        text.append(headerText).append(finishedMoveLines).append(currentMoveLine);
+        text.append(" ").append(finalResult).append("\n");
 
-        return pgnText.toString();
+        pgnText = text.toString();
+        return pgnText;
     }
 
     public boolean saveToFile(String fileName) {
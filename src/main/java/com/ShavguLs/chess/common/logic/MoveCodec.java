@@ -0,0 +1,146 @@
+package com.ShavguLs.chess.common.logic;
+
+import java.util.List;
+
+/**
+ * Compact binary encoding for moves and whole games.
+ * Every move fits in 16 bits: 6 bits source square, 6 bits destination square
+ * and 4 bits promotion piece. Squares are numbered row * 8 + col, the same layout
+ * as the board array, so a stored game can be replayed with Board.attemptMove
+ * directly instead of going through SAN parsing.
+ */
+public class MoveCodec {
+
+    public static final int BYTES_PER_MOVE = 2;
+
+    private static final int PROMO_NONE = 0;
+    private static final int PROMO_QUEEN = 1;
+    private static final int PROMO_ROOK = 2;
+    private static final int PROMO_BISHOP = 3;
+    private static final int PROMO_KNIGHT = 4;
+
+    public static int encode(int srcRow, int srcCol, int destRow, int destCol, char promotionPiece) {
+        int from = srcRow * 8 + srcCol;
+        int to = destRow * 8 + destCol;
+        return (from << 10) | (to << 4) | promotionCode(promotionPiece);
+    }
+
+    public static int srcRow(int code) { return (code >>> 10) / 8; }
+    public static int srcCol(int code) { return (code >>> 10) % 8; }
+    public static int destRow(int code) { return ((code >>> 4) & 0x3F) / 8; }
+    public static int destCol(int code) { return ((code >>> 4) & 0x3F) % 8; }
+
+    /**
+     * @return 'Q', 'R', 'B' or 'N' for promotions, ' ' otherwise (same convention as MoveObject).
+     */
+    public static char promotionChar(int code) {
+        return switch (code & 0xF) {
+            case PROMO_QUEEN -> 'Q';
+            case PROMO_ROOK -> 'R';
+            case PROMO_BISHOP -> 'B';
+            case PROMO_KNIGHT -> 'N';
+            default -> ' ';
+        };
+    }
+
+    public static Piece promotionPiece(int code, boolean isWhite) {
+        return switch (code & 0xF) {
+            case PROMO_QUEEN -> new Queen(isWhite);
+            case PROMO_ROOK -> new Rook(isWhite);
+            case PROMO_BISHOP -> new Bishop(isWhite);
+            case PROMO_KNIGHT -> new Knight(isWhite);
+            default -> null;
+        };
+    }
+
+    private static int promotionCode(char promotionPiece) {
+        return switch (Character.toUpperCase(promotionPiece)) {
+            case 'Q' -> PROMO_QUEEN;
+            case 'R' -> PROMO_ROOK;
+            case 'B' -> PROMO_BISHOP;
+            case 'N' -> PROMO_KNIGHT;
+            default -> PROMO_NONE;
+        };
+    }
+
+    /**
+     * Writes the first {@code count} move codes as big-endian 16 bit values.
+     */
+    public static byte[] toBytes(short[] codes, int count) {
+        byte[] data = new byte[count * BYTES_PER_MOVE];
+        for (int i = 0; i < count; i++) {
+            data[2 * i] = (byte) (codes[i] >>> 8);
+            data[2 * i + 1] = (byte) codes[i];
+        }
+        return data;
+    }
+
+    public static int moveCount(byte[] data) {
+        return data.length / BYTES_PER_MOVE;
+    }
+
+    public static int moveAt(byte[] data, int index) {
+        return ((data[2 * index] & 0xFF) << 8) | (data[2 * index + 1] & 0xFF);
+    }
+
+    /**
+     * Plays an encoded move on the board for the side to move.
+     * @return true if the board accepted the move.
+     */
+    public static boolean applyMove(Board board, int code) {
+        boolean isWhite = board.isWhiteTurn();
+        return board.attemptMove(srcRow(code), srcCol(code), destRow(code), destCol(code),
+                isWhite, promotionPiece(code, isWhite));
+    }
+
+    /**
+     * Replays an encoded game from the standard starting position.
+     * @param data The encoded move list, as produced by toBytes.
+     * @return The board after the last move.
+     * @throws IllegalMoveException if one of the stored moves is not legal.
+     */
+    public static Board replay(byte[] data) throws IllegalMoveException {
+        Board board = new Board();
+        board.setupStandardBoard();
+        int count = moveCount(data);
+        for (int i = 0; i < count; i++) {
+            int code = moveAt(data, i);
+            if (!applyMove(board, code)) {
+                throw new IllegalMoveException("Illegal move in encoded game at ply " + (i + 1) + ": " + toUci(code));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Converts a list of SAN moves (as returned by PGNParser) into the binary form.
+     * This is the one place that still has to parse SAN, used when text games enter the archive.
+     * @throws IllegalMoveException if the move list cannot be replayed.
+     */
+    public static byte[] encodeSanMoves(List<String> sanMoves) throws IllegalMoveException {
+        Board board = new Board();
+        board.setupStandardBoard();
+        MoveInterpreter interpreter = new MoveInterpreter(board);
+
+        short[] codes = new short[sanMoves.size()];
+        for (int i = 0; i < sanMoves.size(); i++) {
+            interpreter.interpretMove(sanMoves.get(i));
+            codes[i] = (short) interpreter.getLastMoveCode();
+        }
+        return toBytes(codes, codes.length);
+    }
+
+    /**
+     * Long algebraic form (e.g. "e2e4", "e7e8q"), handy for logs and error messages.
+     */
+    public static String toUci(int code) {
+        StringBuilder sb = new StringBuilder(5);
+        sb.append((char) ('a' + srcCol(code))).append(8 - srcRow(code));
+        sb.append((char) ('a' + destCol(code))).append(8 - destRow(code));
+        char promo = promotionChar(code);
+        if (promo != ' ') {
+            sb.append(Character.toLowerCase(promo));
+        }
+        return sb.toString();
+    }
+}
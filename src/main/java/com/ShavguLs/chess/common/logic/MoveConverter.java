@@ -1,11 +1,30 @@
 package com.ShavguLs.chess.common.logic;
 
+import java.util.List;
+
 public class MoveConverter {
     public static String convertMoveToNotation(Piece piece, int srcRow, int srcCol,
                                                int destRow, int destCol, Board board,
                                                boolean wasCapture, boolean causesCheck,
                                                boolean causesCheckmate, boolean isCastleMove,
                                                Piece promotionPiece) {
+        List<Integer> legalMoves = isCastleMove || piece instanceof Pawn
+                ? List.of() : board.generateLegalMoves(piece.isWhite());
+        return convertMoveToNotation(piece, srcRow, srcCol, destRow, destCol, board, wasCapture,
+                causesCheck, causesCheckmate, isCastleMove, promotionPiece, legalMoves);
+    }
+
+    /**
+     * Same as above, but takes the legal moves of the position before the move (from
+     * Board.generateLegalMoves) so disambiguation does not have to work them out again.
+     * The board may be the one before or after the move: only the pieces standing on the
+     * source squares of the other legal moves are looked at, and those do not change.
+     */
+    public static String convertMoveToNotation(Piece piece, int srcRow, int srcCol,
+                                               int destRow, int destCol, Board board,
+                                               boolean wasCapture, boolean causesCheck,
+                                               boolean causesCheckmate, boolean isCastleMove,
+                                               Piece promotionPiece, List<Integer> legalMoves) {
 
         if (isCastleMove) {
             return handleCastlingMove(srcCol, destCol);
@@ -21,7 +40,7 @@ public class MoveConverter {
 
         // Add disambiguation if needed (for pieces other than pawns)
         if (!(piece instanceof Pawn)) {
-            String extraInfo = findDisambiguationInfo(piece, srcRow, srcCol, destRow, destCol, board);
+            String extraInfo = findDisambiguationInfo(piece, srcRow, srcCol, destRow, destCol, board, legalMoves);
             moveText.append(extraInfo);
         }
 
@@ -79,33 +98,33 @@ public class MoveConverter {
     }
 
     private static String findDisambiguationInfo(Piece piece, int srcRow, int srcCol,
-                                                 int destRow, int destCol, Board board) {
+                                                 int destRow, int destCol, Board board,
+                                                 List<Integer> legalMoves) {
         boolean needsExtraInfo = false;
         boolean sameFileAsOther = false;
         boolean sameRankAsOther = false;
 
-        // Check if any other piece of the same type can move to the same destination
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece otherPiece = board.getPieceAt(r, c);
-                if (otherPiece == null || otherPiece == piece) {
-                    continue;
-                }
+        // Check if any other piece of the same type can legally move to the same destination
+        for (int move : legalMoves) {
+            if (MoveCodec.destRow(move) != destRow || MoveCodec.destCol(move) != destCol) {
+                continue;
+            }
+            int r = MoveCodec.srcRow(move);
+            int c = MoveCodec.srcCol(move);
+            if (r == srcRow && c == srcCol) {
+                continue;
+            }
 
-                // Same piece type and color?
-                if (otherPiece.getClass().equals(piece.getClass()) &&
-                        otherPiece.isWhite() == piece.isWhite()) {
-
-                    // Can this other piece also move to the destination?
-                    if (otherPiece.isValidMove(r, c, destRow, destCol, board.getBoardArray())) {
-                        needsExtraInfo = true;
-                        if (c == srcCol) {
-                            sameFileAsOther = true;
-                        }
-                        if (r == srcRow) {
-                            sameRankAsOther = true;
-                        }
-                    }
+            // Same piece type and color?
+            Piece otherPiece = board.getPieceAt(r, c);
+            if (otherPiece != null && otherPiece.getClass().equals(piece.getClass()) &&
+                    otherPiece.isWhite() == piece.isWhite()) {
+                needsExtraInfo = true;
+                if (c == srcCol) {
+                    sameFileAsOther = true;
+                }
+                if (r == srcRow) {
+                    sameRankAsOther = true;
                 }
             }
         }
@@ -1,8 +1,14 @@
 package com.ShavguLs.chess.common.logic;
 
+import com.ShavguLs.chess.common.log.Level;
+import com.ShavguLs.chess.common.log.Log;
+
 public class MoveInterpreter {
+    private static final Log LOG = Log.get(MoveInterpreter.class);
+
     private final Board board;
     private boolean whiteToMove = true;
+    private int lastMoveCode = -1;
 
     public MoveInterpreter(Board board) {
         this.board = board;
@@ -16,6 +22,7 @@ public class MoveInterpreter {
             if (board.getPieceAt(row, 4) instanceof King) {
                 int destCol = move.equals("O-O") ? 6 : 2;
                 if (board.attemptMove(row, 4, row, destCol, whiteToMove)) {
+                    lastMoveCode = MoveCodec.encode(row, 4, row, destCol, ' ');
                     whiteToMove = !whiteToMove;
                     return;
                 }
@@ -25,9 +32,10 @@ public class MoveInterpreter {
 
         // Parse promotion notation first
         Piece promotionPiece = null;
+        char promotionChar = ' ';
         if (move.contains("=")) {
             int index = move.indexOf("=");
-            char promotionChar = move.charAt(index + 1);
+            promotionChar = move.charAt(index + 1);
             move = move.substring(0, index);
 
             // Create the promotion piece based on the notation
@@ -71,16 +79,25 @@ public class MoveInterpreter {
 
         // Use the enhanced attemptMove with promotion piece parameter
         if (board.attemptMove(srcRow, srcCol, destRow, destCol, whiteToMove, promotionPiece)) {
+            lastMoveCode = MoveCodec.encode(srcRow, srcCol, destRow, destCol, promotionChar);
             whiteToMove = !whiteToMove;
         } else {
             throw new IllegalMoveException("Illegal move (rejected by Board): " + move);
         }
     }
 
+    // Binary encoding (see MoveCodec) of the last move that was successfully interpreted, or -1
+    public int getLastMoveCode() {
+        return lastMoveCode;
+    }
+
     // Finds Source square for move
     int[] findSourceSquare(char pieceChar, int destRow, int destCol, String disambiguation) {
-        System.out.printf("Looking for move to (%d, %d) = %c%d with disambiguation [%s]\n",
-                destRow, destCol, (char) (destCol + 'a'), 8 - destRow, disambiguation);
+        // Called for every SAN move of every import, so the record is only built when tracing
+        if (LOG.isEnabled(Level.TRACE)) {
+            LOG.trace("Looking for source square", "piece", pieceChar,
+                    "to", (char) (destCol + 'a') + String.valueOf(8 - destRow), "disambiguation", disambiguation);
+        }
 
         // --- SPECIAL CHECK FOR EN PASSANT ---
         // En passant only happens with pawns on an empty destination square.
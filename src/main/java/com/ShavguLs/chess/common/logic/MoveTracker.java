@@ -1,6 +1,7 @@
 package com.ShavguLs.chess.common.logic;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,17 +11,35 @@ public class MoveTracker {
     private ArrayList<String> movesInText;
     private List<String> positionHistory;
     private int movesSinceLastCapture;
+    // Same moves in MoveCodec form, kept alongside the text so the game can be stored compactly
+    private short[] moveCodes;
+    private int moveCodeCount;
+    // Goes up on every reset, so copies of the move list can tell they are out of date
+    private int generation;
 
     public MoveTracker() {
         this.movesInText = new ArrayList<String>();
         this.positionHistory = new LinkedList<String>();
         this.movesSinceLastCapture = 0;
+        this.moveCodes = new short[64];
+        this.moveCodeCount = 0;
     }
 
     public void addMove(String moveNotation) {
         movesInText.add(moveNotation);
     }
 
+    public void addMoveCode(int moveCode) {
+        if (moveCodeCount == moveCodes.length) {
+            moveCodes = Arrays.copyOf(moveCodes, moveCodes.length * 2);
+        }
+        moveCodes[moveCodeCount++] = (short) moveCode;
+    }
+
+    public byte[] getEncodedMoves() {
+        return MoveCodec.toBytes(moveCodes, moveCodeCount);
+    }
+
     public void addPosition(String position) {
         positionHistory.add(position);
     }
@@ -37,6 +56,10 @@ public class MoveTracker {
         return new ArrayList<String>(movesInText);
     }
 
+    public String getMove(int index) {
+        return movesInText.get(index);
+    }
+
     public int getMovesSinceCapture() {
         return movesSinceLastCapture;
     }
@@ -71,6 +94,12 @@ public class MoveTracker {
         movesInText.clear();
         positionHistory.clear();
         movesSinceLastCapture = 0;
+        moveCodeCount = 0;
+        generation++;
+    }
+
+    public int getGeneration() {
+        return generation;
     }
 
     public int getTotalMoves() {
@@ -8,9 +8,11 @@ import java.util.List;
 
 public class PGNFileReader {
     public static List<String> readGames(String filePath) throws IOException{
-        String content = Files.readString(Path.of(filePath));
-
+        return splitGames(Files.readString(Path.of(filePath)));
+    }
 
+    // Splits the text of a multi-game PGN file into one string per game
+    public static List<String> splitGames(String content) {
         content = content.replaceAll("\r\n", "\n");
 
 
@@ -28,4 +30,3 @@ public class PGNFileReader {
     }
 
 }
-
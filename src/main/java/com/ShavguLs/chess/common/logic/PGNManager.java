@@ -3,10 +3,13 @@ package com.ShavguLs.chess.common.logic;
 public class PGNManager {
     private GameRecorder recorder;
     private MoveTracker moveTracker;
+    // The tracker generation the recorder's moves were copied from
+    private int syncedGeneration;
 
     public PGNManager(MoveTracker tracker) {
         this.moveTracker = tracker;
         this.recorder = new GameRecorder();
+        this.syncedGeneration = tracker.getGeneration();
     }
 
     public void setPlayerNames(String whiteName, String blackName) {
@@ -17,6 +20,10 @@ public class PGNManager {
         recorder.setTimeInformation(hours, minutes, seconds);
     }
 
+    public void setTimeControl(int hours, int minutes, int seconds, int incrementSeconds) {
+        recorder.setTimeInformation(hours, minutes, seconds, incrementSeconds);
+    }
+
     public void setGameInfo(String event, String site, String round) {
         recorder.setGameInformation(event, site, round);
     }
@@ -26,16 +33,35 @@ public class PGNManager {
     }
 
     public String getPGNText() {
-        recorder.setAllMoves(moveTracker.getAllMoves());
+        syncMoves();
         return recorder.createPGNText();
     }
 
+    // Hands the recorder only the moves it has not seen yet
+    private void syncMoves() {
+        int recorded = recorder.getMoveCount();
+        int total = moveTracker.getTotalMoves();
+        if (syncedGeneration != moveTracker.getGeneration() || recorded > total) {
+            // The tracker was reset underneath us, start over; it may already hold as many moves as before
+            recorder.setAllMoves(moveTracker.getAllMoves());
+            syncedGeneration = moveTracker.getGeneration();
+            return;
+        }
+        for (int i = recorded; i < total; i++) {
+            recorder.addMove(moveTracker.getMove(i));
+        }
+    }
+
+    public byte[] getEncodedMoves() {
+        return moveTracker.getEncodedMoves();
+    }
+
     public String getWhitePlayerName() { return recorder.getWhitePlayerName(); }
     public String getBlackPlayerName() { return recorder.getBlackPlayerName(); }
     public String getResult() { return recorder.getResult(); }
 
     public boolean saveToFile(String filename) {
-        recorder.setAllMoves(moveTracker.getAllMoves());
+        syncMoves();
         return recorder.saveToFile(filename);
     }
 
@@ -0,0 +1,57 @@
+package com.ShavguLs.chess.common.logic;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist hashing of board positions: every (piece, square) pair and the side to move
+ * get a random 64 bit key, and a position hashes to the XOR of the keys present.
+ * The keys come from a fixed seed so hashes stay the same between runs and can be
+ * written to disk (see PositionIndex on the server).
+ *
+ * Like generatePositionString, only piece placement and side to move are hashed;
+ * castling rights and en passant squares are not part of the key.
+ */
+public class Zobrist {
+
+    private static final long SEED = 0x43484553535A4FL;
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                PIECE_KEYS[piece][square] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    public static long hash(Board board) {
+        long hash = 0L;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board.getPieceAt(row, col);
+                if (piece != null) {
+                    hash ^= PIECE_KEYS[pieceIndex(piece.getFenChar())][row * 8 + col];
+                }
+            }
+        }
+        if (!board.isWhiteTurn()) {
+            hash ^= BLACK_TO_MOVE_KEY;
+        }
+        return hash;
+    }
+
+    private static int pieceIndex(char fenChar) {
+        int colourOffset = Character.isUpperCase(fenChar) ? 0 : 6;
+        return colourOffset + switch (Character.toLowerCase(fenChar)) {
+            case 'p' -> 0;
+            case 'n' -> 1;
+            case 'b' -> 2;
+            case 'r' -> 3;
+            case 'q' -> 4;
+            default -> 5; // king
+        };
+    }
+}
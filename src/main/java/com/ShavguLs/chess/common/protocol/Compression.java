@@ -0,0 +1,128 @@
+package com.ShavguLs.chess.common.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional Deflate compression for the large payloads: final PGNs, game lists and PGN imports.
+ *
+ * A client that can read compressed data says so by putting ACCEPT_PREFIX ("Z:") in front of its
+ * command line, e.g. Z:LIST_GAMES or Z:PLAY_CHESS:3+2:alice. From then on the server may compress
+ * what it sends on that connection, but only payloads of at least THRESHOLD_BYTES, and only when
+ * that actually saves bytes:
+ * - A text reply becomes DEFLATED_PREFIX ("ZD:") and the Base64 of the deflated line.
+ * - A frame becomes a DEFLATED frame around the original one, see MessageCodec.
+ * A client may send its own command line as "ZD:" too, which is how large imports travel; that
+ * also counts as accepting compressed replies.
+ *
+ * Both sides use the same preset dictionary of PGN tags, common moves and list text, so even a
+ * short game list or PGN compresses well. Changing DICTIONARY breaks every client that has the
+ * old one, so it stays as it is.
+ */
+public final class Compression {
+
+    public static final String ACCEPT_PREFIX = "Z:";
+    public static final String DEFLATED_PREFIX = "ZD:";
+    // Below this the Deflate header and Base64 eat most of the saving
+    public static final int THRESHOLD_BYTES = 512;
+    // The most a client lets a compressed reply inflate to
+    public static final int MAX_REPLY_BYTES = 16 * 1024 * 1024;
+
+    // Deflate looks back from the end of the dictionary, so the most common strings come last
+    private static final byte[] DICTIONARY = (
+            " Qxd8 Rxd8 Qxe7 Bxf6 Bxe7 Nxe5 Nxd5 cxd5 exd5 Nbd7 Nbd2 Be3 Be6 Bd3 Bd6 Bc4 Bc5 Bb5 Bb4 Bg5 Bg4 "
+            + "Qe2 Qe7 Qd2 Qd7 Qc2 Qc7 Rfe1 Rfe8 Rad1 Rad8 Rac1 Rac8 h3 h6 a3 a6 c3 c6 d3 d6 e3 e6 g3 g6 "
+            + "Kg1 Kg8 Kf1 Kf8 Kh1 Kh8 =Q+ # 1/2-1/2 1-0 0-1 "
+            + "[Event \"Casual Game\"]\n[Site \"ChessGameV2\"]\n[Date \"2025.\"]\n[Round \"-\"]\n"
+            + "[TimeControl \"\"]\n[Result \"\"]\n[White \"\"]\n[Black \"\"]\n\n"
+            + "1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 1. d4 d5 2. c4 e6 3. Nc3 Nf6 "
+            + "1. e4 c5 2. Nf3 d6 3. d4 cxd4 4. Nxd4 Nf6 5. Nc3 O-O-O O-O "
+            + "|White to move,|Black to move,00:00:00 / 00:00:00,1+0,3+0,3+2,5+0,10+0,15+10,1200,1500,0|"
+            + "GAMES:1,").getBytes(StandardCharsets.UTF_8);
+
+    private Compression() {
+    }
+
+    public static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param maxBytes The most the data may inflate to; more is treated as an attack, not as data.
+     * @throws ProtocolException if the data is not deflated with the dictionary, or too large.
+     */
+    public static byte[] inflate(byte[] data, int maxBytes) throws ProtocolException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, data.length * 4 + 64));
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                        continue;
+                    }
+                    if (inflater.needsInput()) {
+                        throw new ProtocolException("Truncated compressed data.");
+                    }
+                }
+                if (out.size() + inflated > maxBytes) {
+                    throw new ProtocolException("Compressed data inflates to more than " + maxBytes + " bytes.");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Bad compressed data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The line as "ZD:" and Base64, if it is long enough and that is shorter; otherwise the line itself.
+     */
+    public static String compressLine(String line) {
+        if (line.length() < THRESHOLD_BYTES) {
+            return line;
+        }
+        String compressed = DEFLATED_PREFIX + Base64.getEncoder().encodeToString(deflate(line.getBytes(StandardCharsets.UTF_8)));
+        return compressed.length() < line.length() ? compressed : line;
+    }
+
+    /**
+     * Undoes compressLine; a line without the "ZD:" prefix is returned as it is.
+     * @throws ProtocolException if the compressed line is damaged or inflates to more than maxBytes.
+     */
+    public static String decompressLine(String line, int maxBytes) throws ProtocolException {
+        if (!line.startsWith(DEFLATED_PREFIX)) {
+            return line;
+        }
+        try {
+            byte[] deflated = Base64.getDecoder().decode(line.substring(DEFLATED_PREFIX.length()));
+            return new String(inflate(deflated, maxBytes), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ProtocolException("Bad Base64 in compressed line.");
+        }
+    }
+}
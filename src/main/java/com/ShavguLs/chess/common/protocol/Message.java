@@ -0,0 +1,70 @@
+package com.ShavguLs.chess.common.protocol;
+
+/**
+ * Every message a player or spectator connection carries once its command line has been sent.
+ * See MessageCodec for the wire format.
+ */
+public sealed interface Message {
+
+    // --- Server to client ---
+
+    record RequestNickname() implements Message { }
+
+    /**
+     * @param white True if the receiving player has the white pieces.
+     * @param opponent The opponent's nickname.
+     * @param resumeToken Lets the player back into the game after a dropped connection, with RESUME_GAME:token:lastSeq.
+     */
+    record Welcome(boolean white, String opponent, String resumeToken) implements Message { }
+
+    /**
+     * The whole game so far, sent when a connection joins and when it asks to resync.
+     * Replaying the moves gives the exact position, castling and en passant state included.
+     * @param moves The move list in MoveCodec's binary form.
+     */
+    record Snapshot(byte[] moves) implements Message { }
+
+    /**
+     * One move, sent to everyone in the game after the server accepted it.
+     * @param seq The number of moves played including this one; a gap means an update was missed.
+     * @param code The move in MoveCodec's 16 bit encoding.
+     * @param hash The Zobrist hash of the resulting position, so clients can check they applied it correctly.
+     */
+    record MoveMade(int seq, int code, long hash) implements Message { }
+
+    /**
+     * Both clocks as of the moment the server sent this. At most one clock is running;
+     * clients count it down locally until the next update, so the server only sends one per move.
+     */
+    record ClockUpdate(int whiteMillis, int blackMillis, boolean whiteRunning, boolean blackRunning) implements Message { }
+
+    record InvalidMove(String reason) implements Message { }
+
+    record GameOver(String result) implements Message { }
+
+    record FinalPgn(String pgn) implements Message { }
+
+    record ServerError(String text) implements Message { }
+
+    record SpectatorWelcome(String white, String black) implements Message { }
+
+    record GameNotFound() implements Message { }
+
+    /**
+     * The game is served by another node of the cluster. The client connects there,
+     * sends the command as its first line and carries on reading from the new connection.
+     */
+    record Redirect(String host, int port, String command) implements Message { }
+
+    // --- Client to server ---
+
+    record Nickname(String nickname) implements Message { }
+
+    /**
+     * @param code The move in MoveCodec's 16 bit encoding.
+     */
+    record Move(int code) implements Message { }
+
+    // Asks for a Snapshot after a missed or inconsistent MoveMade
+    record ResyncRequest() implements Message { }
+}
@@ -0,0 +1,242 @@
+package com.ShavguLs.chess.common.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary framing for game connections, shared by the client and the server.
+ *
+ * Each frame is a 2 byte big-endian length followed by that many bytes: one type byte and
+ * the message's fields. Numbers are fixed width, moves use MoveCodec's 16 bit form, and
+ * strings and byte arrays are a 2 byte length plus the bytes (UTF-8 for strings).
+ * A move therefore costs 5 bytes on the wire, and the server's MoveMade update 17.
+ *
+ * A DEFLATED frame carries another frame's body (type byte and fields) compressed with
+ * Compression; the server only sends one to a connection that asked for compression, and
+ * only for a large message such as a final PGN. decode unwraps it, so callers never see it.
+ */
+public final class MessageCodec {
+
+    public static final int MAX_FRAME_BYTES = 0xFFFF;
+    public static final int LENGTH_BYTES = 2;
+
+    // Type bytes, server to client
+    static final byte REQUEST_NICKNAME = 1;
+    static final byte WELCOME = 2;
+    static final byte SNAPSHOT = 3;
+    static final byte CLOCK_UPDATE = 4;
+    static final byte INVALID_MOVE = 5;
+    static final byte GAME_OVER = 6;
+    static final byte FINAL_PGN = 7;
+    static final byte SERVER_ERROR = 8;
+    static final byte SPECTATOR_WELCOME = 9;
+    static final byte GAME_NOT_FOUND = 10;
+    static final byte MOVE_MADE = 11;
+    static final byte REDIRECT = 12;
+    static final byte DEFLATED = 13;
+    // Type bytes, client to server
+    static final byte NICKNAME = 32;
+    static final byte MOVE = 33;
+    static final byte RESYNC_REQUEST = 34;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes the message as one complete frame, length prefix included.
+     * The result can be written to any number of connections.
+     */
+    public static byte[] encode(Message message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(0); // Length, filled in below
+            switch (message) {
+                case Message.RequestNickname m -> out.writeByte(REQUEST_NICKNAME);
+                case Message.Welcome m -> {
+                    out.writeByte(WELCOME);
+                    out.writeBoolean(m.white());
+                    writeString(out, m.opponent());
+                    writeString(out, m.resumeToken());
+                }
+                case Message.Snapshot m -> {
+                    out.writeByte(SNAPSHOT);
+                    out.writeShort(m.moves().length);
+                    out.write(m.moves());
+                }
+                case Message.MoveMade m -> {
+                    out.writeByte(MOVE_MADE);
+                    out.writeInt(m.seq());
+                    out.writeShort(m.code());
+                    out.writeLong(m.hash());
+                }
+                case Message.ClockUpdate m -> {
+                    out.writeByte(CLOCK_UPDATE);
+                    out.writeInt(m.whiteMillis());
+                    out.writeInt(m.blackMillis());
+                    out.writeByte((m.whiteRunning() ? 1 : 0) | (m.blackRunning() ? 2 : 0));
+                }
+                case Message.InvalidMove m -> {
+                    out.writeByte(INVALID_MOVE);
+                    writeString(out, m.reason());
+                }
+                case Message.GameOver m -> {
+                    out.writeByte(GAME_OVER);
+                    writeString(out, m.result());
+                }
+                case Message.FinalPgn m -> {
+                    out.writeByte(FINAL_PGN);
+                    writeString(out, m.pgn());
+                }
+                case Message.ServerError m -> {
+                    out.writeByte(SERVER_ERROR);
+                    writeString(out, m.text());
+                }
+                case Message.SpectatorWelcome m -> {
+                    out.writeByte(SPECTATOR_WELCOME);
+                    writeString(out, m.white());
+                    writeString(out, m.black());
+                }
+                case Message.GameNotFound m -> out.writeByte(GAME_NOT_FOUND);
+                case Message.Redirect m -> {
+                    out.writeByte(REDIRECT);
+                    writeString(out, m.host());
+                    out.writeShort(m.port());
+                    writeString(out, m.command());
+                }
+                case Message.Nickname m -> {
+                    out.writeByte(NICKNAME);
+                    writeString(out, m.nickname());
+                }
+                case Message.Move m -> {
+                    out.writeByte(MOVE);
+                    out.writeShort(m.code());
+                }
+                case Message.ResyncRequest m -> out.writeByte(RESYNC_REQUEST);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by a ByteArrayOutputStream
+        }
+
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - LENGTH_BYTES;
+        if (length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("Message too large for one frame: " + length + " bytes.");
+        }
+        frame[0] = (byte) (length >>> 8);
+        frame[1] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * The frame as a DEFLATED frame, if it is large enough for that to pay off and it does;
+     * otherwise the frame itself. For connections that accept compression.
+     */
+    public static byte[] compress(byte[] frame) {
+        if (frame.length - LENGTH_BYTES < Compression.THRESHOLD_BYTES) {
+            return frame;
+        }
+        byte[] deflated = Compression.deflate(Arrays.copyOfRange(frame, LENGTH_BYTES, frame.length));
+        int length = 1 + deflated.length;
+        if (length >= frame.length - LENGTH_BYTES) {
+            return frame;
+        }
+        byte[] compressed = new byte[LENGTH_BYTES + length];
+        compressed[0] = (byte) (length >>> 8);
+        compressed[1] = (byte) length;
+        compressed[2] = DEFLATED;
+        System.arraycopy(deflated, 0, compressed, LENGTH_BYTES + 1, deflated.length);
+        return compressed;
+    }
+
+    /**
+     * Decodes one frame's body, i.e. everything after the length prefix.
+     */
+    public static Message decode(ByteBuffer body) throws ProtocolException {
+        if (body.hasRemaining() && body.get(body.position()) == DEFLATED) {
+            body.get();
+            byte[] deflated = new byte[body.remaining()];
+            body.get(deflated);
+            ByteBuffer inner = ByteBuffer.wrap(Compression.inflate(deflated, MAX_FRAME_BYTES));
+            if (inner.hasRemaining() && inner.get(0) == DEFLATED) {
+                throw new ProtocolException("Nested compressed frame.");
+            }
+            return decode(inner);
+        }
+        try {
+            byte type = body.get();
+            return switch (type) {
+                case REQUEST_NICKNAME -> new Message.RequestNickname();
+                case WELCOME -> new Message.Welcome(body.get() != 0, readString(body), readString(body));
+                case SNAPSHOT -> new Message.Snapshot(readBytes(body));
+                case MOVE_MADE -> new Message.MoveMade(body.getInt(), Short.toUnsignedInt(body.getShort()), body.getLong());
+                case CLOCK_UPDATE -> {
+                    int whiteMillis = body.getInt();
+                    int blackMillis = body.getInt();
+                    byte running = body.get();
+                    yield new Message.ClockUpdate(whiteMillis, blackMillis, (running & 1) != 0, (running & 2) != 0);
+                }
+                case INVALID_MOVE -> new Message.InvalidMove(readString(body));
+                case GAME_OVER -> new Message.GameOver(readString(body));
+                case FINAL_PGN -> new Message.FinalPgn(readString(body));
+                case SERVER_ERROR -> new Message.ServerError(readString(body));
+                case SPECTATOR_WELCOME -> new Message.SpectatorWelcome(readString(body), readString(body));
+                case GAME_NOT_FOUND -> new Message.GameNotFound();
+                case REDIRECT -> new Message.Redirect(readString(body), Short.toUnsignedInt(body.getShort()), readString(body));
+                case NICKNAME -> new Message.Nickname(readString(body));
+                case MOVE -> new Message.Move(Short.toUnsignedInt(body.getShort()));
+                case RESYNC_REQUEST -> new Message.ResyncRequest();
+                default -> throw new ProtocolException("Unknown message type " + type);
+            };
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated message frame.");
+        }
+    }
+
+    /**
+     * Blocks until a whole frame has arrived and decodes it.
+     * @throws java.io.EOFException If the stream ends, e.g. because the peer disconnected.
+     */
+    public static Message read(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Writes the message as one frame. The stream is not flushed.
+     */
+    public static void write(OutputStream out, Message message) throws IOException {
+        out.write(encode(message));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("String too large for one frame: " + utf8.length + " bytes.");
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer body) {
+        return new String(readBytes(body), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer body) {
+        int length = Short.toUnsignedInt(body.getShort());
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return bytes;
+    }
+}
@@ -1,186 +1,403 @@
 package com.ShavguLs.chess.server;
 
+import com.ShavguLs.chess.common.log.Log;
+import com.ShavguLs.chess.common.logic.Board;
+import com.ShavguLs.chess.common.logic.IllegalMoveException;
+import com.ShavguLs.chess.common.logic.Zobrist;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
 import java.io.*;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChessServer {
-    private static final int PORT = 8888;
-    private static final List<Socket> waitingClients = new ArrayList<>();
+    private static final Log LOG = Log.get(ChessServer.class);
+    // Threads for PGN imports and for handing sockets over to games
+    private static final int FRONT_END_WORKERS = 4;
+    // Threads that create and start the sessions for paired players
+    private static final int GAME_STARTERS = 2;
+    // How long a draining server waits for the sessions to write their checkpoints
+    private static final long CHECKPOINT_TIMEOUT_MS = 5000;
+    // How long it waits for finished games to reach the database
+    private static final long SAVE_TIMEOUT_MS = 10_000;
+    private static Matchmaker<WaitingPlayer> matchmaker;
+    // Set when this server is a node of a cluster; the coordinator then does the matchmaking
+    private static ClusterNode cluster;
 
     private static final Map<Integer, GameSession> activeGames = new ConcurrentHashMap<>();
+    // What LIST_GAMES shows; kept up to date by the sessions themselves
+    private static final GameDirectory gameDirectory = new GameDirectory();
     private static final AtomicInteger gameIdCounter = new AtomicInteger(1);
 
+    // Opening explorer, built offline with PositionIndex build. Null when no index file exists.
+    private static PositionIndex positionIndex;
+
+    private static volatile ConnectionFrontEnd frontEnd;
+    // Set once the server is stopping; no new games start after that
+    private static volatile boolean draining;
+
     public static void main(String[] args) {
-        System.out.println("Chess Server is starting...");
+        ServerConfig config = ServerConfig.load();
+        Log.setLevel(config.getLogLevel());
+        LOG.info("Chess Server is starting");
+        ServerThreads.configure(config.getThreadMode());
+        LOG.info("Thread mode", "sessions", config.getThreadMode().name().toLowerCase());
         DatabaseManager.initializeDatabase();
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Server is listening on port " + PORT);
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                new Thread(() -> handleConnection(clientSocket)).start();
+        loadPositionIndex();
+        ServerMetrics.start(config.getMetricsPort());
+        ExecutorService gameStarters = ServerThreads.newExecutor("game-starter", GAME_STARTERS);
+        String coordinator = config.getClusterCoordinator();
+        if (coordinator == null) {
+            matchmaker = new Matchmaker<>(ChessServer::startGame, gameStarters);
+        } else {
+            try {
+                cluster = ClusterNode.connect(coordinator, config.getAdvertisedHost(), config.getPort(), gameDirectory,
+                        ChessServer::startGame, gameStarters);
+                LOG.info("Joined the cluster", "coordinator", coordinator);
+            } catch (IOException | NumberFormatException e) {
+                LOG.error("Could not join the cluster", "coordinator", coordinator, "error", e.getMessage());
+                return;
+            }
+        }
+        // After joining, so the coordinator learns about the restored games before any new one starts
+        restoreGames(config.getCheckpointDir());
+        int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        frontEnd = new ConnectionFrontEnd(config.getPort(), eventLoops, FRONT_END_WORKERS, config.getLimits());
+        // SIGTERM or Ctrl-C drains the server instead of dropping every game
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(config.getDrainSeconds(), config.getCheckpointDir()), "drain"));
+        try {
+            frontEnd.run();
+        } catch (IOException e) {
+            LOG.error("Server error", e);
+        }
+    }
+
+    /**
+     * Stops the server without losing games, for a restart or a deployment.
+     * The port is closed at once so the next process can bind it. Running games get drainSeconds
+     * to finish; the rest are saved to the checkpoint directory, where the next process picks them up
+     * and the players resume them. Finished games are written to the database in the background;
+     * the drain waits for those writes too, so no finished result is left unsaved.
+     */
+    static void drain(int drainSeconds, Path checkpointDir) {
+        draining = true;
+        if (frontEnd != null) {
+            frontEnd.stopAccepting();
+        }
+        LOG.info("Draining", "games", activeGames.size(), "waitSeconds", drainSeconds);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        try {
+            while (!activeGames.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            List<CompletableFuture<Boolean>> checkpoints = new ArrayList<>();
+            for (GameSession gameSession : activeGames.values()) {
+                checkpoints.add(gameSession.checkpoint(checkpointDir));
+            }
+            int saved = 0;
+            long checkpointDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_TIMEOUT_MS);
+            for (CompletableFuture<Boolean> checkpoint : checkpoints) {
+                long left = Math.max(0, checkpointDeadline - System.nanoTime());
+                if (checkpoint.get(left, TimeUnit.NANOSECONDS)) {
+                    saved++;
+                }
+            }
+            LOG.info("Drained", "checkpointed", saved, "dir", checkpointDir);
+        } catch (TimeoutException e) {
+            LOG.error("Sessions did not close in time", "games", activeGames.size());
+        } catch (InterruptedException | ExecutionException e) {
+            LOG.error("Drain was interrupted", "games", activeGames.size());
+        }
+        try {
+            if (!GameSession.finishSaves(SAVE_TIMEOUT_MS)) {
+                LOG.error("Finished games were still being saved when the server stopped");
+            }
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted while saving finished games");
+        }
+    }
+
+    /**
+     * Takes over the games a draining server left behind; their players resume them with their tokens.
+     * In a cluster the coordinator handed out their ids, so it is told this node hosts them: it then
+     * lists them again and does not hand out their ids to new games.
+     */
+    private static void restoreGames(Path checkpointDir) {
+        for (SessionCheckpoint checkpoint : SessionCheckpoint.takeAll(checkpointDir)) {
+            try {
+                GameSession gameSession = GameSession.restore(checkpoint);
+                activeGames.put(checkpoint.gameId(), gameSession);
+                gameIdCounter.accumulateAndGet(checkpoint.gameId() + 1, Math::max);
+                if (cluster != null) {
+                    try {
+                        cluster.hosting(checkpoint.gameId());
+                    } catch (IOException e) {
+                        // The players can still resume here; the game is just not listed on other nodes
+                        LOG.warn("Could not announce restored game to the cluster", "game", checkpoint.gameId(), "error", e.getMessage());
+                    }
+                }
+                gameSession.startRestored();
+            } catch (IllegalMoveException | IOException e) {
+                LOG.warn("Could not restore game", "game", checkpoint.gameId(), "error", e.getMessage());
             }
+        }
+    }
+
+    private static void loadPositionIndex() {
+        Path indexFile = Path.of(PositionIndex.DEFAULT_FILE);
+        if (!Files.exists(indexFile)) {
+            LOG.info("No position index found, EXPLORE_POSITION is disabled");
+            return;
+        }
+        try {
+            positionIndex = PositionIndex.open(indexFile);
+            LOG.info("Position index loaded", "positions", positionIndex.size());
         } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
-            e.printStackTrace();
+            LOG.warn("Could not open position index", "error", e.getMessage());
         }
     }
 
     /**
-     * NEW: Handles the PGN import request.
+     * Handles the PGN import request and returns the reply for the client.
      */
-    private static void handlePgnImport(Socket clientSocket, String message) throws IOException {
-        System.out.println("Processing PGN import command.");
+    static String importPgn(String message) {
         String pgnData = message.substring(11).replace("||NEWLINE||", "\n");
 
-        // Call the DatabaseManager to do the actual work.
-        // We will create this method in the next step.
         String response = DatabaseManager.importPgn(pgnData);
-
-        // Send the success/failure message back to the client and close.
-        PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-        out.println(response);
-        System.out.println("Sent response to PGN import client: " + response);
-        clientSocket.close();
+        LOG.info("PGN import", "chars", pgnData.length(), "response", response);
+        return response;
     }
 
     /**
-     * Your original matchmaking logic, now in its own method.
-     * This method is thread-safe thanks to the synchronized block.
+     * Puts a player into the matchmaking pool of the requested time control.
+     * The command is PLAY_CHESS, optionally followed by :timeControl and :nickname,
+     * e.g. PLAY_CHESS:3+2:alice. The nickname is used to look up the player's rating.
      */
-    private static void handleGamePlayer(Socket clientSocket) {
-        System.out.println("Client wants to play. Adding to waiting pool.");
-        synchronized (waitingClients) {
-            waitingClients.add(clientSocket);
-            System.out.println("Client added to waiting pool. Total waiting: " + waitingClients.size());
-
-            if (waitingClients.size() >= 2) {
-                System.out.println("Two players found! Starting a new game session.");
-                Socket player1Socket = waitingClients.remove(0);
-                Socket player2Socket = waitingClients.remove(0);
-
-                // Generate game ID first, then create session, then register !!!
-                int gameId = gameIdCounter.getAndIncrement();
-                GameSession gameSession = new GameSession(player1Socket, player2Socket, gameId);
-                activeGames.put(gameId, gameSession); // Now register with actual session
-
-                new Thread(gameSession).start();
-                System.out.println("GameSession #" + gameId + " thread started. Server is ready for new connections.");
-            }
+    static void handleGamePlayer(Socket clientSocket, InputStream in, String command, boolean compress) {
+        String[] parts = command.split(":", 3);
+        TimeControl timeControl;
+        try {
+            timeControl = parts.length > 1 && !parts[1].isBlank() ? TimeControl.parse(parts[1]) : TimeControl.DEFAULT;
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Rejected play request", "error", e.getMessage());
+            try {
+                MessageCodec.write(clientSocket.getOutputStream(), new Message.ServerError(e.getMessage()));
+                clientSocket.close();
+            } catch (IOException ex) { }
+            return;
+        }
+        if (draining) {
+            try {
+                MessageCodec.write(clientSocket.getOutputStream(), new Message.ServerError("The server is restarting. Please try again shortly."));
+                clientSocket.close();
+            } catch (IOException e) { }
+            return;
+        }
+        String nickname = parts.length > 2 ? parts[2].trim() : "";
+        int rating = nickname.isEmpty() ? DatabaseManager.DEFAULT_RATING : DatabaseManager.getRating(nickname);
+
+        LOG.debug("Player waiting", "player", nickname, "tc", timeControl, "rating", rating);
+        WaitingPlayer player = new WaitingPlayer(clientSocket, in, compress, nickname, rating, timeControl, System.nanoTime());
+        if (cluster == null) {
+            matchmaker.join(player);
+            return;
+        }
+        try {
+            cluster.seek(player);
+        } catch (IOException e) {
+            LOG.warn("Could not hand player to the cluster", "player", nickname, "error", e.getMessage());
+            try {
+                MessageCodec.write(clientSocket.getOutputStream(), new Message.ServerError(e.getMessage()));
+                clientSocket.close();
+            } catch (IOException ex) { }
         }
     }
 
-    private static void handleConnection(Socket clientSocket) {
-        System.out.println("New client connected: " + clientSocket.getInetAddress().getHostAddress() + ". Awaiting initial command...");
+    /**
+     * Seats a player the cluster redirected to this node, JOIN_GAME:ticket:nickname.
+     */
+    static void handleJoin(Socket clientSocket, InputStream in, String command, boolean compress) {
+        if (cluster != null) {
+            cluster.join(clientSocket, in, compress, command);
+            return;
+        }
         try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            clientSocket.setSoTimeout(5000); // 5-second timeout for the client to send its command
-            String command = in.readLine();
+            MessageCodec.write(clientSocket.getOutputStream(), new Message.ServerError("This server is not part of a cluster."));
+            clientSocket.close();
+        } catch (IOException e) { }
+    }
 
-            if (command == null) {
-                System.out.println("Client connected but sent no data. Closing connection.");
-                clientSocket.close();
+    /**
+     * Puts a player whose connection dropped back into their game, RESUME_GAME:token:lastSeq.
+     * The token is the one from the player's Welcome; lastSeq is the number of moves they have seen.
+     */
+    static void handleResume(Socket clientSocket, InputStream in, String command, boolean compress) {
+        String[] parts = command.split(":", 3);
+        String token = parts.length > 1 ? parts[1].trim() : "";
+        try {
+            int lastSeq = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : -1;
+            GameSession gameSession = activeGames.get(GameSession.gameIdOf(token));
+            if (gameSession != null && gameSession.isActive() && gameSession.resume(clientSocket, in, compress, token, lastSeq)) {
                 return;
             }
+            MessageCodec.write(clientSocket.getOutputStream(), new Message.GameNotFound());
+            clientSocket.close();
+        } catch (NumberFormatException | IOException e) {
+            LOG.warn("Could not handle resume", "error", e.getMessage());
+            try { clientSocket.close(); } catch (IOException ex) { }
+        }
+    }
 
-            System.out.println("Client sent command: " + command);
-
-            // Check the command to decide what to do
-            if (command.startsWith("IMPORT_PGN:")) {
-                handlePgnImport(clientSocket, command);
-            } else if (command.equals("PLAY_CHESS")) {
-                handleGamePlayer(clientSocket);
-            } else if (command.startsWith("SPECTATE_GAME:")) {
-                handleSpectator(clientSocket, command);
-            } else if (command.equals("LIST_GAMES")) {
-                handleGameListRequest(clientSocket);
-            } else {
-                System.out.println("Client sent an unknown command. Closing connection.");
-                clientSocket.close();
-            }
+    // Called by the matchmaker, on a game-starter thread, for every pair it finds
+    private static void startGame(WaitingPlayer white, WaitingPlayer black) {
+        startGame(white, black, gameIdCounter.getAndIncrement());
+    }
 
-        } catch (SocketTimeoutException e) {
-            System.err.println("Connection timed out waiting for client's initial command.");
-            try { clientSocket.close(); } catch (IOException ex) { }
+    // In a cluster the coordinator hands out the game ids
+    private static void startGame(WaitingPlayer white, WaitingPlayer black, int gameId) {
+        if (draining) {
+            refuse(white, black, "The server is restarting. Please try again shortly.");
+            return;
+        }
+        GameSession gameSession = new GameSession(white, black, gameId);
+        // A restored game may hold the id, if a restarted coordinator handed it out again
+        if (activeGames.putIfAbsent(gameId, gameSession) != null) {
+            LOG.error("Game id is already in use, not starting the game", "game", gameId);
+            refuse(white, black, "The game could not be started. Please try again.");
+            return;
+        }
+        try {
+            gameSession.start();
         } catch (IOException e) {
-            System.err.println("Error on new connection handler: " + e.getMessage());
-            try { clientSocket.close(); } catch (IOException ex) { }
+            LOG.warn("Could not start game", "game", gameId, "error", e.getMessage());
+            removeGame(gameId);
+            try { white.socket().close(); } catch (IOException ex) { }
+            try { black.socket().close(); } catch (IOException ex) { }
+        }
+    }
+
+    private static void refuse(WaitingPlayer white, WaitingPlayer black, String reason) {
+        for (WaitingPlayer player : List.of(white, black)) {
+            try {
+                MessageCodec.write(player.socket().getOutputStream(), new Message.ServerError(reason));
+                player.socket().close();
+            } catch (IOException e) { }
         }
     }
 
      // Handles spectator connections
-    private static void handleSpectator(Socket clientSocket, String command) {
+    static void handleSpectator(Socket clientSocket, InputStream in, String command, boolean compress) {
         try {
             // Extract game id from command
             String gameIdStr = command.substring(14);
             int gameId = Integer.parseInt(gameIdStr.trim());
 
-            System.out.println("Client wants to spectate game #" + gameId);
-
             // Find the game session
             GameSession gameSession = activeGames.get(gameId);
 
             if (gameSession != null && gameSession.isActive()) {
                 // Add spectator to the game session
-                gameSession.addSpectator(clientSocket);
-                System.out.println("Spectator added to game #" + gameId);
+                gameSession.addSpectator(clientSocket, in, compress);
+            } else if (cluster != null && cluster.locate(gameId) != null) {
+                // Another node runs it
+                ClusterNode.Location location = cluster.locate(gameId);
+                MessageCodec.write(clientSocket.getOutputStream(), new Message.Redirect(location.host(), location.port(), command));
+                clientSocket.close();
             } else {
                 // Game not found or ended
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-                out.println("GAME_NOT_FOUND");
-                System.out.println("Game #" + gameId + " not found for spectator");
+                MessageCodec.write(clientSocket.getOutputStream(), new Message.GameNotFound());
+                LOG.debug("Spectated game not found", "game", gameId);
                 clientSocket.close();
             }
 
         } catch (Exception e) {
-            System.err.println("Error handling spectator: " + e.getMessage());
+            LOG.warn("Could not handle spectator", "error", e.getMessage());
             try { clientSocket.close(); } catch (IOException ex) { }
         }
     }
 
-     // Handles requests for the list of active games
-    private static void handleGameListRequest(Socket clientSocket) {
+    /**
+     * Builds the reply to a LIST_GAMES request from the game directory.
+     * Plain LIST_GAMES lists every game; LIST_GAMES:key=value;... filters and pages, see GameDirectory.Query.
+     */
+    static String buildGameList(String command) {
+        if (command.equals("LIST_GAMES")) {
+            return gameDirectory.list(GameDirectory.Query.ALL);
+        }
         try {
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+            return gameDirectory.list(GameDirectory.Query.parse(command.substring(11)));
+        } catch (IllegalArgumentException e) {
+            return "ERROR:" + e.getMessage();
+        }
+    }
 
-            StringBuilder gamesList = new StringBuilder("GAMES:");
-            boolean first = true;
+    static void publishGame(GameDirectory.Entry entry) {
+        gameDirectory.publish(entry);
+        if (cluster != null) {
+            cluster.published(entry);
+        }
+    }
 
-            // Build list of active games
-            for (Map.Entry<Integer, GameSession> entry : activeGames.entrySet()) {
-                GameSession session = entry.getValue();
-                if (session.isActive()) {
-                    if (!first) {
-                        gamesList.append("|");
-                    }
-                    first = false;
-
-                    // Format: gameId,white,black,status,time
-                    gamesList.append(entry.getKey()).append(",");
-                    gamesList.append(session.getWhitePlayerName()).append(",");
-                    gamesList.append(session.getBlackPlayerName()).append(",");
-                    gamesList.append(session.getCurrentTurn()).append(" to move,");
-                    gamesList.append(session.getTimeStatus());
-                }
-            }
+    // Answers "which stored games reached this FEN" from the position index
+    static String explorePosition(String fen) {
+        if (positionIndex == null) {
+            return "ERROR:Position index is not available.";
+        }
+        try {
+            Board board = new Board();
+            board.loadFen(fen.trim());
+            PositionIndex.Stats stats = positionIndex.lookup(Zobrist.hash(board));
+            return "EXPLORER:" + PositionIndex.formatStats(stats);
+        } catch (Exception e) {
+            LOG.debug("Could not answer explore request", "error", e.getMessage());
+            return "ERROR:Could not read that position.";
+        }
+    }
 
-            out.println(gamesList.toString());
-            System.out.println("Sent games list to client: " + gamesList.toString());
-            clientSocket.close();
+    static int activeGameCount() {
+        return activeGames.size();
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error sending games list: " + e.getMessage());
-            try { clientSocket.close(); } catch (IOException ex) { }
+    static int connectedPlayerCount() {
+        int players = 0;
+        for (GameSession session : activeGames.values()) {
+            players += session.getConnectedPlayerCount();
+        }
+        return players;
+    }
+
+    static int spectatorCount() {
+        int spectators = 0;
+        for (GameSession session : activeGames.values()) {
+            spectators += session.getSpectatorCount();
+        }
+        return spectators;
+    }
+
+    static int waitingPlayerCount() {
+        if (cluster != null) {
+            return cluster.waitingCount();
         }
+        return matchmaker == null ? 0 : matchmaker.waitingCount();
     }
 
     public static void removeGame(int gameId) {
         activeGames.remove(gameId);
+        gameDirectory.remove(gameId);
+        if (cluster != null) {
+            cluster.removed(gameId);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.ShavguLs.chess.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The process that ties several chess servers (nodes) into one cluster.
+ *
+ * Players still connect to any node, but the node only forwards their request here: the
+ * coordinator runs the one matchmaker for the whole cluster, hands out game ids, and picks
+ * the node that hosts each game. A player waiting on another node is redirected to the host.
+ * It also keeps the game to node directory: every node reports its listed games, and the
+ * coordinator passes them on to all other nodes, so LIST_GAMES on any node shows every game
+ * and SPECTATE_GAME can redirect to the right one.
+ *
+ * Nodes talk to the coordinator in text lines, a command and '|' separated fields:
+ *   node to coordinator: HELLO:host|port  SEEK:ticket|timeControl|rating  LISTING:entry  UNLISTED:gameId
+ *                        HOSTING:gameId (a game restored from a checkpoint)
+ *   coordinator to node: HOST:gameId|timeControl|whiteTicket|whiteRating|blackTicket|blackRating
+ *                        REDIRECT:ticket|host|port  LISTING:host|port|entry  UNLISTED:gameId
+ * The coordinator trusts its nodes, so its port belongs on a private network.
+ * Start it with: java com.ShavguLs.chess.server.ClusterCoordinator, listening on cluster.port.
+ */
+public class ClusterCoordinator {
+
+    public static final int DEFAULT_PORT = 9888;
+
+    // A connected node. Several threads write to it, so lines are sent under the lock.
+    private static final class NodeLink {
+        final Socket socket;
+        final BufferedWriter out;
+        final Lock writeLock = new ReentrantLock();
+        // Games hosted there; the node with fewer gets the next game between two nodes
+        final Set<Integer> games = ConcurrentHashMap.newKeySet();
+        volatile String host;
+        volatile int port;
+        volatile boolean alive = true;
+
+        NodeLink(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        void send(String line) {
+            writeLock.lock();
+            try {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // The reader thread notices the closed socket and drops the node
+                try { socket.close(); } catch (IOException ex) { }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    // A player waiting on some node, known by the ticket the node gave it
+    private record Seeker(NodeLink node, String ticket, int rating, TimeControl timeControl, long since)
+            implements Matchmaker.Candidate { }
+
+    private final List<NodeLink> nodes = new CopyOnWriteArrayList<>();
+    private final Map<Integer, NodeLink> gameNodes = new ConcurrentHashMap<>();
+    // The latest listing of every game, for nodes that join later
+    private final Map<Integer, String> listings = new ConcurrentHashMap<>();
+    // Listing changes and node arrivals are ordered by this, so no node sees a game after its removal
+    private final Lock directoryLock = new ReentrantLock();
+    private final AtomicInteger gameIdCounter = new AtomicInteger(1);
+    private final Matchmaker<Seeker> matchmaker;
+
+    public ClusterCoordinator() {
+        this.matchmaker = new Matchmaker<>(this::startGame, Runnable::run);
+    }
+
+    public static void main(String[] args) {
+        ServerConfig config = ServerConfig.load();
+        int port = config.getClusterPort();
+        try {
+            new ClusterCoordinator().run(port);
+        } catch (IOException e) {
+            System.err.println("Coordinator error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public void run(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            System.out.println("Cluster coordinator is listening on port " + port);
+            while (true) {
+                Socket socket = serverSocket.accept();
+                NodeLink node = new NodeLink(socket);
+                Thread.ofPlatform().name("node-link-" + socket.getPort()).daemon(true).start(() -> readNode(node));
+            }
+        }
+    }
+
+    private void readNode(NodeLink node) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(node.socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String[] fields = line.substring(colon + 1).split("\\|", -1);
+                try {
+                    switch (line.substring(0, colon)) {
+                        case "HELLO" -> addNode(node, fields[0], Integer.parseInt(fields[1]));
+                        case "SEEK" -> matchmaker.join(new Seeker(node, fields[0], Integer.parseInt(fields[2]),
+                                TimeControl.parse(fields[1]), System.nanoTime()));
+                        case "HOSTING" -> hosting(node, Integer.parseInt(fields[0]));
+                        case "LISTING" -> listed(node, line.substring(colon + 1));
+                        case "UNLISTED" -> unlisted(Integer.parseInt(fields[0]));
+                        default -> System.err.println("Unknown command from node " + node + ": " + line);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Bad line from node " + node + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Lost node " + node + ": " + e.getMessage());
+        } finally {
+            removeNode(node);
+        }
+    }
+
+    private void addNode(NodeLink node, String host, int port) {
+        node.host = host;
+        node.port = port;
+        directoryLock.lock();
+        try {
+            nodes.add(node);
+            for (Map.Entry<Integer, String> listing : listings.entrySet()) {
+                NodeLink hostNode = gameNodes.get(listing.getKey());
+                if (hostNode != null) {
+                    node.send("LISTING:" + hostNode.host + "|" + hostNode.port + "|" + listing.getValue());
+                }
+            }
+        } finally {
+            directoryLock.unlock();
+        }
+        System.out.println("Node " + node + " joined the cluster (" + nodes.size() + " nodes).");
+    }
+
+    // The node's games end with it; players waiting there are dropped by the matchmaker when paired
+    private void removeNode(NodeLink node) {
+        node.alive = false;
+        try { node.socket.close(); } catch (IOException e) { }
+        directoryLock.lock();
+        try {
+            nodes.remove(node);
+            for (int gameId : node.games) {
+                gameNodes.remove(gameId);
+                listings.remove(gameId);
+                broadcast(null, "UNLISTED:" + gameId);
+            }
+        } finally {
+            directoryLock.unlock();
+        }
+        System.out.println("Node " + node + " left the cluster.");
+    }
+
+    // A game the node took over from a checkpoint; its id was handed out before, maybe by an earlier coordinator
+    private void hosting(NodeLink node, int gameId) {
+        gameIdCounter.accumulateAndGet(gameId + 1, Math::max);
+        NodeLink current = gameNodes.putIfAbsent(gameId, node);
+        if (current != null && current != node) {
+            System.err.println("Game #" + gameId + " of node " + node + " clashes with the one on node " + current
+                    + ", it stays unlisted.");
+            return;
+        }
+        node.games.add(gameId);
+    }
+
+    private void listed(NodeLink node, String entry) {
+        int gameId = Integer.parseInt(entry.substring(0, entry.indexOf('|')));
+        directoryLock.lock();
+        try {
+            if (gameNodes.get(gameId) != node) {
+                return;
+            }
+            listings.put(gameId, entry);
+            broadcast(node, "LISTING:" + node.host + "|" + node.port + "|" + entry);
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private void unlisted(int gameId) {
+        directoryLock.lock();
+        try {
+            NodeLink node = gameNodes.remove(gameId);
+            if (node == null) {
+                return;
+            }
+            node.games.remove(gameId);
+            if (listings.remove(gameId) != null) {
+                broadcast(node, "UNLISTED:" + gameId);
+            }
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    // Sends a line to every node except the one it came from
+    private void broadcast(NodeLink origin, String line) {
+        for (NodeLink node : nodes) {
+            if (node != origin) {
+                node.send(line);
+            }
+        }
+    }
+
+    // Called by the matchmaker for every pair; both players end up on the host node
+    private void startGame(Seeker white, Seeker black) {
+        if (!white.node().alive || !black.node().alive) {
+            for (Seeker seeker : List.of(white, black)) {
+                if (seeker.node().alive) {
+                    matchmaker.join(seeker);
+                }
+            }
+            return;
+        }
+        NodeLink host = white.node();
+        if (black.node() != host && black.node().games.size() < host.games.size()) {
+            host = black.node();
+        }
+        int gameId = gameIdCounter.getAndIncrement();
+        gameNodes.put(gameId, host);
+        host.games.add(gameId);
+        host.send("HOST:" + gameId + "|" + white.timeControl() + "|" + white.ticket() + "|" + white.rating()
+                + "|" + black.ticket() + "|" + black.rating());
+        for (Seeker seeker : List.of(white, black)) {
+            if (seeker.node() != host) {
+                seeker.node().send("REDIRECT:" + seeker.ticket() + "|" + host.host + "|" + host.port);
+            }
+        }
+        System.out.println("Game #" + gameId + " goes to node " + host + ".");
+    }
+}
@@ -0,0 +1,404 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This server's link to the cluster coordinator, used when cluster.coordinator is set.
+ *
+ * Players asking for a game get a ticket and are announced to the coordinator instead of
+ * the local matchmaker. When the coordinator pairs them it names a host node: players
+ * waiting here for a game hosted elsewhere get a Redirect and come back there with
+ * JOIN_GAME:ticket, and a game hosted here starts once both seats are taken.
+ * Listing changes of local games are sent to the coordinator in batches, and the other
+ * nodes' games arrive from it into the same GameDirectory, along with where they run.
+ * See ClusterCoordinator for the line protocol.
+ */
+class ClusterNode {
+
+    // How long a game hosted here waits for a redirected player to arrive
+    private static final long SEAT_TIMEOUT_MS = 10_000;
+    // Listing changes are batched like the directory's own snapshots
+    private static final long SYNC_INTERVAL_MS = 250;
+
+    /**
+     * Starts a game whose id the coordinator handed out.
+     */
+    interface GameStarter {
+        void startGame(WaitingPlayer white, WaitingPlayer black, int gameId);
+    }
+
+    /**
+     * Where a game of another node runs.
+     */
+    record Location(String host, int port) { }
+
+    // A game hosted here whose players are still arriving
+    private static final class PendingGame {
+        final int gameId;
+        final TimeControl timeControl;
+        final String whiteTicket;
+        final String blackTicket;
+        final int whiteRating;
+        final int blackRating;
+        WaitingPlayer white;
+        WaitingPlayer black;
+
+        PendingGame(String[] fields) {
+            this.gameId = Integer.parseInt(fields[0]);
+            this.timeControl = TimeControl.parse(fields[1]);
+            this.whiteTicket = fields[2];
+            this.whiteRating = Integer.parseInt(fields[3]);
+            this.blackTicket = fields[4];
+            this.blackRating = Integer.parseInt(fields[5]);
+        }
+    }
+
+    private final Socket socket;
+    private final BufferedWriter out;
+    private final Lock writeLock = new ReentrantLock();
+    private final GameDirectory directory;
+    private final GameStarter starter;
+    private final Executor executor;
+    private final SecureRandom random = new SecureRandom();
+    private final TimingWheel seatTimer = new TimingWheel("cluster-seats", 100, 128);
+    private volatile boolean connected = true;
+
+    // Players waiting here, by ticket
+    private final Map<String, WaitingPlayer> seekers = new ConcurrentHashMap<>();
+    // Seats of the games hosted here, both tickets of a game point to it; guarded by seatLock
+    private final Map<String, PendingGame> pendingGames = new ConcurrentHashMap<>();
+    // Redirected players who got here before the coordinator's HOST line; guarded by seatLock
+    private final Map<String, WaitingPlayer> earlyArrivals = new ConcurrentHashMap<>();
+    private final Lock seatLock = new ReentrantLock();
+
+    private final Map<Integer, Location> remoteGames = new ConcurrentHashMap<>();
+    // Local listing changes waiting for the next sync
+    private final Map<Integer, GameDirectory.Entry> changedListings = new ConcurrentHashMap<>();
+    private final Set<Integer> endedGames = ConcurrentHashMap.newKeySet();
+
+    private ClusterNode(Socket socket, GameDirectory directory, GameStarter starter, Executor executor) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        this.directory = directory;
+        this.starter = starter;
+        this.executor = executor;
+    }
+
+    /**
+     * Connects to the coordinator and announces this node.
+     * @param coordinator host:port of the coordinator.
+     * @param advertisedHost The name players on other nodes use to reach this one.
+     * @param directory The directory LIST_GAMES answers from; other nodes' games are added to it.
+     * @param starter Starts the games hosted here, on the executor.
+     */
+    static ClusterNode connect(String coordinator, String advertisedHost, int advertisedPort, GameDirectory directory,
+                               GameStarter starter, Executor executor) throws IOException {
+        int colon = coordinator.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException("cluster.coordinator must be host:port, not " + coordinator);
+        }
+        Socket socket = new Socket(coordinator.substring(0, colon), Integer.parseInt(coordinator.substring(colon + 1).trim()));
+        ClusterNode node = new ClusterNode(socket, directory, starter, executor);
+        node.send(List.of("HELLO:" + advertisedHost + "|" + advertisedPort));
+        Thread.ofPlatform().name("cluster-link").daemon(true).start(node::readCoordinator);
+        Thread.ofPlatform().name("cluster-sync").daemon(true).start(node::syncListings);
+        return node;
+    }
+
+    /**
+     * Hands a player to the cluster's matchmaker.
+     * @throws IOException if the coordinator cannot be reached.
+     */
+    void seek(WaitingPlayer player) throws IOException {
+        if (!connected) {
+            throw new IOException("The cluster coordinator is not available.");
+        }
+        String ticket = HexFormat.of().formatHex(nextTicketBytes());
+        seekers.put(ticket, player);
+        send(List.of("SEEK:" + ticket + "|" + player.timeControl() + "|" + player.rating()));
+    }
+
+    private byte[] nextTicketBytes() {
+        byte[] bytes = new byte[12];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Seats a player redirected here with JOIN_GAME:ticket:nickname.
+     */
+    void join(Socket clientSocket, InputStream in, boolean compress, String command) {
+        String[] parts = command.split(":", 3);
+        String ticket = parts.length > 1 ? parts[1].trim() : "";
+        String nickname = parts.length > 2 ? parts[2].trim() : "";
+        WaitingPlayer arrived = new WaitingPlayer(clientSocket, in, compress, nickname, DatabaseManager.DEFAULT_RATING,
+                TimeControl.DEFAULT, System.nanoTime());
+        PendingGame ready = null;
+        seatLock.lock();
+        try {
+            PendingGame game = pendingGames.get(ticket);
+            if (game == null) {
+                // The coordinator's HOST line may still be on its way
+                earlyArrivals.put(ticket, arrived);
+                seatTimer.schedule(() -> dropEarlyArrival(ticket, arrived), SEAT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (seat(game, ticket, arrived)) {
+                ready = game;
+            }
+        } finally {
+            seatLock.unlock();
+        }
+        if (ready != null) {
+            begin(ready);
+        }
+    }
+
+    // Players of this node waiting for the coordinator to pair them
+    int waitingCount() {
+        return seekers.size();
+    }
+
+    /**
+     * Where another node's game runs, or null if it is not known.
+     */
+    Location locate(int gameId) {
+        return remoteGames.get(gameId);
+    }
+
+    // Called whenever a local game's listing changes; sent with the next sync
+    void published(GameDirectory.Entry entry) {
+        changedListings.put(entry.gameId(), entry);
+    }
+
+    void removed(int gameId) {
+        endedGames.add(gameId);
+    }
+
+    /**
+     * Tells the coordinator that a game it did not just place runs here, i.e. one restored from a
+     * checkpoint. Call it before the game's first listing, which the coordinator ignores otherwise.
+     */
+    void hosting(int gameId) throws IOException {
+        send(List.of("HOSTING:" + gameId));
+    }
+
+    private void readCoordinator() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String body = line.substring(colon + 1);
+                try {
+                    switch (line.substring(0, colon)) {
+                        case "HOST" -> host(new PendingGame(body.split("\\|", -1)));
+                        case "REDIRECT" -> redirect(body.split("\\|", -1));
+                        case "LISTING" -> remoteListing(body);
+                        case "UNLISTED" -> remoteUnlisted(Integer.parseInt(body.trim()));
+                        default -> System.err.println("Unknown command from coordinator: " + line);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Bad line from coordinator: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the cluster coordinator: " + e.getMessage());
+        } finally {
+            disconnected();
+        }
+    }
+
+    // A game is to be hosted here: seat whoever is already here and wait for the rest
+    private void host(PendingGame game) {
+        boolean ready = false;
+        seatLock.lock();
+        try {
+            pendingGames.put(game.whiteTicket, game);
+            pendingGames.put(game.blackTicket, game);
+            for (String ticket : List.of(game.whiteTicket, game.blackTicket)) {
+                WaitingPlayer player = seekers.remove(ticket);
+                if (player == null) {
+                    player = earlyArrivals.remove(ticket);
+                }
+                if (player != null) {
+                    ready = seat(game, ticket, player);
+                }
+            }
+        } finally {
+            seatLock.unlock();
+        }
+        if (ready) {
+            begin(game);
+        } else {
+            seatTimer.schedule(() -> expire(game), SEAT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Fills the ticket's seat with the rating and time control the coordinator matched on; true once both are taken
+    private boolean seat(PendingGame game, String ticket, WaitingPlayer player) {
+        boolean white = ticket.equals(game.whiteTicket);
+        WaitingPlayer seated = new WaitingPlayer(player.socket(), player.in(), player.compress(), player.nickname(),
+                white ? game.whiteRating : game.blackRating, game.timeControl, player.since());
+        if (white) {
+            game.white = seated;
+        } else {
+            game.black = seated;
+        }
+        if (game.white == null || game.black == null) {
+            return false;
+        }
+        pendingGames.remove(game.whiteTicket);
+        pendingGames.remove(game.blackTicket);
+        return true;
+    }
+
+    private void begin(PendingGame game) {
+        executor.execute(() -> starter.startGame(game.white, game.black, game.gameId));
+    }
+
+    private void expire(PendingGame game) {
+        seatLock.lock();
+        try {
+            if (pendingGames.remove(game.whiteTicket) == null) {
+                return;
+            }
+            pendingGames.remove(game.blackTicket);
+        } finally {
+            seatLock.unlock();
+        }
+        System.out.println("Game #" + game.gameId + " expired before both players arrived.");
+        for (WaitingPlayer player : new WaitingPlayer[] { game.white, game.black }) {
+            if (player != null) {
+                refuse(player.socket(), new Message.ServerError("Your opponent did not arrive."));
+            }
+        }
+        removed(game.gameId);
+    }
+
+    private void dropEarlyArrival(String ticket, WaitingPlayer player) {
+        seatLock.lock();
+        try {
+            if (!earlyArrivals.remove(ticket, player)) {
+                return;
+            }
+        } finally {
+            seatLock.unlock();
+        }
+        refuse(player.socket(), new Message.ServerError("No game is waiting for you here."));
+    }
+
+    // The game is hosted by another node; send the player there
+    private void redirect(String[] fields) {
+        WaitingPlayer player = seekers.remove(fields[0]);
+        if (player != null) {
+            String command = "JOIN_GAME:" + fields[0] + ":" + player.nickname();
+            refuse(player.socket(), new Message.Redirect(fields[1], Integer.parseInt(fields[2]), command));
+        }
+    }
+
+    // Sends a last message and closes the connection
+    private static void refuse(Socket clientSocket, Message message) {
+        try {
+            MessageCodec.write(clientSocket.getOutputStream(), message);
+        } catch (IOException e) {
+            // Gone already
+        }
+        try { clientSocket.close(); } catch (IOException e) { }
+    }
+
+    private void remoteListing(String body) {
+        String[] location = body.split("\\|", 3);
+        GameDirectory.Entry entry = GameDirectory.Entry.decode(location[2]);
+        remoteGames.put(entry.gameId(), new Location(location[0], Integer.parseInt(location[1])));
+        directory.publish(entry);
+    }
+
+    private void remoteUnlisted(int gameId) {
+        if (remoteGames.remove(gameId) != null) {
+            directory.remove(gameId);
+        }
+    }
+
+    private void disconnected() {
+        connected = false;
+        for (int gameId : remoteGames.keySet()) {
+            remoteUnlisted(gameId);
+        }
+        for (Iterator<WaitingPlayer> waiting = seekers.values().iterator(); waiting.hasNext(); ) {
+            refuse(waiting.next().socket(), new Message.ServerError("The cluster coordinator is not available."));
+            waiting.remove();
+        }
+    }
+
+    // Sends the listing changes of local games, removals last so an ended game is never listed again
+    private void syncListings() {
+        while (connected) {
+            try {
+                Thread.sleep(SYNC_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<String> lines = new ArrayList<>();
+            for (Integer gameId : changedListings.keySet()) {
+                GameDirectory.Entry entry = changedListings.remove(gameId);
+                if (entry != null) {
+                    lines.add("LISTING:" + entry.encode());
+                }
+            }
+            for (Iterator<Integer> ended = endedGames.iterator(); ended.hasNext(); ) {
+                int gameId = ended.next();
+                ended.remove();
+                changedListings.remove(gameId);
+                lines.add("UNLISTED:" + gameId);
+            }
+            if (!lines.isEmpty()) {
+                try {
+                    send(lines);
+                } catch (IOException e) {
+                    // The link reader notices too
+                }
+            }
+        }
+    }
+
+    private void send(List<String> lines) throws IOException {
+        writeLock.lock();
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            try { socket.close(); } catch (IOException ex) { }
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.log.Level;
+import com.ShavguLs.chess.common.log.Log;
+import com.ShavguLs.chess.common.protocol.Compression;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking front end for the server port.
+ * The accepting thread spreads new connections over a few event loops, each with its own Selector.
+ * A loop reads the one-line command every client starts with and then:
+ * - answers LIST_GAMES itself, since that only reads memory,
+ * - passes EXPLORE_POSITION to a small pool of its own, because an index lookup may have to wait
+ *   for the disk and parses the FEN,
+ * - passes IMPORT_PGN to a pool of its own because it talks to the database,
+ * - switches PLAY_CHESS and SPECTATE_GAME sockets back to blocking mode and hands them over,
+ *   on a small worker pool, to the matchmaking and GameSession code.
+ * So a connection only costs a thread once it is actually playing or watching a game.
+ * The loops do not read game traffic: a session reads each player and spectator with a blocking
+ * reader thread of its own. With threads=virtual those are virtual threads, so an idle player
+ * costs a parked stack rather than an OS thread.
+ *
+ * Admission control also happens here, before a connection costs anything more than a socket:
+ * a cap on open connections for the whole server, and per address token buckets for connecting,
+ * lobby reads (LIST_GAMES, EXPLORE_POSITION), SPECTATE_GAME and IMPORT_PGN. A command line may be
+ * MAX_COMMAND_BYTES long, except IMPORT_PGN, which has its own limit.
+ *
+ * A command line starting with "Z:" or "ZD:" comes from a client that accepts compression, see
+ * Compression. The prefix is stripped here, large replies to such a client are compressed, and
+ * the handlers learn that the connection may get compressed frames.
+ */
+public class ConnectionFrontEnd {
+
+    private static final Log LOG = Log.get(ConnectionFrontEnd.class);
+    private static final int COMMAND_TIMEOUT_MS = 5000;
+    private static final int SELECT_TIMEOUT_MS = 1000;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_COMMAND_BYTES = 4 * 1024;
+    private static final int IMPORT_THREADS = 2;
+    // IMPORT_PGN sends a whole PGN file on a single line
+    private static final byte[] IMPORT_PREFIX = "IMPORT_PGN:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ACCEPTING_IMPORT_PREFIX = (Compression.ACCEPT_PREFIX + "IMPORT_PGN:").getBytes(StandardCharsets.UTF_8);
+    // Only known to be an import once inflated, so a compressed line gets the import limit
+    private static final byte[] DEFLATED_PREFIX = Compression.DEFLATED_PREFIX.getBytes(StandardCharsets.UTF_8);
+    private static final String RATE_LIMITED = "Too many requests, please slow down.";
+
+    /**
+     * What a client may do; see ServerConfig for the keys and defaults.
+     * @param maxConnections Open connections for the whole server, players and spectators included.
+     */
+    record Limits(int maxConnections, RateLimiter.Limit connect, RateLimiter.Limit list,
+                  RateLimiter.Limit spectate, RateLimiter.Limit imports, int maxImportBytes) { }
+
+    /**
+     * Receives a player or spectator socket once the front end is done with it.
+     * The stream starts with whatever the client sent after its command line.
+     */
+    interface HandOffHandler {
+        /**
+         * @param compress Whether the client accepts compressed frames.
+         */
+        void accept(Socket socket, InputStream in, String command, boolean compress) throws IOException;
+    }
+
+    // A reply and its compressed form; the unfiltered game list is one string until the directory changes
+    private record CompressedReply(String reply, String compressed) { }
+
+    private final int port;
+    private final EventLoop[] loops;
+    // Runs the hand-offs, which may block briefly writing a refusal or talking to the cluster coordinator
+    private final ExecutorService workers;
+    // Runs IMPORT_PGN. A fixed pool even with virtual threads, which bounds the number of open database
+    // connections; and apart from the hand-offs, so a burst of large imports never holds up players.
+    private final ExecutorService importers;
+    // Answers EXPLORE_POSITION, so a lookup that waits for the disk never stalls an event loop
+    private final ExecutorService explorers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean stopped;
+
+    private final Limits limits;
+    private final RateLimiter connectLimiter;
+    private final RateLimiter listLimiter;
+    private final RateLimiter spectateLimiter;
+    private final RateLimiter importLimiter;
+    // Connections the event loops still own; handed off ones are counted by their outbox or the matchmaker
+    private final AtomicInteger pendingConnections = new AtomicInteger();
+    // The last compressed full game list, so lobby polling compresses it once per change
+    private volatile CompressedReply compressedGameList;
+
+    public ConnectionFrontEnd(int port, int loopCount, int workerCount, Limits limits) {
+        this.port = port;
+        this.loops = new EventLoop[loopCount];
+        this.workers = ServerThreads.newExecutor("front-end-worker", workerCount);
+        this.importers = Executors.newFixedThreadPool(IMPORT_THREADS, ServerThreads.factory("import-worker"));
+        this.explorers = ServerThreads.newExecutor("explore-worker", workerCount);
+        this.limits = limits;
+        this.connectLimiter = new RateLimiter("connect", limits.connect());
+        this.listLimiter = new RateLimiter("list", limits.list());
+        this.spectateLimiter = new RateLimiter("spectate", limits.spectate());
+        this.importLimiter = new RateLimiter("import", limits.imports());
+    }
+
+    /**
+     * Starts the event loops and accepts connections on the calling thread until the server socket fails
+     * or stopAccepting is called.
+     */
+    public void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "front-end-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            serverChannel = channel;
+            channel.bind(new InetSocketAddress(port));
+            LOG.info("Listening", "port", port, "eventLoops", loops.length);
+            while (!stopped) {
+                SocketChannel accepted = channel.accept();
+                if (!admit(accepted)) {
+                    closeQuietly(accepted);
+                    continue;
+                }
+                pendingConnections.incrementAndGet();
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                loop.register(accepted);
+            }
+        } catch (IOException e) {
+            if (!stopped) {
+                throw e;
+            }
+        }
+    }
+
+    // The connection cap and the address's connect bucket; a refused connection is just closed
+    private boolean admit(SocketChannel channel) {
+        int open = pendingConnections.get() + Outbox.openCount() + ChessServer.waitingPlayerCount();
+        if (open >= limits.maxConnections()) {
+            ServerMetrics.requestRejected();
+            LOG.debug("Connection cap reached", "open", open);
+            return false;
+        }
+        return allowed(connectLimiter, channel);
+    }
+
+    private static boolean allowed(RateLimiter limiter, SocketChannel channel) {
+        try {
+            InetAddress address = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+            if (limiter.tryAcquire(address)) {
+                return true;
+            }
+            LOG.debug("Rate limited", "limit", limiter.name(), "address", address.getHostAddress());
+            return false;
+        } catch (IOException e) {
+            return false; // Already gone
+        }
+    }
+
+    /**
+     * Closes the server port, so a new server process can take it over. Connections already
+     * accepted are still served.
+     */
+    public void stopAccepting() {
+        stopped = true;
+        ServerSocketChannel channel = serverChannel;
+        if (channel != null) {
+            closeQuietly(channel);
+        }
+    }
+
+    // State of one connection while the front end still owns it
+    private static class PendingConnection {
+        private final SocketChannel channel;
+        private final long deadline = System.currentTimeMillis() + COMMAND_TIMEOUT_MS;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final int maxImportBytes;
+        private byte[] leftover = new byte[0];
+        private ByteBuffer response;
+        private boolean commandComplete;
+        // Known once the line is long enough to tell
+        private boolean prefixChecked;
+        private boolean importing;
+        // Set by command() for a line with a compression prefix
+        private boolean acceptsCompression;
+
+        PendingConnection(SocketChannel channel, int maxImportBytes) {
+            this.channel = channel;
+            this.maxImportBytes = maxImportBytes;
+        }
+
+        /**
+         * Copies bytes into the command line until the newline.
+         * Anything after the newline belongs to the next protocol stage and is kept aside.
+         */
+        void append(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                byte b = data.get();
+                if (b == '\n') {
+                    commandComplete = true;
+                    leftover = new byte[data.remaining()];
+                    data.get(leftover);
+                    return;
+                }
+                line.write(b);
+            }
+            if (!prefixChecked && line.size() >= ACCEPTING_IMPORT_PREFIX.length) {
+                prefixChecked = true;
+                byte[] start = line.toByteArray();
+                importing = startsWith(start, IMPORT_PREFIX) || startsWith(start, ACCEPTING_IMPORT_PREFIX)
+                        || startsWith(start, DEFLATED_PREFIX);
+            }
+            int limit = importing ? maxImportBytes : MAX_COMMAND_BYTES;
+            if (line.size() > limit) {
+                throw new IOException("Command exceeds " + limit + " bytes.");
+            }
+        }
+
+        /**
+         * The command line without its compression prefix, inflated if it came compressed.
+         * @throws ProtocolException if a compressed line is damaged or inflates beyond the limits.
+         */
+        String command() throws ProtocolException {
+            String command = line.toString(StandardCharsets.UTF_8);
+            if (command.endsWith("\r")) {
+                command = command.substring(0, command.length() - 1);
+            }
+            if (command.startsWith(Compression.ACCEPT_PREFIX)) {
+                acceptsCompression = true;
+                return command.substring(Compression.ACCEPT_PREFIX.length());
+            }
+            if (command.startsWith(Compression.DEFLATED_PREFIX)) {
+                acceptsCompression = true;
+                command = Compression.decompressLine(command, maxImportBytes);
+                if (command.length() > MAX_COMMAND_BYTES && !command.startsWith("IMPORT_PGN:")) {
+                    throw new ProtocolException("Command exceeds " + MAX_COMMAND_BYTES + " bytes.");
+                }
+            }
+            return command;
+        }
+
+        private static boolean startsWith(byte[] bytes, byte[] prefix) {
+            return Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+        }
+    }
+
+    private record HandOff(PendingConnection connection, String command, HandOffHandler handler) { }
+
+    // The reply as this client gets it; only the unfiltered game list is worth caching
+    private String compressed(PendingConnection connection, String reply, boolean fullGameList) {
+        if (!connection.acceptsCompression || reply.length() < Compression.THRESHOLD_BYTES) {
+            return reply;
+        }
+        if (!fullGameList) {
+            return Compression.compressLine(reply);
+        }
+        CompressedReply cached = compressedGameList;
+        if (cached != null && cached.reply() == reply) {
+            return cached.compressed();
+        }
+        String compressed = Compression.compressLine(reply);
+        compressedGameList = new CompressedReply(reply, compressed);
+        return compressed;
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final List<HandOff> handOffs = new ArrayList<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    channel.configureBlocking(false);
+                    channel.register(selector, SelectionKey.OP_READ, new PendingConnection(channel, limits.maxImportBytes()));
+                } catch (IOException e) {
+                    LOG.warn("Could not register new connection", "error", e.getMessage());
+                    pendingConnections.decrementAndGet();
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        // Runs the task on this loop's thread
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    // A hand-off cancelled its key; selecting deregisters it so the channel may block again
+                    if (handOffs.isEmpty()) {
+                        selector.select(SELECT_TIMEOUT_MS);
+                    } else {
+                        selector.selectNow();
+                    }
+                    finishHandOffs();
+                    runTasks();
+                    processSelectedKeys();
+                    closeExpired();
+                } catch (IOException e) {
+                    LOG.error("Event loop error", e);
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isReadable()) {
+                        read(key);
+                    } else if (key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            PendingConnection connection = (PendingConnection) key.attachment();
+            readBuffer.clear();
+            int read = connection.channel.read(readBuffer);
+            if (read < 0) {
+                close(key);
+                return;
+            }
+            readBuffer.flip();
+            connection.append(readBuffer);
+            if (connection.commandComplete) {
+                key.interestOps(0);
+                dispatch(key, connection);
+            }
+        }
+
+        private void dispatch(SelectionKey key, PendingConnection connection) {
+            String command;
+            try {
+                command = connection.command();
+            } catch (ProtocolException e) {
+                LOG.debug("Bad compressed command, closing connection", "error", e.getMessage());
+                close(key);
+                return;
+            }
+            ServerMetrics.messageReceived();
+            // Lobby polling alone makes this frequent, so commands are only logged when debugging
+            if (LOG.isEnabled(Level.DEBUG)) {
+                LOG.debug("Command received", "command", command.startsWith("IMPORT_PGN:") ? "IMPORT_PGN" : command,
+                        "length", command.length());
+            }
+
+            if (command.equals("LIST_GAMES") || command.startsWith("LIST_GAMES:")) {
+                if (allowed(listLimiter, connection.channel)) {
+                    respond(key, compressed(connection, ChessServer.buildGameList(command), command.equals("LIST_GAMES")));
+                } else {
+                    respond(key, "ERROR:" + RATE_LIMITED);
+                }
+            } else if (command.startsWith("EXPLORE_POSITION:")) {
+                if (allowed(listLimiter, connection.channel)) {
+                    explorers.execute(() -> {
+                        String response = compressed(connection, ChessServer.explorePosition(command.substring(17)), false);
+                        execute(() -> respond(key, response));
+                    });
+                } else {
+                    respond(key, "ERROR:" + RATE_LIMITED);
+                }
+            } else if (command.startsWith("IMPORT_PGN:")) {
+                if (!allowed(importLimiter, connection.channel)) {
+                    respond(key, "ERROR:" + RATE_LIMITED);
+                    return;
+                }
+                importers.execute(() -> {
+                    String response = compressed(connection, ChessServer.importPgn(command), false);
+                    execute(() -> respond(key, response));
+                });
+            } else if (command.equals("PLAY_CHESS") || command.startsWith("PLAY_CHESS:")) {
+                handOff(key, connection, command, ChessServer::handleGamePlayer);
+            } else if (command.startsWith("SPECTATE_GAME:")) {
+                if (allowed(spectateLimiter, connection.channel)) {
+                    handOff(key, connection, command, ChessServer::handleSpectator);
+                } else {
+                    // Spectators read frames, not lines
+                    respond(key, MessageCodec.encode(new Message.ServerError(RATE_LIMITED)));
+                }
+            } else if (command.startsWith("JOIN_GAME:")) {
+                handOff(key, connection, command, ChessServer::handleJoin);
+            } else if (command.startsWith("RESUME_GAME:")) {
+                handOff(key, connection, command, ChessServer::handleResume);
+            } else {
+                LOG.debug("Unknown command, closing connection");
+                close(key);
+            }
+        }
+
+        private void respond(SelectionKey key, String response) {
+            respond(key, (response + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void respond(SelectionKey key, byte[] response) {
+            PendingConnection connection = (PendingConnection) key.attachment();
+            connection.response = ByteBuffer.wrap(response);
+            try {
+                write(key);
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        private void write(SelectionKey key) throws IOException {
+            PendingConnection connection = (PendingConnection) key.attachment();
+            connection.channel.write(connection.response);
+            if (connection.response.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                close(key);
+            }
+        }
+
+        private void handOff(SelectionKey key, PendingConnection connection, String command, HandOffHandler handler) {
+            pendingConnections.decrementAndGet();
+            key.cancel();
+            handOffs.add(new HandOff(connection, command, handler));
+        }
+
+        private void finishHandOffs() {
+            for (HandOff handOff : handOffs) {
+                PendingConnection connection = handOff.connection();
+                try {
+                    connection.channel.configureBlocking(true);
+                } catch (IOException e) {
+                    closeQuietly(connection.channel);
+                    continue;
+                }
+                workers.execute(() -> {
+                    Socket socket = connection.channel.socket();
+                    try {
+                        InputStream in = socket.getInputStream();
+                        if (connection.leftover.length > 0) {
+                            in = new SequenceInputStream(new ByteArrayInputStream(connection.leftover), in);
+                        }
+                        handOff.handler().accept(socket, in, handOff.command(), connection.acceptsCompression);
+                    } catch (IOException e) {
+                        LOG.warn("Could not hand over connection", "command", handOff.command(), "error", e.getMessage());
+                        closeQuietly(connection.channel);
+                    }
+                });
+            }
+            handOffs.clear();
+        }
+
+        private void closeExpired() {
+            long now = System.currentTimeMillis();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof PendingConnection connection
+                        && !connection.commandComplete && now > connection.deadline) {
+                    LOG.debug("Connection timed out before sending a command");
+                    close(key);
+                }
+            }
+        }
+
+        private void close(SelectionKey key) {
+            if (key.isValid()) {
+                pendingConnections.decrementAndGet();
+            }
+            key.cancel();
+            closeQuietly(((PendingConnection) key.attachment()).channel);
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore close errors
+        }
+    }
+}
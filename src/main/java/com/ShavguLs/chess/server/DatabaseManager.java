@@ -1,8 +1,17 @@
 package com.ShavguLs.chess.server; // Or your primary package
 
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import com.ShavguLs.chess.common.logic.PGNFileReader;
 import com.ShavguLs.chess.common.logic.PGNManager;
+import com.ShavguLs.chess.common.logic.PGNParser;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseManager {
 
@@ -15,8 +24,20 @@ public class DatabaseManager {
 //    private static final String DB_PASS = "ChessV2";
     // ------------------------------------
 
-    // The JDBC connection URL for MariaDB
-    private static final String DATABASE_URL = "jdbc:mariadb://" + DB_HOST + "/" + DB_NAME;
+    // The JDBC connection URL for MariaDB. Update counts are rows actually changed, so an import can tell
+    // a game it inserted from one that turned out to be there already.
+    private static final String DATABASE_URL = "jdbc:mariadb://" + DB_HOST + "/" + DB_NAME + "?useAffectedRows=true";
+
+    // Games per batch INSERT, and fingerprints per duplicate-check query, during imports
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    // Fingerprints of every stored game, loaded at startup. Null until initializeDatabase has run.
+    private static volatile BloomFilter knownGames;
+
+    // Rating of new players, and of everyone while the database is unavailable
+    public static final int DEFAULT_RATING = 1200;
+    // Every player's rating, loaded at startup, so matchmaking never waits for the database
+    private static final Map<String, Integer> ratings = new ConcurrentHashMap<>();
 
     /**
      * Establishes a connection to the MariaDB database.
@@ -45,7 +66,9 @@ public class DatabaseManager {
                 + " black_player VARCHAR(255) NOT NULL,"
                 + " result VARCHAR(10) NOT NULL,"
                 + " game_date DATETIME NOT NULL,"
-                + " pgn_text TEXT NOT NULL"
+                + " pgn_text TEXT NOT NULL,"
+                + " moves_bin BLOB NULL," // MoveCodec encoding, 2 bytes per ply
+                + " fingerprint CHAR(32) NULL" // GameFingerprint of an imported game; null for games played here
                 // Optional: We can later add foreign keys to the users table
                 // + ", white_user_id INT, black_user_id INT"
                 // + ", FOREIGN KEY (white_user_id) REFERENCES users(id)"
@@ -57,28 +80,94 @@ public class DatabaseManager {
                 + " id INT AUTO_INCREMENT PRIMARY KEY,"
                 + " nickname VARCHAR(255) UNIQUE NOT NULL,"
                 + " password VARCHAR(255) NOT NULL,"
-                + " registration_date DATETIME NOT NULL"
+                + " registration_date DATETIME NOT NULL,"
+                + " rating INT NOT NULL DEFAULT " + DEFAULT_RATING
                 + ");";
 
+        // Tables created before the binary move column existed get it added here
+        String addMovesColumnSql = "ALTER TABLE games ADD COLUMN IF NOT EXISTS moves_bin BLOB NULL";
+        String addFingerprintColumnSql = "ALTER TABLE games ADD COLUMN IF NOT EXISTS fingerprint CHAR(32) NULL";
+        String addRatingColumnSql = "ALTER TABLE users ADD COLUMN IF NOT EXISTS rating INT NOT NULL DEFAULT " + DEFAULT_RATING;
+
+        // Indexes backing the player and date filters of GameExporter
+        String[] createGamesIndexesSql = {
+                "CREATE INDEX IF NOT EXISTS idx_games_white ON games(white_player)",
+                "CREATE INDEX IF NOT EXISTS idx_games_black ON games(black_player)",
+                "CREATE INDEX IF NOT EXISTS idx_games_date ON games(game_date)",
+                "CREATE UNIQUE INDEX IF NOT EXISTS idx_games_fingerprint ON games(fingerprint)"
+        };
+
         // Using try-with-resources to ensure connection is closed
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
+        try (Connection conn = connect()) {
 
             if (conn == null) {
                 System.err.println("Cannot initialize database: connection is null. Check credentials and if MariaDB is running.");
                 return;
             }
 
-            stmt.execute(createGamesTableSql);
-            System.out.println("Database initialized. 'games' table is ready.");
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(createGamesTableSql);
+                stmt.execute(addMovesColumnSql);
+                stmt.execute(addFingerprintColumnSql);
+                for (String indexSql : createGamesIndexesSql) {
+                    stmt.execute(indexSql);
+                }
+                System.out.println("Database initialized. 'games' table is ready.");
+
+                stmt.execute(createUsersTableSql);
+                stmt.execute(addRatingColumnSql);
+                System.out.println("Database initialized. 'users' table is ready.");
+            }
 
-            stmt.execute(createUsersTableSql);
-            System.out.println("Database initialized. 'users' table is ready.");
+            loadKnownGames(conn);
+            loadRatings(conn);
         } catch (SQLException e) {
             System.err.println("Error initializing database table: " + e.getMessage());
         }
     }
 
+    /**
+     * Fills the Bloom filter with the fingerprints already in the games table, streaming them
+     * so the archive is never held in memory. Sized with room for the archive to double.
+     */
+    private static void loadKnownGames(Connection conn) throws SQLException {
+        long storedGames = 0;
+        try (Statement countStmt = conn.createStatement();
+             ResultSet countRs = countStmt.executeQuery("SELECT COUNT(*) FROM games")) {
+            if (countRs.next()) {
+                storedGames = countRs.getLong(1);
+            }
+        }
+
+        BloomFilter filter = new BloomFilter(Math.max(100_000, storedGames * 2), 0.01);
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT fingerprint FROM games WHERE fingerprint IS NOT NULL",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    GameFingerprint fingerprint = GameFingerprint.fromHex(rs.getString(1));
+                    filter.put(fingerprint.high(), fingerprint.low());
+                }
+            }
+        }
+        knownGames = filter;
+        System.out.println("Duplicate filter loaded for " + storedGames + " stored games.");
+    }
+
+    // Streams the users table into the rating cache
+    private static void loadRatings(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT nickname, rating FROM users",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ratings.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        System.out.println("Ratings loaded for " + ratings.size() + " players.");
+    }
+
     /**
      * Registers new user in the database.
      * @param nickname - The users nickname
@@ -113,6 +202,7 @@ public class DatabaseManager {
 
                 int rowsAffected = insertStmt.executeUpdate();
                 if (rowsAffected > 0) {
+                    ratings.put(nickname, DEFAULT_RATING);
                     System.out.println("New user registered: " + nickname);
                     return "SUCCESS";
                 }
@@ -135,21 +225,22 @@ public class DatabaseManager {
     public static String checkLogin(String nickname, String password) {
         String sql = "SELECT password FROM users WHERE nickname = ?";
 
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connect()) {
 
             if (conn == null) {
                 return "INVALID";
             }
 
-            stmt.setString(1, nickname);
-            ResultSet rs = stmt.executeQuery();
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, nickname);
+                ResultSet rs = stmt.executeQuery();
 
-            if (rs.next()) {
-                String storedPassword = rs.getString("password");
-                if (storedPassword.equals(password)) {
-                    System.out.println("User logged in: " + nickname);
-                    return "SUCCESS";
+                if (rs.next()) {
+                    String storedPassword = rs.getString("password");
+                    if (storedPassword.equals(password)) {
+                        System.out.println("User logged in: " + nickname);
+                        return "SUCCESS";
+                    }
                 }
             }
 
@@ -161,8 +252,19 @@ public class DatabaseManager {
         return "INVALID";
     }
 
+    /**
+     * Looks up a player's rating for matchmaking, from the ratings loaded at startup; never touches the database.
+     * Players registered since then have not played a rated game yet, so they are still on DEFAULT_RATING.
+     * @return the stored rating, or DEFAULT_RATING for unknown players or without a database.
+     */
+    public static int getRating(String nickname) {
+        return ratings.getOrDefault(nickname, DEFAULT_RATING);
+    }
+
     /**
      * Saves a completed game to the database.
+     * Played games are stored without a fingerprint: two of them may well have the same players,
+     * moves, result and day, e.g. quick aborts, and both are real games. Only imports are deduplicated.
      * @param pgnManager The PGNManager containing the final game data.
      * @return true if the game was saved successfully, false otherwise.
      */
@@ -172,34 +274,39 @@ public class DatabaseManager {
         String whitePlayer = pgnManager.getWhitePlayerName();
         String blackPlayer = pgnManager.getBlackPlayerName();
         String result = pgnManager.getResult();
+        byte[] movesBin = pgnManager.getEncodedMoves();
 
         // The SQL INSERT statement with placeholders (?) for security
-        String sql = "INSERT INTO games(white_player, black_player, result, game_date, pgn_text) VALUES(?,?,?,?,?)";
+        String sql = "INSERT INTO games(white_player, black_player, result, game_date, pgn_text, moves_bin) VALUES(?,?,?,?,?,?)";
 
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        long started = System.nanoTime();
+        try (Connection conn = connect()) {
 
             if (conn == null) {
                 System.err.println("Cannot save game: database connection is null.");
                 return false;
             }
 
-            // Set the values for the placeholders
-            pstmt.setString(1, whitePlayer);
-            pstmt.setString(2, blackPlayer);
-            pstmt.setString(3, result);
-            pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis())); // Current date and time
-            pstmt.setString(5, pgnText);
-
-            // Execute the insert statement
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows > 0) {
-                System.out.println("Game successfully saved to the database.");
-                return true;
-            } else {
-                System.err.println("Game was not saved to the database, no rows affected.");
-                return false;
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                // Set the values for the placeholders
+                pstmt.setString(1, whitePlayer);
+                pstmt.setString(2, blackPlayer);
+                pstmt.setString(3, result);
+                pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis())); // Current date and time
+                pstmt.setString(5, pgnText);
+                pstmt.setBytes(6, movesBin);
+
+                // Execute the insert statement
+                int affectedRows = pstmt.executeUpdate();
+                ServerMetrics.recordDbWrite(System.nanoTime() - started);
+
+                if (affectedRows > 0) {
+                    System.out.println("Game successfully saved to the database.");
+                    return true;
+                } else {
+                    System.err.println("Game was not saved to the database, no rows affected.");
+                    return false;
+                }
             }
 
         } catch (SQLException e) {
@@ -210,55 +317,236 @@ public class DatabaseManager {
     }
 
     /**
-     * Imports a game from a full PGN text string into the database.
+     * Imports every game of a PGN text (one or many games) into the database.
+     * Games that are already stored are skipped: a Bloom filter of known fingerprints
+     * clears most new games without asking the database, and only "maybe seen" games
+     * are checked, a batch of fingerprints per query. New games go in with batched INSERTs.
      * @param pgnText The full PGN content.
      * @return A success or failure message string to be sent back to the client.
      */
     public static String importPgn(String pgnText) {
-        String whitePlayer = "Unknown";
-        String blackPlayer = "Unknown";
-        String result = "*";
+        List<String> games = PGNFileReader.splitGames(pgnText);
+        if (games.isEmpty()) {
+            return "ERROR: No games found in the PGN text.";
+        }
 
-        // A simple but effective parser to extract the required PGN headers
-        try {
-            String[] lines = pgnText.split("\n");
-            for (String line : lines) {
-                if (line.trim().startsWith("[White ")) {
-                    whitePlayer = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
-                } else if (line.trim().startsWith("[Black ")) {
-                    blackPlayer = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
-                } else if (line.trim().startsWith("[Result ")) {
-                    result = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
+        // A game another import stored since we checked is left alone; any other error fails the import
+        String sql = "INSERT INTO games(white_player, black_player, result, game_date, pgn_text, moves_bin, fingerprint)"
+                + " VALUES(?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE id = id";
+
+        try (Connection conn = connect()) {
+
+            if (conn == null) {
+                return "ERROR: Database connection failed.";
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertStmt = conn.prepareStatement(sql)) {
+                Set<GameFingerprint> seenInThisImport = new HashSet<>();
+                List<ImportedGame> maybeStored = new ArrayList<>();
+                int imported = 0;
+                int pending = 0;
+
+                for (String gameText : games) {
+                    ImportedGame game = ImportedGame.parse(gameText);
+                    if (!seenInThisImport.add(game.fingerprint())) {
+                        continue; // The same game twice in one file
+                    }
+
+                    BloomFilter filter = knownGames;
+                    if (filter != null && filter.mightContain(game.fingerprint().high(), game.fingerprint().low())) {
+                        maybeStored.add(game);
+                        if (maybeStored.size() == IMPORT_BATCH_SIZE) {
+                            pending += resolveMaybeStored(conn, maybeStored, insertStmt);
+                            maybeStored.clear();
+                        }
+                    } else {
+                        addToBatch(insertStmt, game);
+                        pending++;
+                    }
+
+                    if (pending >= IMPORT_BATCH_SIZE) {
+                        imported += executeBatch(insertStmt);
+                        conn.commit();
+                        pending = 0;
+                    }
                 }
+
+                if (!maybeStored.isEmpty()) {
+                    resolveMaybeStored(conn, maybeStored, insertStmt);
+                }
+                imported += executeBatch(insertStmt);
+                conn.commit();
+                int duplicates = games.size() - imported;
+
+                for (GameFingerprint fingerprint : seenInThisImport) {
+                    rememberGame(fingerprint);
+                }
+
+                System.out.println("Imported " + imported + " games, skipped " + duplicates + " duplicates.");
+                return "SUCCESS: Imported " + imported + " game(s) to database, skipped " + duplicates + " duplicate(s).";
             }
-        } catch (Exception e) {
-            System.err.println("Could not parse PGN headers: " + e.getMessage());
-            // We can still try to save it with default values
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return "ERROR: An SQL error occurred during import. " + e.getMessage();
+        }
+    }
+
+    /**
+     * Looks up a batch of games the Bloom filter was unsure about with one query,
+     * and adds the ones that turn out to be new to the insert batch.
+     * @return How many games were added to the batch.
+     */
+    private static int resolveMaybeStored(Connection conn, List<ImportedGame> candidates,
+                                          PreparedStatement insertStmt) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT fingerprint FROM games WHERE fingerprint IN (");
+        for (int i = 0; i < candidates.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+
+        Set<String> stored = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < candidates.size(); i++) {
+                stmt.setString(i + 1, candidates.get(i).fingerprint().toHex());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(rs.getString(1));
+                }
+            }
+        }
+
+        int added = 0;
+        for (ImportedGame game : candidates) {
+            if (!stored.contains(game.fingerprint().toHex())) {
+                addToBatch(insertStmt, game);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private static void addToBatch(PreparedStatement insertStmt, ImportedGame game) throws SQLException {
+        insertStmt.setString(1, game.white());
+        insertStmt.setString(2, game.black());
+        insertStmt.setString(3, game.result());
+        insertStmt.setTimestamp(4, new Timestamp(System.currentTimeMillis())); // Use current time for import date
+        insertStmt.setString(5, game.pgnText());
+        insertStmt.setBytes(6, game.movesBin());
+        insertStmt.setString(7, game.fingerprint().toHex());
+        insertStmt.addBatch();
+    }
+
+    // Runs the pending inserts and counts the rows that were really added; a duplicate key changes no row
+    private static int executeBatch(PreparedStatement insertStmt) throws SQLException {
+        int inserted = 0;
+        for (int count : insertStmt.executeBatch()) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    private static void rememberGame(GameFingerprint fingerprint) {
+        BloomFilter filter = knownGames;
+        if (filter != null) {
+            filter.put(fingerprint.high(), fingerprint.low());
         }
+    }
 
+    /**
+     * One game of an import, with the headers the games table needs.
+     */
+    private record ImportedGame(String white, String black, String result, String pgnText,
+                                byte[] movesBin, GameFingerprint fingerprint) {
+
+        static ImportedGame parse(String pgnText) {
+            String whitePlayer = "Unknown";
+            String blackPlayer = "Unknown";
+            String result = "*";
+            String date = "";
+
+            // A simple but effective parser to extract the required PGN headers
+            try {
+                String[] lines = pgnText.split("\n");
+                for (String line : lines) {
+                    if (line.trim().startsWith("[White ")) {
+                        whitePlayer = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
+                    } else if (line.trim().startsWith("[Black ")) {
+                        blackPlayer = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
+                    } else if (line.trim().startsWith("[Result ")) {
+                        result = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
+                    } else if (line.trim().startsWith("[Date ")) {
+                        date = line.substring(line.indexOf("\"") + 1, line.lastIndexOf("\""));
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Could not parse PGN headers: " + e.getMessage());
+                // We can still try to save it with default values
+            }
 
-        String sql = "INSERT INTO games(white_player, black_player, result, game_date, pgn_text) VALUES(?,?,?,?,?)";
+            // Encode the moves once on the way in so later replays skip SAN parsing.
+            // Games that do not replay cleanly are still stored, just without the binary form.
+            List<String> sanMoves = PGNParser.parseMoves(pgnText);
+            byte[] movesBin = null;
+            try {
+                movesBin = MoveCodec.encodeSanMoves(sanMoves);
+            } catch (Exception e) {
+                System.err.println("Could not encode moves of imported PGN: " + e.getMessage());
+            }
 
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            GameFingerprint fingerprint = GameFingerprint.of(movesBin, String.join(" ", sanMoves),
+                    whitePlayer, blackPlayer, result, date);
+            return new ImportedGame(whitePlayer, blackPlayer, result, pgnText, movesBin, fingerprint);
+        }
+    }
 
+    /**
+     * Loads the binary move list of a stored game, encoding it from pgn_text
+     * (and writing it back) for rows saved before moves_bin existed.
+     * @param gameId The id of the row in the games table.
+     * @return The MoveCodec encoded moves, or null if the game is missing or cannot be replayed.
+     */
+    public static byte[] loadGameMoves(int gameId) {
+        String selectSql = "SELECT moves_bin, pgn_text FROM games WHERE id = ?";
+        String updateSql = "UPDATE games SET moves_bin = ? WHERE id = ?";
+
+        try (Connection conn = connect()) {
             if (conn == null) {
-                return "ERROR: Database connection failed.";
+                return null;
             }
 
-            pstmt.setString(1, whitePlayer);
-            pstmt.setString(2, blackPlayer);
-            pstmt.setString(3, result);
-            pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis())); // Use current time for import date
-            pstmt.setString(5, pgnText);
-            pstmt.executeUpdate();
+            String pgnText;
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, gameId);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    byte[] movesBin = rs.getBytes("moves_bin");
+                    if (movesBin != null) {
+                        return movesBin;
+                    }
+                    pgnText = rs.getString("pgn_text");
+                }
+            }
 
-            System.out.println("Successfully imported PGN for " + whitePlayer + " vs. " + blackPlayer);
-            return "SUCCESS: Game imported to database.";
+            byte[] movesBin = MoveCodec.encodeSanMoves(PGNParser.parseMoves(pgnText));
+            try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+                updateStmt.setBytes(1, movesBin);
+                updateStmt.setInt(2, gameId);
+                updateStmt.executeUpdate();
+            }
+            return movesBin;
 
         } catch (SQLException e) {
-            e.printStackTrace();
-            return "ERROR: An SQL error occurred during import. " + e.getMessage();
+            System.err.println("Error loading moves of game " + gameId + ": " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Game " + gameId + " could not be encoded: " + e.getMessage());
         }
+        return null;
     }
-}
\ No newline at end of file
+}
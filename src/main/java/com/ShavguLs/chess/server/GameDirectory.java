@@ -0,0 +1,227 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.logic.Clock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The list of running games that LIST_GAMES answers from.
+ *
+ * Sessions publish an entry whenever something listed changes (a move, a spectator coming or going),
+ * and the entry's line of the reply is formatted right then. A list request reads an immutable
+ * snapshot of all entries, which is rebuilt at most every SNAPSHOT_MAX_AGE_MS and only after a change,
+ * so a lobby refreshing constantly costs one copy per interval rather than a walk over every session.
+ * The unfiltered reply is kept as a ready-made string.
+ */
+public class GameDirectory {
+
+    private static final long SNAPSHOT_MAX_AGE_MS = 250;
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * What the lobby shows about one game.
+     * @param whiteMillis Remaining time as of the last published change.
+     */
+    public record Entry(int gameId, String white, String black, int whiteRating, int blackRating,
+                        TimeControl timeControl, boolean whiteToMove, long whiteMillis, long blackMillis,
+                        int spectators) {
+
+        // The rating filters look at the average of both players
+        int averageRating() {
+            return (whiteRating + blackRating) / 2;
+        }
+
+        /**
+         * The entry's fields separated by '|', for copying it to the other nodes of a cluster.
+         */
+        String encode() {
+            return gameId + "|" + clean(white) + "|" + clean(black) + "|" + whiteRating + "|" + blackRating + "|"
+                    + timeControl + "|" + (whiteToMove ? 'w' : 'b') + "|" + whiteMillis + "|" + blackMillis + "|" + spectators;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the text was not made by encode.
+         */
+        static Entry decode(String text) {
+            String[] fields = text.split("\\|", -1);
+            if (fields.length != 10) {
+                throw new IllegalArgumentException("Not a game entry: " + text);
+            }
+            try {
+                return new Entry(Integer.parseInt(fields[0]), fields[1], fields[2],
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), TimeControl.parse(fields[5]),
+                        fields[6].equals("w"), Long.parseLong(fields[7]), Long.parseLong(fields[8]),
+                        Integer.parseInt(fields[9]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a game entry: " + text);
+            }
+        }
+    }
+
+    // An entry with its line of the reply already formatted
+    private record Listing(Entry entry, String line) { }
+
+    private record Snapshot(Listing[] games, String fullReply, long version, long builtNanos) { }
+
+    /**
+     * The filters and page of a LIST_GAMES request, e.g. LIST_GAMES:tc=3+2;minRating=1500;page=2.
+     * @param timeControl Null for any.
+     */
+    public record Query(TimeControl timeControl, int minRating, int maxRating, int minSpectators, int page, int pageSize) {
+
+        public static final Query ALL = new Query(null, 0, Integer.MAX_VALUE, 0, 0, Integer.MAX_VALUE);
+
+        /**
+         * Parses key=value pairs separated by ';'. Unknown keys are ignored.
+         * @throws IllegalArgumentException for values that are not numbers or time controls.
+         */
+        public static Query parse(String parameters) {
+            TimeControl timeControl = null;
+            int minRating = 0;
+            int maxRating = Integer.MAX_VALUE;
+            int minSpectators = 0;
+            int page = 0;
+            int pageSize = DEFAULT_PAGE_SIZE;
+            for (String pair : parameters.split(";")) {
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    continue;
+                }
+                String value = pair.substring(eq + 1).trim();
+                try {
+                    switch (pair.substring(0, eq).trim()) {
+                        case "tc" -> timeControl = TimeControl.parse(value);
+                        case "minRating" -> minRating = Integer.parseInt(value);
+                        case "maxRating" -> maxRating = Integer.parseInt(value);
+                        case "minSpectators" -> minSpectators = Integer.parseInt(value);
+                        case "page" -> page = Math.max(0, Integer.parseInt(value));
+                        case "size" -> pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(value)));
+                        default -> { }
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad value in game list request: " + pair);
+                }
+            }
+            return new Query(timeControl, minRating, maxRating, minSpectators, page, pageSize);
+        }
+
+        boolean matches(Entry entry) {
+            return (timeControl == null || timeControl.equals(entry.timeControl()))
+                    && entry.averageRating() >= minRating
+                    && entry.averageRating() <= maxRating
+                    && entry.spectators() >= minSpectators;
+        }
+    }
+
+    private final Map<Integer, Listing> listings = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Lock rebuildLock = new ReentrantLock();
+    private volatile Snapshot snapshot = new Snapshot(new Listing[0], "GAMES:", 0, System.nanoTime());
+
+    /**
+     * Adds or replaces a game's entry. Called by the session on every listed change.
+     */
+    public void publish(Entry entry) {
+        listings.put(entry.gameId(), new Listing(entry, format(entry)));
+        version.incrementAndGet();
+    }
+
+    public void remove(int gameId) {
+        if (listings.remove(gameId) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * The reply to a LIST_GAMES request:
+     * GAMES:id,white,black,&lt;Turn&gt; to move,white time / black time,time control,white rating,black rating,spectators|...
+     */
+    public String list(Query query) {
+        Snapshot current = currentSnapshot();
+        if (query.equals(Query.ALL)) {
+            return current.fullReply();
+        }
+        StringBuilder reply = new StringBuilder("GAMES:");
+        int skip = query.page() * query.pageSize();
+        int added = 0;
+        for (Listing listing : current.games()) {
+            if (added == query.pageSize()) {
+                break;
+            }
+            if (!query.matches(listing.entry())) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (added++ > 0) {
+                reply.append('|');
+            }
+            reply.append(listing.line());
+        }
+        return reply.toString();
+    }
+
+    public int size() {
+        return listings.size();
+    }
+
+    // Rebuilds the snapshot if something changed and the old one is old enough; one thread rebuilds, the rest read the old one
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        long age = System.nanoTime() - current.builtNanos();
+        if (current.version() == version.get() || age < TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_MAX_AGE_MS)) {
+            return current;
+        }
+        if (!rebuildLock.tryLock()) {
+            return current;
+        }
+        try {
+            long builtVersion = version.get();
+            List<Listing> games = new ArrayList<>(listings.values());
+            games.sort(Comparator.comparingInt(listing -> listing.entry().gameId()));
+            StringBuilder reply = new StringBuilder("GAMES:");
+            for (int i = 0; i < games.size(); i++) {
+                if (i > 0) {
+                    reply.append('|');
+                }
+                reply.append(games.get(i).line());
+            }
+            current = new Snapshot(games.toArray(new Listing[0]), reply.toString(), builtVersion, System.nanoTime());
+            snapshot = current;
+            return current;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private static String format(Entry entry) {
+        StringBuilder line = new StringBuilder(96);
+        line.append(entry.gameId()).append(',');
+        line.append(clean(entry.white())).append(',');
+        line.append(clean(entry.black())).append(',');
+        line.append(entry.whiteToMove() ? "White" : "Black").append(" to move,");
+        Clock.appendTime(line, entry.whiteMillis()).append(" / ");
+        Clock.appendTime(line, entry.blackMillis()).append(',');
+        line.append(entry.timeControl()).append(',');
+        line.append(entry.whiteRating()).append(',');
+        line.append(entry.blackRating()).append(',');
+        line.append(entry.spectators());
+        return line.toString();
+    }
+
+    // Nicknames must not break the list's separators
+    private static String clean(String name) {
+        return name.replace(',', ' ').replace('|', ' ');
+    }
+}
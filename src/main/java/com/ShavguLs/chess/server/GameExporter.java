@@ -0,0 +1,157 @@
+package com.ShavguLs.chess.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams games out of the 'games' table as one PGN file.
+ * Rows are read with a forward-only cursor and written straight to the output,
+ * so memory use does not grow with the size of the archive.
+ *
+ * Usage: GameExporter --out games.pgn [--player name] [--result 1-0] [--from 2024-01-01] [--to 2024-12-31]
+ * Without --out the PGN is written to standard output.
+ */
+public class GameExporter {
+
+    // Rows the driver fetches per round trip; a positive value makes MariaDB stream the result set
+    private static final int FETCH_SIZE = 500;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String USAGE =
+            "Usage: GameExporter --out games.pgn [--player name] [--result 1-0] [--from 2024-01-01] [--to 2024-12-31]";
+
+    /**
+     * Optional restrictions on the exported games. Null fields are not filtered on.
+     * @param player Games where this nickname played either colour.
+     * @param result PGN result code, e.g. "1-0" or "1/2-1/2".
+     * @param from First game day to include.
+     * @param to Last game day to include.
+     */
+    public record Filter(String player, String result, LocalDate from, LocalDate to) {
+        public static Filter all() {
+            return new Filter(null, null, null, null);
+        }
+    }
+
+    public static void main(String[] args) {
+        String player = null, result = null, outFile = null;
+        LocalDate from = null, to = null;
+
+        // Every option takes a value, so a trailing option without one is a mistake, not something to skip
+        if (args.length % 2 != 0) {
+            System.err.println("Missing value for option " + args[args.length - 1]);
+            System.err.println(USAGE);
+            return;
+        }
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--player" -> player = args[i + 1];
+                case "--result" -> result = args[i + 1];
+                case "--from" -> from = LocalDate.parse(args[i + 1]);
+                case "--to" -> to = LocalDate.parse(args[i + 1]);
+                case "--out" -> outFile = args[i + 1];
+                default -> System.err.println("Ignoring unknown option " + args[i]);
+            }
+        }
+
+        Filter filter = new Filter(player, result, from, to);
+        try {
+            long count;
+            if (outFile != null) {
+                count = exportToFile(filter, Path.of(outFile));
+            } else {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+                count = export(filter, out);
+                out.flush();
+            }
+            System.err.println("Exported " + count + " games.");
+        } catch (IOException | SQLException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Exports the matching games into a file, replacing it if it exists.
+     * @return The number of games written.
+     */
+    public static long exportToFile(Filter filter, Path file) throws IOException, SQLException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+            return export(filter, out);
+        }
+    }
+
+    /**
+     * Writes every matching game to the writer, oldest first, separated by blank lines.
+     * The writer is not closed; callers should flush it when done.
+     * @return The number of games written.
+     */
+    public static long export(Filter filter, Writer out) throws IOException, SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = buildQuery(filter, params);
+
+        try (Connection conn = DatabaseManager.connect()) {
+            if (conn == null) {
+                throw new SQLException("Database connection failed.");
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < params.size(); i++) {
+                    stmt.setObject(i + 1, params.get(i));
+                }
+
+                long count = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String pgnText = rs.getString(1);
+                        if (count > 0) {
+                            out.write('\n');
+                        }
+                        out.write(pgnText);
+                        if (!pgnText.endsWith("\n")) {
+                            out.write('\n');
+                        }
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    private static String buildQuery(Filter filter, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT pgn_text FROM games WHERE 1=1");
+        if (filter.player() != null) {
+            sql.append(" AND (white_player = ? OR black_player = ?)");
+            params.add(filter.player());
+            params.add(filter.player());
+        }
+        if (filter.result() != null) {
+            sql.append(" AND result = ?");
+            params.add(filter.result());
+        }
+        if (filter.from() != null) {
+            sql.append(" AND game_date >= ?");
+            params.add(Timestamp.valueOf(filter.from().atStartOfDay()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND game_date < ?");
+            params.add(Timestamp.valueOf(filter.to().plusDays(1).atStartOfDay()));
+        }
+        sql.append(" ORDER BY id");
+        return sql.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.ShavguLs.chess.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Canonical identity of an imported game: a SHA-256 over the MoveCodec move list and the
+ * White, Black, Result and Date headers, cut to 128 bits. Two imports of the same game
+ * produce the same fingerprint no matter how the PGN text was formatted or commented.
+ */
+public record GameFingerprint(long high, long low) {
+
+    public static GameFingerprint of(byte[] movesBin, String movetextFallback,
+                                     String white, String black, String result, String date) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String header : new String[]{white, black, result, date}) {
+            digest.update(normalize(header).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        if (movesBin != null) {
+            digest.update(movesBin);
+        } else {
+            // Games that cannot be replayed are identified by their whitespace-normalized movetext
+            digest.update((byte) 1);
+            digest.update(normalize(movetextFallback).getBytes(StandardCharsets.UTF_8));
+        }
+
+        byte[] hash = digest.digest();
+        long high = 0, low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (hash[i] & 0xFF);
+            low = (low << 8) | (hash[i + 8] & 0xFF);
+        }
+        return new GameFingerprint(high, low);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * The 32 character hex form stored in the games.fingerprint column.
+     */
+    public String toHex() {
+        return HexFormat.of().toHexDigits(high) + HexFormat.of().toHexDigits(low);
+    }
+
+    public static GameFingerprint fromHex(String hex) {
+        return new GameFingerprint(Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                Long.parseUnsignedLong(hex.substring(16, 32), 16));
+    }
+}
@@ -1,40 +1,131 @@
 package com.ShavguLs.chess.server;
 
+import com.ShavguLs.chess.common.log.Level;
+import com.ShavguLs.chess.common.log.Log;
 import com.ShavguLs.chess.common.logic.*;
-import com.ShavguLs.chess.common.MoveObject;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class GameSession implements Runnable {
+/**
+ * One game between two players, written as an event handler.
+ * Reader threads for the players and spectators, and the shared flag timer, post events;
+ * the session handles them one at a time on a shared pool, so a game whose players are
+ * thinking costs no CPU at all and nothing wakes it up until something happens.
+ *
+ * A player whose connection drops once the game is running does not lose straight away.
+ * Their Welcome carried a resume token, and for RESUME_GRACE_MS they can reconnect with
+ * RESUME_GAME:token:lastSeq. They then get the moves they missed after lastSeq, or a full
+ * snapshot, and the clocks. Their clock keeps running meanwhile, so the flag can still fall.
+ *
+ * When the server drains for a restart, a running game is saved as a SessionCheckpoint instead of
+ * being finished. The next process restores it with both players away, and they come back with
+ * their resume tokens as if their connections had dropped.
+ */
+public class GameSession {
+
+    private static final Log LOG = Log.get(GameSession.class);
+    // One wheel holds the flag timers of every game; clocks are charged from timestamps when a move arrives
+    private static final TimingWheel FLAG_TIMER = new TimingWheel("flag-timer", 10, 512);
+    // Handles the events of all games; a session only holds one of these threads while it has events queued
+    private static final ExecutorService EVENT_RUNNER =
+            ServerThreads.newExecutor("game-events", Runtime.getRuntime().availableProcessors());
+    private static final int GAME_SAVER_THREADS = 2;
+    // Writes finished games to the database, so a slow or unreachable database never holds up the event runners.
+    // A fixed pool even with virtual threads, which bounds the number of open database connections.
+    private static final ExecutorService GAME_SAVER =
+            Executors.newFixedThreadPool(GAME_SAVER_THREADS, ServerThreads.factory("game-saver"));
+    private static final long NICKNAME_TIMEOUT_MS = 5000;
+    private static final long RESUME_GRACE_MS = 30_000;
+    private static final SecureRandom TOKEN_RANDOM = new SecureRandom();
+
+    // Everything that can happen to a game
+    private sealed interface GameEvent {
+        record NicknameReceived(boolean white, String nickname) implements GameEvent { }
+        record NicknameTimeout() implements GameEvent { }
+        record MoveReceived(boolean white, int code, long receivedNanos) implements GameEvent { }
+        record ResyncRequested(boolean white) implements GameEvent { }
+        record FlagFell(long generation) implements GameEvent { }
+        record PlayerDisconnected(boolean white, PlayerConnection connection, String reason) implements GameEvent { }
+        record ResumeRequested(boolean white, PlayerConnection connection, int lastSeq) implements GameEvent { }
+        record GraceExpired(boolean white, long generation) implements GameEvent { }
+        record SpectatorJoined(SpectatorConnection spectator) implements GameEvent { }
+        record SpectatorResync(SpectatorConnection spectator) implements GameEvent { }
+        record SpectatorLeft(SpectatorConnection spectator) implements GameEvent { }
+        record CheckpointRequested(Path dir, CompletableFuture<Boolean> saved) implements GameEvent { }
+        record Restored() implements GameEvent { }
+    }
+
+    private final Queue<GameEvent> events = new ConcurrentLinkedQueue<>();
+    // Set while a pool thread is working through the queue
+    private final AtomicBoolean handlingEvents = new AtomicBoolean();
+    // Only touched while handling events
+    private boolean whiteNicknameReceived;
+    private boolean blackNicknameReceived;
+    private boolean gameStarted;
+    private boolean gameFinished;
+    // Players whose connection dropped, and which grace timer is theirs
+    private boolean whiteAway;
+    private boolean blackAway;
+    private long awayGeneration;
+    private long whiteAwayGeneration;
+    private long blackAwayGeneration;
 
     // Network and Core Logic
     private final Socket whitePlayerSocket;
     private final Socket blackPlayerSocket;
-    private ObjectOutputStream whiteOut;
-    private ObjectInputStream whiteIn;
-    private ObjectOutputStream blackOut;
-    private ObjectInputStream blackIn;
+    private final InputStream whiteInput;
+    private final InputStream blackInput;
+    // Whether each player's first connection accepts compressed frames
+    private final boolean whiteCompress;
+    private final boolean blackCompress;
+    // Each player's current connection; replaced when the player resumes
+    private volatile PlayerConnection whiteConnection;
+    private volatile PlayerConnection blackConnection;
+    // Let a player who dropped out back in; handed out in the Welcome
+    private final String whiteToken;
+    private final String blackToken;
     private final Board logicBoard;
+    // Legal moves of the side to move, recomputed once after every move
+    private List<Integer> legalMoves;
+    // Every MoveMade sent so far, so a resuming player gets just the ones they missed
+    private final List<Message.MoveMade> moveHistory = new ArrayList<>();
+    // The game's moves in MoveCodec form, replaced after every move so other threads can build snapshots
+    private volatile byte[] encodedMoves = new byte[0];
 
     // Player nicknames
     private String whitePlayerNickname = "White Player";
     private String blackPlayerNickname = "Black Player";
+    private final int whiteRating;
+    private final int blackRating;
+    private final TimeControl timeControl;
 
     // Clock Management
     private final Clock whiteClock;
     private final Clock blackClock;
-    private final ScheduledExecutorService clockExecutor = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean isClockRunning = new AtomicBoolean(false);
+    // Clocks and flag state are only touched while handling events
+    private TimingWheel.Timeout flagTimeout;
+    private long flagGeneration;
 
     // PGN and Game Recording Logic (Using your classes)
     private final MoveTracker moveTracker;
@@ -45,27 +136,107 @@ public class GameSession implements Runnable {
     private final List<SpectatorConnection> spectators = new CopyOnWriteArrayList<>();
     private volatile boolean isGameActive = true;
 
-    public GameSession(Socket player1, Socket player2, int gameId) {
+    public GameSession(WaitingPlayer white, WaitingPlayer black, int gameId) {
+        this(gameId, white.timeControl(), white.nickname(), black.nickname(), white.rating(), black.rating(),
+                white.socket(), white.in(), white.compress(), black.socket(), black.in(), black.compress(),
+                newToken(gameId), newToken(gameId));
+    }
+
+    private GameSession(int gameId, TimeControl timeControl, String whiteName, String blackName,
+                        int whiteRating, int blackRating, Socket whiteSocket, InputStream whiteIn, boolean whiteCompress,
+                        Socket blackSocket, InputStream blackIn, boolean blackCompress, String whiteToken, String blackToken) {
         this.gameId = gameId;
+        this.timeControl = timeControl;
+        this.whiteRating = whiteRating;
+        this.blackRating = blackRating;
+        if (!whiteName.isEmpty()) whitePlayerNickname = whiteName;
+        if (!blackName.isEmpty()) blackPlayerNickname = blackName;
 
         // --- Initialize Time ---
-        int hh = 0, mm = 10, ss = 0; // Hardcoded 10 minutes for now
-        this.whiteClock = new Clock(hh, mm, ss);
-        this.blackClock = new Clock(hh, mm, ss);
+        int mm = timeControl.minutes();
+        int increment = timeControl.incrementSeconds();
+        this.whiteClock = new Clock(0, mm, 0, increment, 0);
+        this.blackClock = new Clock(0, mm, 0, increment, 0);
 
         // --- Initialize Game Logic ---
         this.logicBoard = new Board();
         this.logicBoard.setupStandardBoard();
+        this.legalMoves = logicBoard.generateLegalMoves(true);
 
         // --- Initialize PGN System ---
         this.moveTracker = new MoveTracker();
         this.pgnManager = new PGNManager(this.moveTracker);
         // Player names will be set after we receive them from clients
-        this.pgnManager.setTimeControl(hh, mm, ss);
+        this.pgnManager.setTimeControl(0, mm, 0, increment);
 
         // --- Assign Players ---
-        this.whitePlayerSocket = player1;
-        this.blackPlayerSocket = player2;
+        this.whitePlayerSocket = whiteSocket;
+        this.blackPlayerSocket = blackSocket;
+        this.whiteInput = whiteIn;
+        this.blackInput = blackIn;
+        this.whiteCompress = whiteCompress;
+        this.blackCompress = blackCompress;
+        this.whiteToken = whiteToken;
+        this.blackToken = blackToken;
+    }
+
+    /**
+     * Rebuilds a game saved by a draining server. The moves are played again, so the board, the
+     * move list and the draw rules end up exactly as they were; both players count as away until
+     * they resume. Call startRestored to put the game back on the clock.
+     * @throws IllegalMoveException if the saved moves are not a legal game.
+     */
+    static GameSession restore(SessionCheckpoint checkpoint) throws IllegalMoveException, IOException {
+        MoveCodec.replay(checkpoint.moves()); // Rejects a damaged move list before anything is set up
+        GameSession session = new GameSession(checkpoint.gameId(), checkpoint.timeControl(), checkpoint.white(),
+                checkpoint.black(), checkpoint.whiteRating(), checkpoint.blackRating(), null, null, false, null, null, false,
+                checkpoint.whiteToken(), checkpoint.blackToken());
+        session.pgnManager.setPlayerNames(session.whitePlayerNickname, session.blackPlayerNickname);
+        for (int i = 0; i < MoveCodec.moveCount(checkpoint.moves()); i++) {
+            session.processMove(MoveCodec.moveAt(checkpoint.moves(), i), session.logicBoard.isWhiteTurn());
+        }
+        session.whiteClock.spend(session.whiteClock.getRemainingMillis() - checkpoint.whiteMillis());
+        session.blackClock.spend(session.blackClock.getRemainingMillis() - checkpoint.blackMillis());
+        session.gameStarted = true;
+        return session;
+    }
+
+    /**
+     * Starts the clock of a restored game and lists it again. The time the server was down is not charged.
+     */
+    void startRestored() {
+        post(new GameEvent.Restored());
+    }
+
+    /**
+     * Saves the game for the next server process and closes it here. The players are told the server
+     * is restarting; their clients then reconnect with RESUME_GAME. A game that has not begun yet is
+     * just closed, and a finished one is left alone.
+     * @return Completes with whether a checkpoint was written, once the session is closed.
+     */
+    CompletableFuture<Boolean> checkpoint(Path dir) {
+        CompletableFuture<Boolean> saved = new CompletableFuture<>();
+        post(new GameEvent.CheckpointRequested(dir, saved));
+        return saved;
+    }
+
+    // The game id comes first so the server can find the session; the rest is secret
+    private static String newToken(int gameId) {
+        byte[] secret = new byte[16];
+        TOKEN_RANDOM.nextBytes(secret);
+        return gameId + "." + HexFormat.of().formatHex(secret);
+    }
+
+    /**
+     * The game a RESUME_GAME token belongs to, or -1 if it is not a token.
+     */
+    static int gameIdOf(String token) {
+        int dot = token.indexOf('.');
+        try {
+            return dot > 0 ? Integer.parseInt(token.substring(0, dot)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     public String getWhitePlayerName() {
@@ -76,177 +247,423 @@ public class GameSession implements Runnable {
         return blackPlayerNickname;
     }
 
-    public String getCurrentTurn() {
-        return logicBoard.isWhiteTurn() ? "White" : "Black";
+    public int getWhiteRating() {
+        return whiteRating;
     }
 
-    public String getTimeStatus() {
-        return whiteClock.getTime() + " / " + blackClock.getTime();
+    public int getBlackRating() {
+        return blackRating;
+    }
+
+    public TimeControl getTimeControl() {
+        return timeControl;
     }
 
     public boolean isActive() {
         return isGameActive;
     }
 
-    @Override
-    public void run() {
-        String gameStatus = "IN_PROGRESS";
-        boolean whiteDisconnected = false;
-        boolean blackDisconnected = false;
-
-        try {
-            setupStreams();
-            System.out.println("[SERVER LOG] Game Session started. Streams are set up.");
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
 
-            // Get player nicknames first
-            getPlayerNicknames();
+    // Players whose connection is open; one that dropped out and may resume does not count
+    public int getConnectedPlayerCount() {
+        int connected = 0;
+        for (PlayerConnection connection : new PlayerConnection[] { whiteConnection, blackConnection }) {
+            if (connection != null && !connection.outbox.isClosed()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
 
-            // Set nicknames in PGN manager
-            pgnManager.setPlayerNames(whitePlayerNickname, blackPlayerNickname);
+    /**
+     * Asks both players for their nicknames and starts reading from them.
+     * The game itself begins once both nicknames are in, or after a few seconds with default names.
+     */
+    public void start() throws IOException {
+        // Frames need no stream header, so there is nothing to exchange before the first message
+        whiteConnection = new PlayerConnection(whitePlayerSocket, whiteInput, "game-" + gameId + "-white", whiteCompress);
+        blackConnection = new PlayerConnection(blackPlayerSocket, blackInput, "game-" + gameId + "-black", blackCompress);
+        LOG.debug("Session started", "game", gameId);
+        whiteConnection.send(new Message.RequestNickname());
+        blackConnection.send(new Message.RequestNickname());
+        startReader(true, whiteConnection);
+        startReader(false, blackConnection);
+        FLAG_TIMER.schedule(() -> post(new GameEvent.NicknameTimeout()), NICKNAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
 
-            // Send welcome messages with opponent nicknames
-            whiteOut.writeObject("WELCOME:WHITE:" + blackPlayerNickname);
-            blackOut.writeObject("WELCOME:BLACK:" + whitePlayerNickname);
-            System.out.println("[SERVER LOG] Welcome messages sent.");
+    /**
+     * Lets a player whose connection dropped back into the game.
+     * @param lastSeq The number of moves the player has seen, or -1 to get a full snapshot.
+     * @return false if the token belongs to neither player.
+     */
+    public boolean resume(Socket socket, InputStream in, boolean compress, String token, int lastSeq) throws IOException {
+        byte[] offered = token.getBytes(StandardCharsets.UTF_8);
+        boolean white = MessageDigest.isEqual(offered, whiteToken.getBytes(StandardCharsets.UTF_8));
+        if (!white && !MessageDigest.isEqual(offered, blackToken.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        String name = "game-" + gameId + (white ? "-white" : "-black");
+        post(new GameEvent.ResumeRequested(white, new PlayerConnection(socket, in, name, compress), lastSeq));
+        return true;
+    }
 
-            startClockTimer();
+    private void startReader(boolean white, PlayerConnection connection) {
+        ServerThreads.start("game-session-" + gameId + (white ? "-white" : "-black"), () -> readPlayer(white, connection));
+    }
 
-            while (gameStatus.equals("IN_PROGRESS")) {
-                // Check for game-ending conditions at the start of each loop
-                if (logicBoard.isGameOver()) {
-                    gameStatus = "NORMAL_CONCLUSION";
-                    continue;
-                }
-                if (checkDrawConditions()) {
-                    gameStatus = "DRAW";
-                    continue;
-                }
-                if (isTimeUp()) {
-                    gameStatus = "TIMEOUT";
-                    continue;
+    // Turns one player's messages into events until the connection ends
+    private void readPlayer(boolean white, PlayerConnection connection) {
+        DataInputStream in = connection.in;
+        try {
+            while (true) {
+                Message message = MessageCodec.read(in);
+                ServerMetrics.messageReceived();
+                if (message instanceof Message.Move move) {
+                    // The move counts from the moment it arrived, not from when the session gets to it
+                    post(new GameEvent.MoveReceived(white, move.code(), System.nanoTime()));
+                } else if (message instanceof Message.Nickname nickname) {
+                    post(new GameEvent.NicknameReceived(white, nickname.nickname()));
+                } else if (message instanceof Message.ResyncRequest) {
+                    post(new GameEvent.ResyncRequested(white));
                 }
+            }
+        } catch (IOException e) {
+            post(new GameEvent.PlayerDisconnected(white, connection, e.getMessage()));
+        }
+    }
 
-                broadcastGameState();
-
-                boolean isWhiteMoving = logicBoard.isWhiteTurn();
-                ObjectInputStream currentTurnInput = isWhiteMoving ? whiteIn : blackIn;
-                Socket currentPlayerSocket = isWhiteMoving ? whitePlayerSocket : blackPlayerSocket;
-
-                try {
-                    currentPlayerSocket.setSoTimeout(1000); // 1-second timeout for a move
-                    MoveObject move = (MoveObject) currentTurnInput.readObject();
-
-                    isClockRunning.set(false);
-                    processMove(move, isWhiteMoving);
-                    isClockRunning.set(true);
+    private void post(GameEvent event) {
+        events.add(event);
+        if (handlingEvents.compareAndSet(false, true)) {
+            EVENT_RUNNER.execute(this::handleEvents);
+        }
+    }
 
-                } catch (SocketTimeoutException e) {
-                    // Expected, do nothing, let the loop re-check game state
-                } catch (ClassNotFoundException | IOException e) {
-                    // A real error, likely a disconnect
-                    System.err.println("[SERVER ERROR] Player disconnected or sent invalid data: " + e.getMessage());
-                    gameStatus = "DISCONNECT";
-                    if (isWhiteMoving) whiteDisconnected = true; else blackDisconnected = true;
-                }
+    private void handleEvents() {
+        do {
+            GameEvent event;
+            while ((event = events.poll()) != null) {
+                handleSafely(event);
             }
+            handlingEvents.set(false);
+            // An event posted between the last poll and clearing the flag would otherwise wait for the next one
+        } while (!events.isEmpty() && handlingEvents.compareAndSet(false, true));
+    }
 
-            // Game Over Sequence
-            System.out.println("[SERVER LOG] Game #" + gameId + " over. Reason: " + gameStatus);
-            stopClockTimer();
-
-            String finalResult;
-            String finalPgnResult;
+    private void handleSafely(GameEvent event) {
+        try {
+            handle(event);
+        } catch (Exception e) {
+            LOG.error("Unhandled exception in session", e, "game", gameId, "event", event.getClass().getSimpleName());
+            if (!gameFinished) {
+                gameFinished = true;
+                broadcastMessage(new Message.ServerError("A server error occurred. The game cannot continue."));
+                endSession();
+            }
+        }
+    }
 
-            if (gameStatus.equals("DISCONNECT")) {
-                if (whiteDisconnected) {
-                    finalResult = "0-1 (" + whitePlayerNickname + " disconnected)";
-                    finalPgnResult = "0-1";
+    private void handle(GameEvent event) throws IOException {
+        if (gameFinished) {
+            // Late events from readers that noticed their socket close
+            if (event instanceof GameEvent.SpectatorJoined joined) {
+                joined.spectator().sendMessage(new Message.GameNotFound());
+                joined.spectator().close();
+            } else if (event instanceof GameEvent.ResumeRequested resume) {
+                resume.connection().send(new Message.GameNotFound());
+                resume.connection().close();
+            } else if (event instanceof GameEvent.CheckpointRequested request) {
+                request.saved().complete(false);
+            }
+            return;
+        }
+        switch (event) {
+            case GameEvent.NicknameReceived received -> {
+                if (gameStarted) {
+                    return;
+                }
+                String nickname = received.nickname();
+                if (received.white()) {
+                    whiteNicknameReceived = true;
+                    if (nickname != null && !nickname.isEmpty()) whitePlayerNickname = nickname;
                 } else {
-                    finalResult = "1-0 (" + blackPlayerNickname + " disconnected)";
-                    finalPgnResult = "1-0";
+                    blackNicknameReceived = true;
+                    if (nickname != null && !nickname.isEmpty()) blackPlayerNickname = nickname;
+                }
+                if (whiteNicknameReceived && blackNicknameReceived) {
+                    beginGame();
+                }
+            }
+            case GameEvent.NicknameTimeout timeout -> {
+                if (!gameStarted) {
+                    LOG.warn("No nicknames in time, using default names", "game", gameId);
+                    beginGame();
+                }
+            }
+            case GameEvent.MoveReceived move -> {
+                if (gameStarted) {
+                    handleMove(move);
                 }
-            } else if (gameStatus.equals("TIMEOUT")) {
-                if (whiteClock.outOfTime()) {
-                    finalResult = "0-1 (" + blackPlayerNickname + " wins on time)";
-                    finalPgnResult = "0-1";
+            }
+            case GameEvent.ResyncRequested request -> connection(request.white()).send(snapshot());
+            case GameEvent.FlagFell flag -> checkFlag(flag.generation());
+            case GameEvent.PlayerDisconnected disconnected -> {
+                if (disconnected.connection() != connection(disconnected.white())) {
+                    return; // A connection the player has already replaced
+                }
+                LOG.info("Player disconnected", "game", gameId, "player", nickname(disconnected.white()),
+                        "reason", disconnected.reason());
+                if (gameStarted) {
+                    playerAway(disconnected.white());
                 } else {
-                    finalResult = "1-0 (" + whitePlayerNickname + " wins on time)";
-                    finalPgnResult = "1-0";
+                    finishGame(disconnected.white() ? GameEnd.WHITE_DISCONNECTED : GameEnd.BLACK_DISCONNECTED);
                 }
-            } else {
-                finalResult = getFinalGameResult();
-                finalPgnResult = extractResultCode(finalResult);
             }
+            case GameEvent.ResumeRequested resume -> resumePlayer(resume);
+            case GameEvent.GraceExpired expired -> {
+                boolean stillAway = expired.white()
+                        ? whiteAway && whiteAwayGeneration == expired.generation()
+                        : blackAway && blackAwayGeneration == expired.generation();
+                if (stillAway) {
+                    finishGame(expired.white() ? GameEnd.WHITE_DISCONNECTED : GameEnd.BLACK_DISCONNECTED);
+                }
+            }
+            case GameEvent.SpectatorJoined joined -> welcomeSpectator(joined.spectator());
+            case GameEvent.SpectatorResync request -> request.spectator().sendMessage(snapshot());
+            case GameEvent.SpectatorLeft left -> {
+                if (spectators.remove(left.spectator())) {
+                    LOG.debug("Spectator left", "game", gameId, "spectators", spectators.size());
+                    publishListing();
+                }
+            }
+            case GameEvent.CheckpointRequested request -> saveCheckpoint(request);
+            case GameEvent.Restored restored -> {
+                playerAway(true);
+                playerAway(false);
+                startTurn(logicBoard.isWhiteTurn() ? whiteClock : blackClock, System.nanoTime());
+                publishListing();
+                LOG.info("Game restored", "game", gameId, "white", whitePlayerNickname, "black", blackPlayerNickname,
+                        "ply", moveHistory.size());
+            }
+        }
+    }
 
-            pgnManager.setResult(finalPgnResult);
+    private void saveCheckpoint(GameEvent.CheckpointRequested request) {
+        gameFinished = true;
+        if (!gameStarted) {
+            broadcastMessage(new Message.ServerError("The server is restarting. Please start a new game."));
+            endSession();
+            request.saved().complete(false);
+            return;
+        }
+        stopClocks();
+        SessionCheckpoint checkpoint = new SessionCheckpoint(gameId, whitePlayerNickname, blackPlayerNickname,
+                whiteRating, blackRating, timeControl, whiteToken, blackToken,
+                whiteClock.getRemainingMillis(), blackClock.getRemainingMillis(), encodedMoves);
+        boolean saved;
+        try {
+            checkpoint.write(request.dir());
+            saved = true;
+            broadcastMessage(new Message.ServerError("The server is restarting. Your game continues in a moment."));
+            LOG.info("Game checkpointed", "game", gameId, "ply", moveHistory.size());
+        } catch (IOException e) {
+            saved = false;
+            broadcastMessage(new Message.ServerError("The server is restarting and this game could not be saved."));
+            LOG.error("Could not checkpoint game", e, "game", gameId);
+        }
+        endSession();
+        request.saved().complete(saved);
+    }
 
-            broadcastGameState();
-            broadcastMessage("GAMEOVER:" + finalResult);
-            System.out.println("[SERVER LOG] Sent GAMEOVER message: " + finalResult);
+    private void beginGame() throws IOException {
+        gameStarted = true;
+        LOG.info("Game started", "game", gameId, "white", whitePlayerNickname, "black", blackPlayerNickname,
+                "tc", timeControl);
+
+        // Set nicknames in PGN manager
+        pgnManager.setPlayerNames(whitePlayerNickname, blackPlayerNickname);
+
+        // Send welcome messages with opponent nicknames
+        whiteConnection.send(new Message.Welcome(true, blackPlayerNickname, whiteToken));
+        blackConnection.send(new Message.Welcome(false, whitePlayerNickname, blackToken));
+        Message.Snapshot snapshot = snapshot();
+        byte[] snapshotFrame = MessageCodec.encode(snapshot);
+        whiteConnection.send(snapshot, snapshotFrame);
+        blackConnection.send(snapshot, snapshotFrame);
+
+        startTurn(whiteClock, System.nanoTime());
+        broadcastMessage(clockUpdate());
+        publishListing();
+    }
 
-            String finalPGN = pgnManager.getPGNText();
-            broadcastMessage("FINAL_PGN:" + finalPGN);
-            System.out.println("[SERVER LOG] Sent final PGN.");
-            DatabaseManager.saveGame(this.pgnManager);
+    private void handleMove(GameEvent.MoveReceived move) throws IOException {
+        boolean isWhiteMoving = move.white();
+        if (isWhiteMoving != logicBoard.isWhiteTurn()) {
+            sendInvalidMoveMessage(isWhiteMoving, "It is not your turn.");
+            return;
+        }
+        Clock moverClock = isWhiteMoving ? whiteClock : blackClock;
+        if (!moveInTime(moverClock, move.receivedNanos())) {
+            // The flag fell before the move arrived
+            finishGame(GameEnd.TIMEOUT);
+            return;
+        }
+        if (!processMove(move.code(), isWhiteMoving)) {
+            resumeTurn(moverClock);
+            return;
+        }
+        finishTurn(moverClock, isWhiteMoving ? blackClock : whiteClock, move.receivedNanos());
+        broadcastMessage(clockUpdate());
+        publishListing();
+        ServerMetrics.recordMove(System.nanoTime() - move.receivedNanos());
+
+        if (legalMoves.isEmpty()) {
+            finishGame(GameEnd.NORMAL_CONCLUSION);
+        } else if (checkDrawConditions()) {
+            finishGame(GameEnd.DRAW);
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("[SERVER ERROR] Unhandled exception in GameSession: " + e.getMessage());
-            e.printStackTrace();
-            broadcastMessage("ERROR:A server error occurred. The game cannot continue.");
-        } finally {
-            isGameActive = false;
-            closeConnections();
-            //Remove this game from active games
-            ChessServer.removeGame(gameId);
+    // The connection dropped mid-game: keep the seat open for the grace period
+    private void playerAway(boolean white) {
+        if (connection(white) != null) {
+            connection(white).abort();
+        }
+        long generation = ++awayGeneration;
+        if (white) {
+            whiteAway = true;
+            whiteAwayGeneration = generation;
+        } else {
+            blackAway = true;
+            blackAwayGeneration = generation;
         }
+        FLAG_TIMER.schedule(() -> post(new GameEvent.GraceExpired(white, generation)), RESUME_GRACE_MS, TimeUnit.MILLISECONDS);
+        String name = white ? whitePlayerNickname : blackPlayerNickname;
+        Message notice = new Message.ServerError(name + " lost the connection. Waiting "
+                + RESUME_GRACE_MS / 1000 + " seconds for them to return.");
+        byte[] frame = MessageCodec.encode(notice);
+        sendToPlayer(!white, notice, frame, frame);
     }
 
-    private void getPlayerNicknames() throws IOException {
-        try {
-            // Request nicknames from both players
-            whiteOut.writeObject("REQUEST_NICKNAME");
-            blackOut.writeObject("REQUEST_NICKNAME");
+    // Swaps in the player's new connection and sends what they missed
+    private void resumePlayer(GameEvent.ResumeRequested resume) throws IOException {
+        boolean white = resume.white();
+        // The old connection may not have noticed it is dead yet; its reader's event is ignored once replaced
+        if (connection(white) != null) {
+            connection(white).abort();
+        }
+        if (white) {
+            whiteConnection = resume.connection();
+            whiteAway = false;
+        } else {
+            blackConnection = resume.connection();
+            blackAway = false;
+        }
+        PlayerConnection connection = resume.connection();
+        int lastSeq = resume.lastSeq();
+        if (lastSeq >= 0 && lastSeq <= moveHistory.size()) {
+            for (Message.MoveMade missed : moveHistory.subList(lastSeq, moveHistory.size())) {
+                connection.send(missed);
+            }
+        } else {
+            connection.send(snapshot());
+        }
+        connection.send(clockUpdate());
+        startReader(white, connection);
+        LOG.info("Player resumed", "game", gameId, "player", nickname(white), "lastSeq", lastSeq,
+                "ply", moveHistory.size());
+    }
 
-            // Set timeout for nickname reception
-            whitePlayerSocket.setSoTimeout(5000);
-            blackPlayerSocket.setSoTimeout(5000);
+    private enum GameEnd { NORMAL_CONCLUSION, DRAW, TIMEOUT, WHITE_DISCONNECTED, BLACK_DISCONNECTED }
+
+    // Game Over Sequence
+    private void finishGame(GameEnd reason) {
+        gameFinished = true;
+        stopClocks();
+
+        String finalResult;
+        String finalPgnResult;
+
+        if (reason == GameEnd.WHITE_DISCONNECTED) {
+            finalResult = "0-1 (" + whitePlayerNickname + " disconnected)";
+            finalPgnResult = "0-1";
+        } else if (reason == GameEnd.BLACK_DISCONNECTED) {
+            finalResult = "1-0 (" + blackPlayerNickname + " disconnected)";
+            finalPgnResult = "1-0";
+        } else if (reason == GameEnd.TIMEOUT) {
+            if (whiteClock.outOfTime()) {
+                finalResult = "0-1 (" + blackPlayerNickname + " wins on time)";
+                finalPgnResult = "0-1";
+            } else {
+                finalResult = "1-0 (" + whitePlayerNickname + " wins on time)";
+                finalPgnResult = "1-0";
+            }
+        } else {
+            finalResult = getFinalGameResult();
+            finalPgnResult = extractResultCode(finalResult);
+        }
 
-            // Receive nicknames
-            String whiteNick = (String) whiteIn.readObject();
-            String blackNick = (String) blackIn.readObject();
+        pgnManager.setResult(finalPgnResult);
 
-            if (whiteNick != null && !whiteNick.isEmpty()) {
-                whitePlayerNickname = whiteNick;
-            }
-            if (blackNick != null && !blackNick.isEmpty()) {
-                blackPlayerNickname = blackNick;
-            }
+        try {
+            broadcastMessage(clockUpdate());
+            broadcastMessage(new Message.GameOver(finalResult));
+            LOG.info("Game over", "game", gameId, "reason", reason, "result", finalResult, "ply", moveHistory.size());
 
-            System.out.println("[SERVER LOG] Game ID:\" + gameId + \" - Players: \" + whitePlayerNickname + \" (White) vs \" + blackPlayerNickname + \" (Black)");
+            String finalPGN = pgnManager.getPGNText();
+            broadcastMessage(new Message.FinalPgn(finalPGN));
+        } finally {
+            // A broadcast that fails, say a PGN too long for one frame, must not cost the game its record
+            saveGame();
+            endSession();
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("[SERVER ERROR] Could not get player nicknames: " + e.getMessage());
-            // continue with default names
+    private void saveGame() {
+        try {
+            GAME_SAVER.execute(() -> DatabaseManager.saveGame(pgnManager));
+        } catch (RejectedExecutionException e) {
+            // The server is past draining; save here rather than lose the game
+            DatabaseManager.saveGame(pgnManager);
         }
     }
 
-    private void processMove(MoveObject move, boolean isWhiteMoving) throws IOException {
-        System.out.println("\n[SERVER PROCESS_MOVE] -----------------------------");
-        System.out.println("[SERVER PROCESS_MOVE] Received move from " + (isWhiteMoving ? whitePlayerNickname : blackPlayerNickname) + ": " + move);
-        System.out.println("[SERVER PROCESS_MOVE] Board's current turn is: " + (logicBoard.isWhiteTurn() ? "White" : "Black"));
+    /**
+     * Lets the games already handed to the database writer finish saving; for a stopping server.
+     * Games that end after this are saved on their own session's thread.
+     * @return false if some were still being written when the time ran out.
+     */
+    static boolean finishSaves(long timeoutMillis) throws InterruptedException {
+        GAME_SAVER.shutdown();
+        return GAME_SAVER.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void endSession() {
+        isGameActive = false;
+        closeConnections();
+        //Remove this game from active games
+        ChessServer.removeGame(gameId);
+    }
 
-        int srcRow = move.startRow();
-        int srcCol = move.startCol();
-        int destRow = move.endRow();
-        int destCol = move.endCol();
+    // Returns whether the move was legal and has been played
+    private boolean processMove(int moveCode, boolean isWhiteMoving) throws IOException {
+        int srcRow = MoveCodec.srcRow(moveCode);
+        int srcCol = MoveCodec.srcCol(moveCode);
+        int destRow = MoveCodec.destRow(moveCode);
+        int destCol = MoveCodec.destCol(moveCode);
 
         Piece pieceToMove = logicBoard.getPieceAt(srcRow, srcCol);
         if (pieceToMove == null) {
-            System.out.println("[SERVER PROCESS_MOVE] FAILED: No piece at source square (" + srcRow + "," + srcCol + ").");
+            if (LOG.isEnabled(Level.DEBUG)) {
+                LOG.debug("Move rejected", "game", gameId, "ply", moveHistory.size(), "player", nickname(isWhiteMoving),
+                        "move", MoveCodec.toUci(moveCode), "reason", "no piece");
+            }
             sendInvalidMoveMessage(isWhiteMoving, "No piece at source square.");
-            return;
+            return false;
         }
-        System.out.println("[SERVER PROCESS_MOVE] Piece to move: " + pieceToMove.getClass().getSimpleName());
 
         // Gather pre-move info for PGN
         boolean wasCapture = logicBoard.getPieceAt(destRow, destCol) != null ||
@@ -255,22 +672,20 @@ public class GameSession implements Runnable {
         boolean isCastling = pieceToMove instanceof King && Math.abs(destCol - srcCol) == 2;
 
         Piece promotionChoice = null;
-        char promoChar = move.promotionPiece();
+        char promoChar = MoveCodec.promotionChar(moveCode);
         if (promoChar != ' ') {
             boolean isWhite = isWhiteMoving;
             if (promoChar == 'q' || promoChar == 'Q') promotionChoice = new Queen(isWhite);
             else if (promoChar == 'r' || promoChar == 'R') promotionChoice = new Rook(isWhite);
             else if (promoChar == 'b' || promoChar == 'B') promotionChoice = new Bishop(isWhite);
             else if (promoChar == 'n' || promoChar == 'N') promotionChoice = new Knight(isWhite);
-            System.out.println("[SERVER PROCESS_MOVE] Promotion choice detected: " + promotionChoice.getClass().getSimpleName());
         }
 
-        System.out.println("[SERVER PROCESS_MOVE] Calling logicBoard.attemptMove...");
+        List<Integer> movesBefore = legalMoves;
+
         boolean moveWasSuccessful = logicBoard.attemptMove(srcRow, srcCol, destRow, destCol, isWhiteMoving, promotionChoice);
-        System.out.println("[SERVER PROCESS_MOVE] ...attemptMove returned: " + moveWasSuccessful);
 
         if (moveWasSuccessful) {
-            System.out.println("[SERVER PROCESS_MOVE] SUCCESS: Move was legal. Recording to PGN.");
             // Post-move PGN logic
             Piece movedPiece = logicBoard.getPieceAt(destRow, destCol);
             Piece promotedPieceForPgn = null;
@@ -279,23 +694,38 @@ public class GameSession implements Runnable {
             }
 
             boolean opponentIsWhite = logicBoard.isWhiteTurn();
+            legalMoves = logicBoard.generateLegalMoves(opponentIsWhite);
             boolean causesCheck = logicBoard.isKingInCheck(opponentIsWhite);
-            boolean causesCheckmate = causesCheck && !logicBoard.hasLegalMoves(opponentIsWhite);
+            boolean causesCheckmate = causesCheck && legalMoves.isEmpty();
 
             String moveNotation = MoveConverter.convertMoveToNotation(pieceToMove, srcRow, srcCol, destRow, destCol,
                     logicBoard, wasCapture, causesCheck,
-                    causesCheckmate, isCastling, promotedPieceForPgn);
-            System.out.println("[SERVER PROCESS_MOVE] Generated PGN notation: " + moveNotation);
+                    causesCheckmate, isCastling, promotedPieceForPgn, movesBefore);
 
+            int playedCode = MoveCodec.encode(srcRow, srcCol, destRow, destCol, promoChar);
             moveTracker.addMove(moveNotation);
+            moveTracker.addMoveCode(playedCode);
             moveTracker.updateMoveCounter(wasCapture, wasPawnMove);
             moveTracker.addPosition(logicBoard.generatePositionString());
 
+            // Everyone applies the move to their own board; no FEN or full board goes out
+            encodedMoves = moveTracker.getEncodedMoves();
+            Message.MoveMade update = new Message.MoveMade(MoveCodec.moveCount(encodedMoves), playedCode, Zobrist.hash(logicBoard));
+            moveHistory.add(update);
+            broadcastMessage(update);
+            // Off by default; building the record for every move is not free
+            if (LOG.isEnabled(Level.DEBUG)) {
+                LOG.debug("Move played", "game", gameId, "ply", update.seq(), "player", nickname(isWhiteMoving),
+                        "move", MoveCodec.toUci(playedCode), "san", moveNotation);
+            }
         } else {
-            System.out.println("[SERVER PROCESS_MOVE] FAILED: Move was illegal according to Board.attemptMove.");
+            if (LOG.isEnabled(Level.DEBUG)) {
+                LOG.debug("Move rejected", "game", gameId, "ply", moveHistory.size(), "player", nickname(isWhiteMoving),
+                        "move", MoveCodec.toUci(moveCode), "reason", "illegal");
+            }
             sendInvalidMoveMessage(isWhiteMoving, "The move is illegal.");
         }
-        System.out.println("[SERVER PROCESS_MOVE] -----------------------------\n");
+        return moveWasSuccessful;
     }
 
     private String getFinalGameResult() {
@@ -321,9 +751,15 @@ public class GameSession implements Runnable {
     // --- Helper Methods ---
 
     private void sendInvalidMoveMessage(boolean isWhiteMoving, String reason) throws IOException {
-        ObjectOutputStream out = isWhiteMoving ? whiteOut : blackOut;
-        out.writeObject("INVALID_MOVE:" + reason);
-        out.flush();
+        connection(isWhiteMoving).send(new Message.InvalidMove(reason));
+    }
+
+    private PlayerConnection connection(boolean white) {
+        return white ? whiteConnection : blackConnection;
+    }
+
+    private String nickname(boolean white) {
+        return white ? whitePlayerNickname : blackPlayerNickname;
     }
 
     private String extractResultCode(String fullResult) {
@@ -333,84 +769,128 @@ public class GameSession implements Runnable {
         return "*";
     }
 
-    private void setupStreams() throws IOException {
-        try {
-            whiteOut = new ObjectOutputStream(whitePlayerSocket.getOutputStream());
-            whiteOut.flush();
-            blackOut = new ObjectOutputStream(blackPlayerSocket.getOutputStream());
-            blackOut.flush();
-
-            // Small delay to ensure both sides are ready
-            Thread.sleep(100);
-
-            whiteIn = new ObjectInputStream(whitePlayerSocket.getInputStream());
-            blackIn = new ObjectInputStream(blackPlayerSocket.getInputStream());
-            System.out.println("[SERVER LOG] Streams successfully established for both players.");
-        } catch (InterruptedException e) {
-            throw new IOException("Stream setup interrupted", e);
-        }
-    }
-
-    private void startClockTimer() {
-        isClockRunning.set(true);
-        clockExecutor.scheduleAtFixedRate(() -> {
-            if (isClockRunning.get()) {
-                Clock currentClock = logicBoard.isWhiteTurn() ? whiteClock : blackClock;
-                boolean wasOutOfTime = currentClock.outOfTime();
-                currentClock.decr();
-                broadcastMessage(String.format("CLOCK_UPDATE:%s;%s", whiteClock.getTime(), blackClock.getTime()));
-
-                if (currentClock.outOfTime() && !wasOutOfTime) {
-                    System.out.println("A player has run out of time.");
-                    isClockRunning.set(false);
-                }
-            }
-        }, 1, 1, TimeUnit.SECONDS);
+    /**
+     * Starts the clock of the player to move and arms its flag on the shared wheel.
+     * Nothing ticks while the player thinks; the time is charged when the move arrives.
+     */
+    private void startTurn(Clock clock, long nowNanos) {
+        clock.start(nowNanos);
+        scheduleFlag(clock, nowNanos);
     }
 
-    private void stopClockTimer() {
-        isClockRunning.set(false);
-        clockExecutor.shutdownNow();
+    /**
+     * Called when a move is handled, before it is checked. Disarms the flag while the move is processed.
+     * @return false if the mover's time had already run out, in which case the move must not be played.
+     */
+    private boolean moveInTime(Clock clock, long receivedNanos) {
+        cancelFlag();
+        if (clock.outOfTime() || clock.remainingNanos(receivedNanos) <= 0) {
+            clock.halt(receivedNanos);
+            return false;
+        }
+        return true;
     }
 
-    private void broadcastGameState() {
-        String fen = logicBoard.generateFen();
-        broadcastMessage("FEN:" + fen);
+    // A legal move: charge the mover up to the moment it arrived, credit delay and increment, start the opponent
+    private void finishTurn(Clock mover, Clock next, long receivedNanos) {
+        mover.stop(receivedNanos);
+        next.start(receivedNanos);
+        scheduleFlag(next, System.nanoTime());
     }
 
-    private void broadcastMessage(String message) {
-        try {
-            if(whiteOut != null) { whiteOut.writeObject(message); whiteOut.flush(); }
-        } catch (IOException e) { System.err.println("Failed to send to white: " + e.getMessage()); }
-        try {
-            if(blackOut != null) { blackOut.writeObject(message); blackOut.flush(); }
-        } catch (IOException e) { System.err.println("Failed to send to black: " + e.getMessage()); }
+    // An illegal move: the mover's clock never stopped, only its flag needs arming again
+    private void resumeTurn(Clock clock) {
+        scheduleFlag(clock, System.nanoTime());
     }
 
-    // Broadcast message to all spectators
-    private void broadcastToSpectators(String message) {
-        List<SpectatorConnection> toRemove = new ArrayList<>();
+    private void stopClocks() {
+        cancelFlag();
+        long now = System.nanoTime();
+        whiteClock.halt(now);
+        blackClock.halt(now);
+    }
 
-        for (SpectatorConnection spectator : spectators) {
-            try {
-                spectator.sendMessage(message);
-            } catch (IOException e) {
-                // Spectator disconnected, mark for removal
-                toRemove.add(spectator);
-            }
+    private void scheduleFlag(Clock clock, long nowNanos) {
+        cancelFlag();
+        long generation = flagGeneration;
+        flagTimeout = FLAG_TIMER.schedule(() -> post(new GameEvent.FlagFell(generation)),
+                clock.remainingNanos(nowNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelFlag() {
+        // A flag event that is already queued sees the new generation and is ignored
+        flagGeneration++;
+        if (flagTimeout != null) {
+            flagTimeout.cancel();
+            flagTimeout = null;
         }
+    }
 
-        // Remove disconnected spectators
-        for (SpectatorConnection spectator : toRemove) {
-            spectators.remove(spectator);
-            spectator.close();
+    // The wheel says the running clock should have reached zero
+    private void checkFlag(long generation) {
+        if (generation != flagGeneration) {
+            return; // A move came in first
+        }
+        Clock clock = logicBoard.isWhiteTurn() ? whiteClock : blackClock;
+        long now = System.nanoTime();
+        if (clock.remainingNanos(now) > 0) {
+            scheduleFlag(clock, now);
+            return;
+        }
+        clock.halt(now);
+        flagTimeout = null;
+        finishGame(GameEnd.TIMEOUT);
+    }
+
+    private Message.Snapshot snapshot() {
+        return new Message.Snapshot(encodedMoves);
+    }
+
+    // Both clocks as they stand right now; clients run the ticking one down themselves
+    private Message.ClockUpdate clockUpdate() {
+        long now = System.nanoTime();
+        return new Message.ClockUpdate((int) whiteClock.remainingMillis(now), (int) blackClock.remainingMillis(now),
+                whiteClock.isRunning(), blackClock.isRunning());
+    }
+
+    // Tells the lobby about the game's current state; called on every change it shows
+    private void publishListing() {
+        long now = System.nanoTime();
+        ChessServer.publishGame(new GameDirectory.Entry(gameId, whitePlayerNickname, blackPlayerNickname,
+                whiteRating, blackRating, timeControl, logicBoard.isWhiteTurn(),
+                whiteClock.remainingMillis(now), blackClock.remainingMillis(now), spectators.size()));
+    }
+
+    // Encodes the message once and queues the same frame for both players and all spectators
+    private void broadcastMessage(Message message) {
+        byte[] frame = MessageCodec.encode(message);
+        // Only large frames such as the final PGN are worth compressing; the rest come back as they are
+        byte[] compressed = MessageCodec.compress(frame);
+        sendToPlayer(true, message, frame, compressed);
+        sendToPlayer(false, message, frame, compressed);
+        broadcastToSpectators(message, frame, compressed);
+    }
+
+    // Players who dropped out are skipped; they catch up when they resume
+    private void sendToPlayer(boolean white, Message message, byte[] frame, byte[] compressed) {
+        PlayerConnection connection = connection(white);
+        if (connection != null && !(white ? whiteAway : blackAway)) {
+            connection.send(message, frame, compressed);
+        }
+    }
+
+    // Queues an already encoded frame for every spectator, so a popular game encodes each update only once
+    private void broadcastToSpectators(Message message, byte[] frame, byte[] compressed) {
+        for (SpectatorConnection spectator : spectators) {
+            // A spectator that fell behind is closed by its outbox; its watcher then reports it gone
+            spectator.outbox.send(message, frame, compressed);
         }
     }
 
     private void closeConnections() {
-        stopClockTimer();
-        try { if(whitePlayerSocket != null) whitePlayerSocket.close(); } catch (IOException e) { /* ignore */ }
-        try { if(blackPlayerSocket != null) blackPlayerSocket.close(); } catch (IOException e) { /* ignore */ }
+        stopClocks();
+        if (whiteConnection != null) whiteConnection.close();
+        if (blackConnection != null) blackConnection.close();
 
         // Close all spectator connections
         for (SpectatorConnection spectator : spectators) {
@@ -418,100 +898,110 @@ public class GameSession implements Runnable {
         }
         spectators.clear();
 
-        System.out.println("GameSession #" + gameId + " ended and connections closed.");
+        LOG.debug("Session ended", "game", gameId);
     }
 
-    private boolean isTimeUp() {
-        return whiteClock.outOfTime() || blackClock.outOfTime();
-    }
-
-    public void addSpectator(Socket spectatorSocket) throws IOException {
+    public void addSpectator(Socket spectatorSocket, InputStream spectatorInput, boolean compress) throws IOException {
         if (!isGameActive) {
             spectatorSocket.close();
             return;
         }
+        // Joining is an event like any other, so the spectator's snapshot and the next move can not cross
+        SpectatorConnection spectator = new SpectatorConnection(spectatorSocket, spectatorInput,
+                "game-" + gameId + "-spectator-" + spectatorSocket.getPort(), compress);
+        post(new GameEvent.SpectatorJoined(spectator));
+    }
 
-        SpectatorConnection spectator = new SpectatorConnection(spectatorSocket);
-        spectators.add(spectator);
-
+    private void welcomeSpectator(SpectatorConnection spectator) throws IOException {
         // Send welcome message with current players
-        spectator.sendMessage("SPECTATOR_WELCOME:" + whitePlayerNickname + ":" + blackPlayerNickname);
+        spectator.sendMessage(new Message.SpectatorWelcome(whitePlayerNickname, blackPlayerNickname));
 
         // Send current game state
-        spectator.sendMessage("FEN:" + logicBoard.generateFen());
+        spectator.sendMessage(snapshot());
 
         // Send current clock times
-        spectator.sendMessage(String.format("CLOCK_UPDATE:%s;%s", whiteClock.getTime(), blackClock.getTime()));
+        spectator.sendMessage(clockUpdate());
+
+        // From here on the spectator receives every update the players get
+        spectators.add(spectator);
+        publishListing();
 
-        System.out.println("Spectator added to game #" + gameId + ". Total spectators: " + spectators.size());
+        LOG.debug("Spectator joined", "game", gameId, "spectators", spectators.size());
 
-        // Start a listener thread for this spectator to handle their requests
-        new Thread(() -> handleSpectatorRequests(spectator)).start();
+        // Start a listener thread that notices when this spectator goes away
+        ServerThreads.start("spectator-game-" + gameId, () -> watchSpectator(spectator));
     }
 
-    private void handleSpectatorRequests(SpectatorConnection spectator) {
-        try (ObjectInputStream spectatorIn = new ObjectInputStream(spectator.socket.getInputStream())) {
-
+    // Updates are pushed; spectators only ask for a snapshot after missing one. Reading also tells us when they leave.
+    private void watchSpectator(SpectatorConnection spectator) {
+        try (DataInputStream spectatorIn = new DataInputStream(new BufferedInputStream(spectator.in))) {
             while (isGameActive && !spectator.socket.isClosed()) {
-                try {
-                    spectator.socket.setSoTimeout(30000); // 30 second timeout
-                    Object request = spectatorIn.readObject();
-
-                    if (request instanceof String) {
-                        String requestStr = (String) request;
-
-                        if ("REQUEST_UPDATE".equals(requestStr)) {
-                            // Send current game state to this spectator
-                            spectator.sendMessage("FEN:" + logicBoard.generateFen());
-                            spectator.sendMessage(String.format("CLOCK_UPDATE:%s;%s",
-                                    whiteClock.getTime(), blackClock.getTime()));
-                            System.out.println("Sent update to spectator in game #" + gameId);
-                        }
-                    }
-
-                } catch (java.net.SocketTimeoutException e) {
-                    // Normal timeout, continue listening
-                    continue;
-                } catch (Exception e) {
-                    // Spectator disconnected or error occurred
-                    System.out.println("Spectator disconnected from game #" + gameId + ": " + e.getMessage());
-                    break;
+                Message message = MessageCodec.read(spectatorIn);
+                ServerMetrics.messageReceived();
+                if (message instanceof Message.ResyncRequest) {
+                    post(new GameEvent.SpectatorResync(spectator));
                 }
             }
-
         } catch (IOException e) {
-            System.err.println("Error setting up spectator input stream: " + e.getMessage());
+            // Spectator disconnected, or the game ended and closed the socket
         } finally {
             // Remove spectator when they disconnect
-            spectators.remove(spectator);
             spectator.close();
-            System.out.println("Spectator removed from game #" + gameId + ". Remaining: " + spectators.size());
+            post(new GameEvent.SpectatorLeft(spectator));
+        }
+    }
+
+    // A player's socket; the game's broadcasts and the answers to the player are queued on its outbox
+    private static final class PlayerConnection {
+        private final DataInputStream in;
+        private final Outbox outbox;
+
+        PlayerConnection(Socket socket, InputStream in, String name, boolean compress) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            this.outbox = new Outbox(socket, name, compress);
+        }
+
+        void send(Message message) {
+            outbox.send(message);
+        }
+
+        void send(Message message, byte[] frame) {
+            outbox.send(message, frame);
+        }
+
+        void send(Message message, byte[] frame, byte[] compressed) {
+            outbox.send(message, frame, compressed);
+        }
+
+        // Once what is queued has gone out
+        void close() {
+            outbox.close();
+        }
+
+        // For a connection that is already dead or replaced
+        void abort() {
+            outbox.abort();
         }
     }
 
     private static class SpectatorConnection {
-        private Socket socket;
-        private ObjectOutputStream out;
+        private final Socket socket;
+        private final InputStream in;
+        private final Outbox outbox;
 
-        public SpectatorConnection(Socket socket) throws IOException {
+        public SpectatorConnection(Socket socket, InputStream in, String name, boolean compress) throws IOException {
             this.socket = socket;
-            this.out = new ObjectOutputStream(socket.getOutputStream());
-            this.out.flush();
+            this.in = in;
+            this.outbox = new Outbox(socket, name, compress);
         }
 
-        public void sendMessage(String message) throws IOException {
-            out.writeObject(message);
-            out.flush();
+        public void sendMessage(Message message) {
+            outbox.send(message);
         }
 
+        // Once what is queued has gone out
         public void close() {
-            try {
-                if (socket != null && !socket.isClosed()) {
-                    socket.close();
-                }
-            } catch (IOException e) {
-                // Ignore close errors
-            }
+            outbox.close();
         }
     }
-}
\ No newline at end of file
+}
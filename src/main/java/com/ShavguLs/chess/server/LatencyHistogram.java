@@ -0,0 +1,101 @@
+package com.ShavguLs.chess.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram in the style of HdrHistogram: fixed memory, constant time recording
+ * from any number of threads, and percentiles with a bounded relative error.
+ *
+ * Values are kept in microseconds. Below 32 µs every value has its own bucket; above that each
+ * power of two is split into 16 buckets, so a reported percentile is within about 6% of the
+ * true value. Anything over MAX_MICROS (about 19 hours) is counted as MAX_MICROS.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^36 µs is a little over 19 hours
+    private static final int MAX_EXPONENT = 36;
+    static final long MAX_MICROS = (1L << MAX_EXPONENT) - 1;
+
+    private final AtomicLongArray counts =
+            new AtomicLongArray(LINEAR_BUCKETS + (MAX_EXPONENT - 5) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, Math.min(MAX_MICROS, micros));
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sumMicros.add(value);
+        maxMicros.accumulate(value);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + subBucket;
+    }
+
+    // The largest value that lands in the bucket, so percentiles never understate
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    public double meanMicros() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sumMicros.sum() / count;
+    }
+
+    /**
+     * The value below which the given share of all recorded values lies, in microseconds.
+     * Recording may go on meanwhile; the answer then reflects some moment during the call.
+     * @param percentile Between 0 and 100, e.g. 99.9.
+     */
+    public long percentileMicros(double percentile) {
+        long count = 0;
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+}
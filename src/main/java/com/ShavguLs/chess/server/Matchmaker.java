@@ -0,0 +1,151 @@
+package com.ShavguLs.chess.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pairs waiting players by time control and rating.
+ *
+ * Joining only appends to a lock-free queue and wakes the matcher thread, so a burst of
+ * players never contends on a lock. The matcher thread alone owns the pools, one per time
+ * control, and pairs players whose ratings are close. The acceptable rating gap starts small
+ * and widens the longer a player waits, so nobody waits forever for a perfect opponent.
+ * Found pairs are handed to an executor, which creates the game away from the matcher.
+ *
+ * A standalone server matches its own WaitingPlayers; in cluster mode the coordinator
+ * matches players waiting on all nodes.
+ */
+public class Matchmaker<T extends Matchmaker.Candidate> {
+
+    /**
+     * What the matchmaker needs to know about someone waiting.
+     */
+    public interface Candidate {
+        int rating();
+        TimeControl timeControl();
+        // System.nanoTime() when the player started waiting
+        long since();
+    }
+
+    /**
+     * Receives each pair; the player who waited longer gets white.
+     */
+    interface PairHandler<T> {
+        void startGame(T white, T black);
+    }
+
+    // Rating gap accepted straight away, and how much it grows per second of waiting
+    private static final int INITIAL_WINDOW = 100;
+    private static final int WINDOW_GROWTH_PER_SECOND = 50;
+    private static final int MAX_WINDOW = 1000;
+    // While anyone waits, windows are re-checked this often
+    private static final long RECHECK_MILLIS = 500;
+
+    private final Queue<T> arrivals = new ConcurrentLinkedQueue<>();
+    // Only touched by the matcher thread
+    private final Map<TimeControl, List<T>> pools = new HashMap<>();
+    private final PairHandler<T> handler;
+    private final Executor executor;
+    private final Thread matcher;
+    // Players joined and not yet paired, for the metrics
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public Matchmaker(PairHandler<T> handler, Executor executor) {
+        this.handler = handler;
+        this.executor = executor;
+        this.matcher = Thread.ofPlatform().name("matchmaker").daemon(true).start(this::run);
+    }
+
+    public void join(T player) {
+        waiting.incrementAndGet();
+        arrivals.add(player);
+        LockSupport.unpark(matcher);
+    }
+
+    public int waitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * The rating gap a player accepts after waiting this long.
+     */
+    static int ratingWindow(long waitedNanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(Math.max(0, waitedNanos));
+        return (int) Math.min(MAX_WINDOW, INITIAL_WINDOW + seconds * WINDOW_GROWTH_PER_SECOND);
+    }
+
+    private void run() {
+        while (true) {
+            T arrived;
+            while ((arrived = arrivals.poll()) != null) {
+                pools.computeIfAbsent(arrived.timeControl(), tc -> new ArrayList<>()).add(arrived);
+            }
+            boolean anyoneWaiting = false;
+            for (List<T> pool : pools.values()) {
+                matchPool(pool, System.nanoTime());
+                anyoneWaiting |= !pool.isEmpty();
+            }
+            pools.values().removeIf(List::isEmpty);
+
+            // With nobody left to pair the thread sleeps until the next join
+            if (anyoneWaiting) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECHECK_MILLIS));
+            } else if (arrivals.isEmpty()) {
+                LockSupport.park();
+            }
+        }
+    }
+
+    /**
+     * Sorts the pool by rating and pairs neighbours whose gap both players accept.
+     * Neighbours in rating order are always the closest available opponents.
+     */
+    private void matchPool(List<T> pool, long now) {
+        if (pool.size() < 2) {
+            return;
+        }
+        pool.sort(Comparator.comparingInt(Candidate::rating));
+        Iterator<T> iterator = pool.iterator();
+        T previous = iterator.next();
+        List<T> unmatched = new ArrayList<>();
+        while (iterator.hasNext()) {
+            T current = iterator.next();
+            if (previous != null && accepts(previous, current, now)) {
+                pair(previous, current);
+                previous = null;
+            } else {
+                if (previous != null) {
+                    unmatched.add(previous);
+                }
+                previous = current;
+            }
+        }
+        if (previous != null) {
+            unmatched.add(previous);
+        }
+        pool.clear();
+        pool.addAll(unmatched);
+    }
+
+    private static boolean accepts(Candidate a, Candidate b, long now) {
+        int gap = Math.abs(a.rating() - b.rating());
+        return gap <= ratingWindow(now - a.since()) && gap <= ratingWindow(now - b.since());
+    }
+
+    private void pair(T a, T b) {
+        T white = a.since() <= b.since() ? a : b;
+        T black = white == a ? b : a;
+        waiting.addAndGet(-2);
+        executor.execute(() -> handler.startGame(white, black));
+    }
+}
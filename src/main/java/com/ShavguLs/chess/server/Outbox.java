@@ -0,0 +1,256 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.log.Log;
+import com.ShavguLs.chess.common.protocol.Message;
+import com.ShavguLs.chess.common.protocol.MessageCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The frames waiting to go out on one player or spectator connection.
+ *
+ * The game only queues frames here. A small pool of writer threads, shared by all connections,
+ * writes them: a connection with frames queued gets a turn, writes everything it has with one
+ * flush and goes to the back of the line if more arrived meanwhile. A reader that stops reading
+ * could still leave a write stuck on a full socket buffer, so a write that takes longer than
+ * WRITE_TIMEOUT_MS closes the connection and frees the writer.
+ *
+ * The queue is bounded. Updates that a newer one makes pointless are dropped while still queued:
+ * a clock update replaces the one before it, and a snapshot replaces queued moves and snapshots,
+ * since it holds the whole game.
+ * A connection that falls behind anyway, by MAX_QUEUED_FRAMES or MAX_QUEUED_BYTES, is closed;
+ * a player can then resume the game and catch up, a spectator can join again.
+ * On a connection that accepts compression, large frames go out as MessageCodec.compress makes them.
+ */
+final class Outbox {
+
+    private static final Log LOG = Log.get(Outbox.class);
+    static final int MAX_QUEUED_FRAMES = 256;
+    static final int MAX_QUEUED_BYTES = 256 * 1024;
+    private static final long WRITE_TIMEOUT_MS = 10_000;
+
+    // Writes the frames of every connection; with virtual threads each turn gets its own thread
+    private static final ExecutorService WRITERS =
+            ServerThreads.newExecutor("outbox-writer", 2 * Runtime.getRuntime().availableProcessors());
+    // Ends writes that are stuck on a client that stopped reading
+    private static final TimingWheel WRITE_TIMER = new TimingWheel("outbox-write-timeout", 100, 128);
+
+    // Player and spectator connections open right now, for the server's connection cap
+    private static final AtomicInteger OPEN = new AtomicInteger();
+
+    private record Frame(Message message, byte[] bytes) { }
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final String name;
+    private final boolean compress;
+    private final Lock lock = new ReentrantLock();
+    // Guarded by lock
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private boolean closing;
+    // Set while the connection has a writer turn queued or running
+    private boolean writing;
+    private final AtomicBoolean socketClosed = new AtomicBoolean();
+
+    /**
+     * @param name Names the connection in the log lines when it falls behind or stalls.
+     * @param compress Whether the client asked for compressed frames.
+     */
+    Outbox(Socket socket, String name, boolean compress) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.name = name;
+        this.compress = compress;
+        OPEN.incrementAndGet();
+    }
+
+    static int openCount() {
+        return OPEN.get();
+    }
+
+    void send(Message message) {
+        send(message, MessageCodec.encode(message));
+    }
+
+    boolean send(Message message, byte[] frame) {
+        return send(message, frame, compress ? MessageCodec.compress(frame) : frame);
+    }
+
+    /**
+     * Queues a frame; the message tells which queued frames it supersedes.
+     * @param frame The message, already encoded, so a broadcast encodes once for every connection.
+     * @param compressed The frame as MessageCodec.compress makes it, sent instead if the client accepts that.
+     * @return false if the connection is closed or was just closed for falling behind.
+     */
+    boolean send(Message message, byte[] frame, byte[] compressed) {
+        if (compress) {
+            frame = compressed;
+        }
+        lock.lock();
+        try {
+            if (closing) {
+                return false;
+            }
+            dropSuperseded(message);
+            if (queue.size() >= MAX_QUEUED_FRAMES || queuedBytes + frame.length > MAX_QUEUED_BYTES) {
+                LOG.warn("Connection fell behind, closing it", "connection", name, "frames", queue.size(), "bytes", queuedBytes);
+                abort();
+                return false;
+            }
+            queue.add(new Frame(message, frame));
+            queuedBytes += frame.length;
+            ServerMetrics.framesQueued(1);
+            scheduleWrite();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dropSuperseded(Message message) {
+        boolean clock = message instanceof Message.ClockUpdate;
+        boolean snapshot = message instanceof Message.Snapshot;
+        if (!clock && !snapshot) {
+            return;
+        }
+        for (Iterator<Frame> queued = queue.iterator(); queued.hasNext(); ) {
+            Frame frame = queued.next();
+            boolean superseded = clock
+                    ? frame.message() instanceof Message.ClockUpdate
+                    : frame.message() instanceof Message.MoveMade || frame.message() instanceof Message.Snapshot;
+            if (superseded) {
+                queued.remove();
+                queuedBytes -= frame.bytes().length;
+                ServerMetrics.framesQueued(-1);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection once everything queued so far has been written.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closing = true;
+            scheduleWrite();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the connection now and drops whatever is queued.
+     */
+    void abort() {
+        lock.lock();
+        try {
+            closing = true;
+            clearQueue();
+        } finally {
+            lock.unlock();
+        }
+        // Also ends a write that is stuck on a full socket buffer
+        closeSocket();
+    }
+
+    boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    // Called with the lock held
+    private void scheduleWrite() {
+        if (!writing) {
+            writing = true;
+            WRITERS.execute(this::drain);
+        }
+    }
+
+    // One writer turn: takes everything queued at once and writes it with a single flush
+    private void drain() {
+        List<byte[]> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Frame frame : queue) {
+                batch.add(frame.bytes());
+            }
+            clearQueue();
+            if (batch.isEmpty() && !closing) {
+                writing = false;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            closeSocket(); // Closing, and everything is written
+            return;
+        }
+
+        TimingWheel.Timeout stalled = WRITE_TIMER.schedule(this::writeStalled, WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        try {
+            long bytes = 0;
+            for (byte[] frame : batch) {
+                out.write(frame);
+                bytes += frame.length;
+            }
+            out.flush();
+            ServerMetrics.framesWritten(batch.size(), bytes);
+        } catch (IOException e) {
+            // The reader side notices the closed socket and reports the connection gone
+            abort();
+            return;
+        } finally {
+            stalled.cancel();
+        }
+
+        lock.lock();
+        try {
+            if (queue.isEmpty() && !closing) {
+                writing = false;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // More was queued meanwhile, or the connection is closing; other connections get their turn first
+        WRITERS.execute(this::drain);
+    }
+
+    private void writeStalled() {
+        LOG.warn("Write stalled, closing connection", "connection", name, "timeoutMs", WRITE_TIMEOUT_MS);
+        abort();
+    }
+
+    // Called with the lock held
+    private void clearQueue() {
+        ServerMetrics.framesQueued(-queue.size());
+        queue.clear();
+        queuedBytes = 0;
+    }
+
+    private void closeSocket() {
+        if (socketClosed.compareAndSet(false, true)) {
+            OPEN.decrementAndGet();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore close errors
+        }
+    }
+}
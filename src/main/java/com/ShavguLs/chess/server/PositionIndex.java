@@ -0,0 +1,488 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.logic.Board;
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import com.ShavguLs.chess.common.logic.PGNParser;
+import com.ShavguLs.chess.common.logic.Zobrist;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Opening explorer over the game archive: a sorted file of
+ * (Zobrist hash of a position, game id, ply, move played next, game result) entries.
+ *
+ * The file is built by replaying every stored game once (see build) and is then
+ * memory-mapped, so a lookup is a binary search followed by a short sequential scan
+ * instead of reparsing every pgn_text.
+ *
+ * File layout: a 16 byte header (magic, version, entry count) followed by 16 byte entries,
+ * each a long hash and a long payload packed as
+ * [game id : 32][next move : 16][ply : 14][result : 2], sorted by hash and then payload.
+ *
+ * Usage: PositionIndex build [file]  |  PositionIndex lookup "&lt;fen&gt;" [file]
+ */
+public class PositionIndex implements Closeable {
+
+    public static final String DEFAULT_FILE = "positions.idx";
+
+    private static final int MAGIC = 0x43504958; // "CPIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+    // Entries sorted in memory before being spilled to a temporary run file (64 MB)
+    private static final int RUN_ENTRIES = 4 * 1024 * 1024;
+    // Entries per mapped region, keeps every mapping below the 2 GB ByteBuffer limit
+    private static final long SEGMENT_ENTRIES = 1L << 26;
+    private static final int FETCH_SIZE = 500;
+    private static final int MAX_PLY = 0x3FFF;
+    private static final int SAMPLE_GAMES = 10;
+
+    /** Stored as the next move of a game's final position. */
+    public static final int NO_MOVE = 0xFFFF;
+
+    private static final int RESULT_UNKNOWN = 0;
+    private static final int RESULT_WHITE_WIN = 1;
+    private static final int RESULT_DRAW = 2;
+    private static final int RESULT_BLACK_WIN = 3;
+
+    /**
+     * Aggregated answer for one position.
+     * @param games Number of distinct games that reached the position.
+     * @param continuations MoveCodec move -> how often it was played from here, most played first.
+     * @param sampleGameIds A few of the game ids, lowest first.
+     */
+    public record Stats(int games, int whiteWins, int draws, int blackWins,
+                        Map<Integer, Integer> continuations, List<Integer> sampleGameIds) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long segmentEntries;
+    private final long entryCount;
+
+    private PositionIndex(FileChannel channel, MappedByteBuffer[] segments, long segmentEntries, long entryCount) {
+        this.channel = channel;
+        this.segments = segments;
+        this.segmentEntries = segmentEntries;
+        this.entryCount = entryCount;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: PositionIndex build [file] | PositionIndex lookup <fen> [file]");
+            return;
+        }
+        try {
+            if (args[0].equals("build")) {
+                Path file = Path.of(args.length > 1 ? args[1] : DEFAULT_FILE);
+                long entries = build(file);
+                System.out.println("Wrote " + entries + " positions to " + file);
+            } else if (args[0].equals("lookup") && args.length > 1) {
+                Path file = Path.of(args.length > 2 ? args[2] : DEFAULT_FILE);
+                try (PositionIndex index = open(file)) {
+                    Board board = new Board();
+                    board.loadFen(args[1]);
+                    System.out.println(formatStats(index.lookup(Zobrist.hash(board))));
+                }
+            } else {
+                System.err.println("Unknown command " + args[0]);
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Position index error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // --- Building ---
+
+    /**
+     * One game as the index needs it.
+     * @param moves The MoveCodec encoded moves.
+     */
+    record IndexedGame(int gameId, String result, byte[] moves) { }
+
+    /**
+     * Replays every game in the 'games' table and writes the sorted index file.
+     * Entries are sorted in bounded chunks and merged, so memory use does not depend on archive size.
+     * @return The number of entries written.
+     */
+    public static long build(Path indexFile) throws IOException, SQLException {
+        // pgn_text is only needed for rows that were stored before moves_bin existed
+        String sql = "SELECT id, result, moves_bin, IF(moves_bin IS NULL, pgn_text, NULL) FROM games ORDER BY id";
+
+        try (Connection conn = DatabaseManager.connect()) {
+            if (conn == null) {
+                throw new SQLException("Database connection failed.");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return build(new StoredGames(rs), indexFile, RUN_ENTRIES);
+                } catch (StoredGames.ReadFailure e) {
+                    throw (SQLException) e.getCause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the index file for the given games.
+     * @param runEntries Entries sorted in memory before they are spilled to a run file.
+     * @return The number of entries written.
+     */
+    static long build(Iterator<IndexedGame> games, Path indexFile, int runEntries) throws IOException {
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Path tempDir = Files.createTempDirectory(parent, "position-index");
+        List<Path> runs = new ArrayList<>();
+        long[] hashes = new long[runEntries];
+        long[] payloads = new long[runEntries];
+        int buffered = 0;
+        long gameCount = 0;
+
+        try {
+            while (games.hasNext()) {
+                IndexedGame game = games.next();
+                int result = resultCode(game.result());
+                byte[] moves = game.moves();
+
+                Board board = new Board();
+                board.setupStandardBoard();
+                int moveCount = Math.min(MoveCodec.moveCount(moves), MAX_PLY);
+                for (int ply = 0; ply <= moveCount; ply++) {
+                    int nextMove = ply < moveCount ? MoveCodec.moveAt(moves, ply) : NO_MOVE;
+                    if (buffered == runEntries) {
+                        runs.add(writeRun(tempDir, hashes, payloads, buffered));
+                        buffered = 0;
+                    }
+                    hashes[buffered] = Zobrist.hash(board);
+                    payloads[buffered] = packPayload(game.gameId(), nextMove, ply, result);
+                    buffered++;
+
+                    if (nextMove != NO_MOVE && !MoveCodec.applyMove(board, nextMove)) {
+                        System.err.println("Game " + game.gameId() + " has an illegal move at ply " + (ply + 1) + ", indexed up to there.");
+                        break;
+                    }
+                }
+                gameCount++;
+            }
+
+            if (buffered > 0) {
+                runs.add(writeRun(tempDir, hashes, payloads, buffered));
+            }
+            long entries = mergeRuns(runs, indexFile);
+            System.out.println("Indexed " + gameCount + " games.");
+            return entries;
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    // The rows of the games query as IndexedGames; rows whose moves can not be recovered are skipped
+    private static final class StoredGames implements Iterator<IndexedGame> {
+
+        // Carries an SQLException through Iterator, which can not throw checked exceptions
+        static final class ReadFailure extends RuntimeException {
+            ReadFailure(SQLException cause) {
+                super(cause);
+            }
+        }
+
+        private final ResultSet rs;
+        private IndexedGame next;
+
+        StoredGames(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null && rs.next()) {
+                    int gameId = rs.getInt(1);
+                    byte[] moves = rs.getBytes(3);
+                    if (moves == null) {
+                        try {
+                            moves = MoveCodec.encodeSanMoves(PGNParser.parseMoves(rs.getString(4)));
+                        } catch (Exception e) {
+                            System.err.println("Skipping game " + gameId + ", moves could not be replayed: " + e.getMessage());
+                            continue;
+                        }
+                    }
+                    next = new IndexedGame(gameId, rs.getString(2), moves);
+                }
+                return next != null;
+            } catch (SQLException e) {
+                throw new ReadFailure(e);
+            }
+        }
+
+        @Override
+        public IndexedGame next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            IndexedGame game = next;
+            next = null;
+            return game;
+        }
+    }
+
+    private static Path writeRun(Path dir, long[] hashes, long[] payloads, int count) throws IOException {
+        sort(hashes, payloads, 0, count - 1);
+        Path run = Files.createTempFile(dir, "run", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < count; i++) {
+                out.writeLong(hashes[i]);
+                out.writeLong(payloads[i]);
+            }
+        }
+        return run;
+    }
+
+    // One open run file during the merge, positioned on its smallest unread entry
+    private static class RunCursor {
+        final DataInputStream in;
+        long remaining;
+        long hash;
+        long payload;
+
+        RunCursor(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            this.remaining = Files.size(run) / ENTRY_SIZE;
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                in.close();
+                return false;
+            }
+            hash = in.readLong();
+            payload = in.readLong();
+            remaining--;
+            return true;
+        }
+    }
+
+    private static long mergeRuns(List<Path> runs, Path indexFile) throws IOException {
+        long total = 0;
+        for (Path run : runs) {
+            total += Files.size(run) / ENTRY_SIZE;
+        }
+
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>((a, b) -> compare(a.hash, a.payload, b.hash, b.payload));
+        for (Path run : runs) {
+            RunCursor cursor = new RunCursor(run);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(total);
+            while (!queue.isEmpty()) {
+                RunCursor cursor = queue.poll();
+                out.writeLong(cursor.hash);
+                out.writeLong(cursor.payload);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+        return total;
+    }
+
+    // In-place quicksort of the two parallel arrays by (hash, payload)
+    private static void sort(long[] hashes, long[] payloads, int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotHash = hashes[mid];
+            long pivotPayload = payloads[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(hashes[i], payloads[i], pivotHash, pivotPayload) < 0) i++;
+                while (compare(hashes[j], payloads[j], pivotHash, pivotPayload) > 0) j--;
+                if (i <= j) {
+                    swap(hashes, payloads, i++, j--);
+                }
+            }
+            // Recurse into the smaller half, loop on the larger one
+            if (j - lo < hi - i) {
+                sort(hashes, payloads, lo, j);
+                lo = i;
+            } else {
+                sort(hashes, payloads, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int k = i; k > lo && compare(hashes[k - 1], payloads[k - 1], hashes[k], payloads[k]) > 0; k--) {
+                swap(hashes, payloads, k, k - 1);
+            }
+        }
+    }
+
+    private static void swap(long[] hashes, long[] payloads, int a, int b) {
+        long h = hashes[a]; hashes[a] = hashes[b]; hashes[b] = h;
+        long p = payloads[a]; payloads[a] = payloads[b]; payloads[b] = p;
+    }
+
+    private static int compare(long hashA, long payloadA, long hashB, long payloadB) {
+        int byHash = Long.compare(hashA, hashB);
+        return byHash != 0 ? byHash : Long.compare(payloadA, payloadB);
+    }
+
+    private static long packPayload(int gameId, int nextMove, int ply, int result) {
+        return ((long) gameId << 32) | ((long) (nextMove & 0xFFFF) << 16) | ((ply & MAX_PLY) << 2) | result;
+    }
+
+    private static int resultCode(String result) {
+        if (result == null) return RESULT_UNKNOWN;
+        if (result.startsWith("1-0")) return RESULT_WHITE_WIN;
+        if (result.startsWith("0-1")) return RESULT_BLACK_WIN;
+        if (result.startsWith("1/2")) return RESULT_DRAW;
+        return RESULT_UNKNOWN;
+    }
+
+    // --- Lookups ---
+
+    public static PositionIndex open(Path indexFile) throws IOException {
+        return open(indexFile, SEGMENT_ENTRIES);
+    }
+
+    /**
+     * @param segmentEntries Entries per mapped region; smaller than SEGMENT_ENTRIES only to test the mapping.
+     */
+    static PositionIndex open(Path indexFile, long segmentEntries) throws IOException {
+        FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a position index file: " + indexFile);
+            }
+            long entryCount = header.getLong();
+
+            int segmentCount = (int) ((entryCount + segmentEntries - 1) / segmentEntries);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long first = s * segmentEntries;
+                long entries = Math.min(segmentEntries, entryCount - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * ENTRY_SIZE, entries * ENTRY_SIZE);
+            }
+            return new PositionIndex(channel, segments, segmentEntries, entryCount);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return entryCount;
+    }
+
+    /**
+     * Collects every stored game that reached the position with this Zobrist hash.
+     * A game that reached the position more than once counts once for the results,
+     * but each visit counts towards the continuations.
+     */
+    public Stats lookup(long hash) {
+        int games = 0, whiteWins = 0, draws = 0, blackWins = 0;
+        Map<Integer, Integer> continuations = new HashMap<>();
+        List<Integer> sampleGameIds = new ArrayList<>();
+
+        int lastGameId = -1;
+        for (long i = lowerBound(hash); i < entryCount && hashAt(i) == hash; i++) {
+            long payload = payloadAt(i);
+            int gameId = (int) (payload >>> 32);
+            int nextMove = (int) ((payload >>> 16) & 0xFFFF);
+
+            if (nextMove != NO_MOVE) {
+                continuations.merge(nextMove, 1, Integer::sum);
+            }
+            if (gameId == lastGameId) {
+                continue;
+            }
+            lastGameId = gameId;
+            games++;
+            switch ((int) (payload & 3)) {
+                case RESULT_WHITE_WIN -> whiteWins++;
+                case RESULT_DRAW -> draws++;
+                case RESULT_BLACK_WIN -> blackWins++;
+                default -> { }
+            }
+            if (sampleGameIds.size() < SAMPLE_GAMES) {
+                sampleGameIds.add(gameId);
+            }
+        }
+
+        Map<Integer, Integer> sorted = new LinkedHashMap<>();
+        continuations.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return new Stats(games, whiteWins, draws, blackWins, sorted, sampleGameIds);
+    }
+
+    /**
+     * Text form used on the wire and by the command line lookup:
+     * games,whiteWins,draws,blackWins;e2e4:120,d2d4:80;17,42,...
+     */
+    public static String formatStats(Stats stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(stats.games()).append(',').append(stats.whiteWins()).append(',')
+                .append(stats.draws()).append(',').append(stats.blackWins()).append(';');
+        boolean first = true;
+        for (Map.Entry<Integer, Integer> entry : stats.continuations().entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(MoveCodec.toUci(entry.getKey())).append(':').append(entry.getValue());
+        }
+        sb.append(';');
+        for (int i = 0; i < stats.sampleGameIds().size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(stats.sampleGameIds().get(i));
+        }
+        return sb.toString();
+    }
+
+    private long lowerBound(long hash) {
+        long lo = 0;
+        long hi = entryCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (hashAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long hashAt(long index) {
+        return segments[(int) (index / segmentEntries)].getLong((int) (index % segmentEntries) * ENTRY_SIZE);
+    }
+
+    private long payloadAt(long index) {
+        return segments[(int) (index / segmentEntries)].getLong((int) (index % segmentEntries) * ENTRY_SIZE + 8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
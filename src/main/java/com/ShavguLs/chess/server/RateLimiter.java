@@ -0,0 +1,97 @@
+package com.ShavguLs.chess.server;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets per client address, for one kind of request.
+ *
+ * Each address may make ratePerSecond requests per second on average and burst requests in a row
+ * after a quiet spell. A bucket is a single long, the time at which it will be full again
+ * (the generic cell rate algorithm, which behaves exactly like a token bucket), so a check is
+ * one compare-and-set and never blocks. Addresses whose bucket has filled up again are dropped
+ * from the map now and then, so a scan over many addresses leaves nothing behind.
+ */
+final class RateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * A rate and a burst, written as "rate/burst", e.g. "5/10" or "0.1/3" for one every ten seconds.
+     */
+    record Limit(double ratePerSecond, int burst) {
+
+        Limit {
+            if (!(ratePerSecond > 0) || burst < 1) {
+                throw new IllegalArgumentException("A limit needs a positive rate and a burst of at least 1");
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if the text is not "rate/burst".
+         */
+        static Limit parse(String text) {
+            int slash = text.indexOf('/');
+            try {
+                if (slash < 0) {
+                    double rate = Double.parseDouble(text.trim());
+                    return new Limit(rate, (int) Math.max(1, Math.ceil(rate)));
+                }
+                return new Limit(Double.parseDouble(text.substring(0, slash).trim()),
+                        Integer.parseInt(text.substring(slash + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a rate limit: " + text);
+            }
+        }
+    }
+
+    private final String name;
+    private final long intervalNanos;
+    private final long burstNanos;
+    // Per address: when its bucket is full again
+    private final Map<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    RateLimiter(String name, Limit limit) {
+        this.name = name;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.ratePerSecond()));
+        this.burstNanos = intervalNanos * limit.burst();
+    }
+
+    /**
+     * Takes a token from the address's bucket.
+     * @return false if the bucket is empty; the request should be refused.
+     */
+    boolean tryAcquire(InetAddress address) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        AtomicLong fullAt = buckets.computeIfAbsent(address, a -> new AtomicLong(now));
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                ServerMetrics.requestRejected();
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    // One caller at a time drops the buckets that are full again; an address that comes back just gets a new one
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+    }
+}
@@ -0,0 +1,128 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.log.Level;
+import com.ShavguLs.chess.common.log.Log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Server settings. Values come from an optional server.properties file in the working
+ * directory, and a -Dchess.<key>=value system property overrides the file.
+ *
+ * Keys:
+ *   port     TCP port to listen on (default 8888)
+ *   threads  "platform" or "virtual"; the kind of thread game sessions, spectator
+ *            listeners and front end workers run on (default platform)
+ *   cluster.coordinator  host:port of a ClusterCoordinator to join; unset runs a standalone server
+ *   cluster.advertise    the host name players on other nodes use to reach this one (default localhost)
+ *   cluster.port         the port a ClusterCoordinator listens on (default 9888)
+ *   metrics.port         local port of the plain text metrics endpoint, 0 to turn it off (default 9090)
+ *   log.level            TRACE, DEBUG, INFO, WARN, ERROR or OFF (default INFO); DEBUG logs every move
+ *   drain.seconds        how long a stopping server lets running games go on before it checkpoints them (default 10)
+ *   checkpoint.dir       where checkpointed games are written and, at startup, restored from (default checkpoints)
+ *   limit.connections    open connections for the whole server (default 10000)
+ *   limit.connect        new connections per client address, as rate per second/burst (default 20/40)
+ *   limit.list           LIST_GAMES and EXPLORE_POSITION requests per address (default 10/20)
+ *   limit.spectate       SPECTATE_GAME requests per address (default 2/5)
+ *   limit.import         IMPORT_PGN requests per address (default 0.2/3, one every five seconds)
+ *   limit.import.bytes   the longest IMPORT_PGN line accepted (default 8388608)
+ */
+public class ServerConfig {
+
+    public static final String DEFAULT_FILE = "server.properties";
+
+    public enum ThreadMode { PLATFORM, VIRTUAL }
+
+    private final Properties properties;
+
+    private ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static ServerConfig load() {
+        Properties properties = new Properties();
+        Path file = Path.of(DEFAULT_FILE);
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                System.err.println("Could not read " + DEFAULT_FILE + ", using defaults: " + e.getMessage());
+            }
+        }
+        return new ServerConfig(properties);
+    }
+
+    public int getPort() {
+        return getInt("port", 8888);
+    }
+
+    public ThreadMode getThreadMode() {
+        return ThreadMode.valueOf(get("threads", "platform").trim().toUpperCase());
+    }
+
+    /**
+     * The coordinator to join, or null for a standalone server.
+     */
+    public String getClusterCoordinator() {
+        String coordinator = get("cluster.coordinator", "");
+        return coordinator.isBlank() ? null : coordinator.trim();
+    }
+
+    public String getAdvertisedHost() {
+        return get("cluster.advertise", "localhost").trim();
+    }
+
+    public int getClusterPort() {
+        return getInt("cluster.port", ClusterCoordinator.DEFAULT_PORT);
+    }
+
+    public int getMetricsPort() {
+        return getInt("metrics.port", 9090);
+    }
+
+    public int getDrainSeconds() {
+        return getInt("drain.seconds", 10);
+    }
+
+    public Path getCheckpointDir() {
+        return Path.of(get("checkpoint.dir", "checkpoints").trim());
+    }
+
+    /**
+     * The front end's admission limits.
+     * @throws IllegalArgumentException if a rate limit is not written as rate/burst.
+     */
+    ConnectionFrontEnd.Limits getLimits() {
+        return new ConnectionFrontEnd.Limits(getInt("limit.connections", 10_000),
+                RateLimiter.Limit.parse(get("limit.connect", "20/40")),
+                RateLimiter.Limit.parse(get("limit.list", "10/20")),
+                RateLimiter.Limit.parse(get("limit.spectate", "2/5")),
+                RateLimiter.Limit.parse(get("limit.import", "0.2/3")),
+                getInt("limit.import.bytes", 8 * 1024 * 1024));
+    }
+
+    public Level getLogLevel() {
+        return Log.parseLevel(get("log.level", null), Level.INFO);
+    }
+
+    String get(String key, String defaultValue) {
+        return System.getProperty("chess." + key, properties.getProperty(key, defaultValue));
+    }
+
+    int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.ShavguLs.chess.server;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The server's numbers: move and database write latency, games, players, spectators,
+ * outgoing queue depth and message rates.
+ *
+ * Recording is a counter increment or a histogram bucket, cheap enough for every move and frame.
+ * Gauges such as the number of games are read from the server when someone asks. The numbers
+ * are published over JMX, and as plain text lines on http://127.0.0.1:&lt;metrics.port&gt;/metrics.
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.ShavguLs.chess:type=ServerMetrics";
+
+    // From a move arriving to its update being queued for everyone in the game
+    private static final LatencyHistogram moveLatency = new LatencyHistogram();
+    private static final LatencyHistogram dbWriteLatency = new LatencyHistogram();
+    private static final LongAdder messagesIn = new LongAdder();
+    private static final LongAdder framesOut = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+    private static final LongAdder requestsRejected = new LongAdder();
+    // Frames waiting in the outboxes of all connections
+    private static final LongAdder queuedFrames = new LongAdder();
+
+    // Per second rates, updated by the sampler thread
+    private static volatile long messagesInPerSecond;
+    private static volatile long framesOutPerSecond;
+    private static volatile long bytesOutPerSecond;
+
+    private ServerMetrics() {
+    }
+
+    static void recordMove(long nanos) {
+        moveLatency.recordNanos(nanos);
+    }
+
+    static void recordDbWrite(long nanos) {
+        dbWriteLatency.recordNanos(nanos);
+    }
+
+    static void messageReceived() {
+        messagesIn.increment();
+    }
+
+    // A connection or request refused by a rate limit or the connection cap
+    static void requestRejected() {
+        requestsRejected.increment();
+    }
+
+    static void framesWritten(int frames, long bytes) {
+        framesOut.add(frames);
+        bytesOut.add(bytes);
+    }
+
+    // Positive when frames are queued, negative when they are written or dropped
+    static void framesQueued(int change) {
+        queuedFrames.add(change);
+    }
+
+    /**
+     * Registers the JMX bean, starts the rate sampler and, unless httpPort is 0, the HTTP endpoint.
+     * The endpoint only listens on the loopback interface.
+     */
+    static void start(int httpPort) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new ServerMetrics(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Could not register the metrics bean: " + e.getMessage());
+        }
+        Thread.ofPlatform().name("metrics-sampler").daemon(true).start(ServerMetrics::sampleRates);
+        if (httpPort <= 0) {
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            System.out.println("Metrics are served on http://127.0.0.1:" + httpPort + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Could not start the metrics endpoint on port " + httpPort + ": " + e.getMessage());
+        }
+    }
+
+    private static void sampleRates() {
+        long lastIn = 0;
+        long lastFrames = 0;
+        long lastBytes = 0;
+        while (true) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long in = messagesIn.sum();
+            long frames = framesOut.sum();
+            long bytes = bytesOut.sum();
+            messagesInPerSecond = in - lastIn;
+            framesOutPerSecond = frames - lastFrames;
+            bytesOutPerSecond = bytes - lastBytes;
+            lastIn = in;
+            lastFrames = frames;
+            lastBytes = bytes;
+        }
+    }
+
+    /**
+     * All metrics as "name value" lines.
+     */
+    static String render() {
+        StringBuilder text = new StringBuilder(1024);
+        line(text, "chess_active_games", ChessServer.activeGameCount());
+        line(text, "chess_connected_players", ChessServer.connectedPlayerCount());
+        line(text, "chess_spectators", ChessServer.spectatorCount());
+        line(text, "chess_waiting_players", ChessServer.waitingPlayerCount());
+        line(text, "chess_outbox_queued_frames", queuedFrames.sum());
+        histogram(text, "chess_move_latency_micros", moveLatency);
+        histogram(text, "chess_db_write_latency_micros", dbWriteLatency);
+        line(text, "chess_messages_in_total", messagesIn.sum());
+        line(text, "chess_messages_in_per_second", messagesInPerSecond);
+        line(text, "chess_frames_out_total", framesOut.sum());
+        line(text, "chess_frames_out_per_second", framesOutPerSecond);
+        line(text, "chess_bytes_out_total", bytesOut.sum());
+        line(text, "chess_bytes_out_per_second", bytesOutPerSecond);
+        line(text, "chess_requests_rejected_total", requestsRejected.sum());
+        return text.toString();
+    }
+
+    private static void histogram(StringBuilder text, String name, LatencyHistogram histogram) {
+        line(text, name + "_count", histogram.count());
+        text.append(name).append("_mean ").append(String.format(Locale.ROOT, "%.1f", histogram.meanMicros())).append('\n');
+        line(text, name + "{quantile=\"0.5\"}", histogram.percentileMicros(50));
+        line(text, name + "{quantile=\"0.99\"}", histogram.percentileMicros(99));
+        line(text, name + "{quantile=\"0.999\"}", histogram.percentileMicros(99.9));
+        line(text, name + "_max", histogram.maxMicros());
+    }
+
+    private static void line(StringBuilder text, String name, long value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    // --- JMX ---
+
+    @Override
+    public int getActiveGames() {
+        return ChessServer.activeGameCount();
+    }
+
+    @Override
+    public int getConnectedPlayers() {
+        return ChessServer.connectedPlayerCount();
+    }
+
+    @Override
+    public int getSpectators() {
+        return ChessServer.spectatorCount();
+    }
+
+    @Override
+    public int getWaitingPlayers() {
+        return ChessServer.waitingPlayerCount();
+    }
+
+    @Override
+    public long getQueuedFrames() {
+        return queuedFrames.sum();
+    }
+
+    @Override
+    public long getMovesProcessed() {
+        return moveLatency.count();
+    }
+
+    @Override
+    public double getMoveLatencyMeanMicros() {
+        return moveLatency.meanMicros();
+    }
+
+    @Override
+    public long getMoveLatencyP50Micros() {
+        return moveLatency.percentileMicros(50);
+    }
+
+    @Override
+    public long getMoveLatencyP99Micros() {
+        return moveLatency.percentileMicros(99);
+    }
+
+    @Override
+    public long getMoveLatencyP999Micros() {
+        return moveLatency.percentileMicros(99.9);
+    }
+
+    @Override
+    public long getMoveLatencyMaxMicros() {
+        return moveLatency.maxMicros();
+    }
+
+    @Override
+    public long getDbWrites() {
+        return dbWriteLatency.count();
+    }
+
+    @Override
+    public long getDbWriteLatencyP50Micros() {
+        return dbWriteLatency.percentileMicros(50);
+    }
+
+    @Override
+    public long getDbWriteLatencyP99Micros() {
+        return dbWriteLatency.percentileMicros(99);
+    }
+
+    @Override
+    public long getDbWriteLatencyMaxMicros() {
+        return dbWriteLatency.maxMicros();
+    }
+
+    @Override
+    public long getMessagesInPerSecond() {
+        return messagesInPerSecond;
+    }
+
+    @Override
+    public long getMessagesOutPerSecond() {
+        return framesOutPerSecond;
+    }
+
+    @Override
+    public long getBytesOutPerSecond() {
+        return bytesOutPerSecond;
+    }
+
+    @Override
+    public long getRequestsRejected() {
+        return requestsRejected.sum();
+    }
+}
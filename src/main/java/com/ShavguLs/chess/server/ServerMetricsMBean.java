@@ -0,0 +1,46 @@
+package com.ShavguLs.chess.server;
+
+/**
+ * What the server publishes over JMX, under com.ShavguLs.chess:type=ServerMetrics.
+ * Latencies are in microseconds, rates are over the last full second.
+ */
+public interface ServerMetricsMBean {
+
+    int getActiveGames();
+
+    int getConnectedPlayers();
+
+    int getSpectators();
+
+    int getWaitingPlayers();
+
+    long getQueuedFrames();
+
+    long getMovesProcessed();
+
+    double getMoveLatencyMeanMicros();
+
+    long getMoveLatencyP50Micros();
+
+    long getMoveLatencyP99Micros();
+
+    long getMoveLatencyP999Micros();
+
+    long getMoveLatencyMaxMicros();
+
+    long getDbWrites();
+
+    long getDbWriteLatencyP50Micros();
+
+    long getDbWriteLatencyP99Micros();
+
+    long getDbWriteLatencyMaxMicros();
+
+    long getMessagesInPerSecond();
+
+    long getMessagesOutPerSecond();
+
+    long getBytesOutPerSecond();
+
+    long getRequestsRejected();
+}
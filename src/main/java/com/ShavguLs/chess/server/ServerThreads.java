@@ -0,0 +1,57 @@
+package com.ShavguLs.chess.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the server's worker threads as platform or virtual threads, depending on
+ * the "threads" setting. Virtual threads let every idle player and spectator keep a
+ * blocking read open without holding an OS thread. Code that runs on these threads
+ * should guard shared state with java.util.concurrent locks rather than synchronized,
+ * so a blocked virtual thread does not pin its carrier.
+ */
+public class ServerThreads {
+
+    private static volatile ServerConfig.ThreadMode mode = ServerConfig.ThreadMode.PLATFORM;
+
+    public static void configure(ServerConfig.ThreadMode threadMode) {
+        mode = threadMode;
+    }
+
+    public static ServerConfig.ThreadMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns a factory for threads called name-0, name-1, ...
+     * Platform threads are daemons so they never keep the server alive on their own.
+     */
+    public static ThreadFactory factory(String name) {
+        if (mode == ServerConfig.ThreadMode.VIRTUAL) {
+            return Thread.ofVirtual().name(name + "-", 0).factory();
+        }
+        return Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+    }
+
+    /**
+     * Starts one named thread, a daemon like the ones factory makes (virtual threads always are).
+     */
+    public static Thread start(String name, Runnable task) {
+        if (mode == ServerConfig.ThreadMode.VIRTUAL) {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).start(task);
+    }
+
+    /**
+     * An executor for short blocking jobs. With virtual threads every job gets its own thread;
+     * otherwise a fixed pool of the given size is used.
+     */
+    public static ExecutorService newExecutor(String name, int platformThreads) {
+        if (mode == ServerConfig.ThreadMode.VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(factory(name));
+        }
+        return Executors.newFixedThreadPool(platformThreads, factory(name));
+    }
+}
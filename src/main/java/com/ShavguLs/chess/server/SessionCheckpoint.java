@@ -0,0 +1,111 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A running game saved to disk while the server drains, so the next server process can carry on with it.
+ * It holds what the players cannot rebuild themselves: the moves, both clocks and the resume tokens,
+ * so the players' clients reconnect to the new process with the tokens they already have.
+ * The tokens are secrets, which makes the checkpoint directory as private as the database.
+ * @param moves The game's moves in MoveCodec form.
+ */
+record SessionCheckpoint(int gameId, String white, String black, int whiteRating, int blackRating,
+                         TimeControl timeControl, String whiteToken, String blackToken,
+                         long whiteMillis, long blackMillis, byte[] moves) {
+
+    private static final Log LOG = Log.get(SessionCheckpoint.class);
+    // "CHK1"; a file that does not start with it is not read
+    private static final int MAGIC = 0x43484B31;
+    private static final String SUFFIX = ".ckpt";
+
+    /**
+     * Writes the checkpoint into the directory, replacing the file in one step so a crash leaves no half file.
+     */
+    void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = dir.resolve("game-" + gameId + SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(gameId);
+            out.writeUTF(white);
+            out.writeUTF(black);
+            out.writeInt(whiteRating);
+            out.writeInt(blackRating);
+            out.writeUTF(timeControl.toString());
+            out.writeUTF(whiteToken);
+            out.writeUTF(blackToken);
+            out.writeLong(whiteMillis);
+            out.writeLong(blackMillis);
+            out.writeInt(moves.length);
+            out.write(moves);
+        }
+        Files.move(temp, dir.resolve("game-" + gameId + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static SessionCheckpoint read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a game checkpoint: " + file);
+            }
+            int gameId = in.readInt();
+            String white = in.readUTF();
+            String black = in.readUTF();
+            int whiteRating = in.readInt();
+            int blackRating = in.readInt();
+            TimeControl timeControl;
+            try {
+                timeControl = TimeControl.parse(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad time control in " + file);
+            }
+            String whiteToken = in.readUTF();
+            String blackToken = in.readUTF();
+            long whiteMillis = in.readLong();
+            long blackMillis = in.readLong();
+            byte[] moves = in.readNBytes(in.readInt());
+            return new SessionCheckpoint(gameId, white, black, whiteRating, blackRating, timeControl,
+                    whiteToken, blackToken, whiteMillis, blackMillis, moves);
+        }
+    }
+
+    /**
+     * Reads every checkpoint in the directory and deletes the files, so a game is restored only once.
+     * Files that cannot be read are renamed to *.bad and skipped.
+     */
+    static List<SessionCheckpoint> takeAll(Path dir) {
+        List<SessionCheckpoint> checkpoints = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return checkpoints;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    checkpoints.add(read(file));
+                    Files.delete(file);
+                } catch (IOException e) {
+                    LOG.warn("Could not read checkpoint", "file", file, "error", e.getMessage());
+                    try {
+                        Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException ex) {
+                        // Left in place; it is skipped again next time
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not list checkpoints", "dir", dir, "error", e.getMessage());
+        }
+        return checkpoints;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ShavguLs.chess.server;
+
+/**
+ * A time control in the usual "minutes+increment" form, e.g. 10+0 or 3+2.
+ * Players are only matched with others who asked for the same one.
+ */
+public record TimeControl(int minutes, int incrementSeconds) {
+
+    public static final TimeControl DEFAULT = new TimeControl(10, 0);
+
+    private static final int MAX_MINUTES = 180;
+    private static final int MAX_INCREMENT_SECONDS = 60;
+
+    public TimeControl {
+        if (minutes < 1 || minutes > MAX_MINUTES) {
+            throw new IllegalArgumentException("Minutes must be between 1 and " + MAX_MINUTES + ": " + minutes);
+        }
+        if (incrementSeconds < 0 || incrementSeconds > MAX_INCREMENT_SECONDS) {
+            throw new IllegalArgumentException("Increment must be between 0 and " + MAX_INCREMENT_SECONDS + ": " + incrementSeconds);
+        }
+    }
+
+    /**
+     * Parses "10+0" or just "10".
+     * @throws IllegalArgumentException if the text is not a supported time control.
+     */
+    public static TimeControl parse(String text) {
+        String trimmed = text.trim();
+        int plus = trimmed.indexOf('+');
+        try {
+            if (plus < 0) {
+                return new TimeControl(Integer.parseInt(trimmed), 0);
+            }
+            return new TimeControl(Integer.parseInt(trimmed.substring(0, plus)), Integer.parseInt(trimmed.substring(plus + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a time control: " + text);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return minutes + "+" + incrementSeconds;
+    }
+}
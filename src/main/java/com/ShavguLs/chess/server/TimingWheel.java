@@ -0,0 +1,178 @@
+package com.ShavguLs.chess.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel: one thread and a ring of buckets, each covering one tick.
+ * Scheduling and cancelling are O(1), and a tick only looks at the timeouts hashed into
+ * its bucket, so thousands of game clocks cost one thread that wakes once per tick instead
+ * of one scheduler thread per game. Timeouts further away than one turn of the wheel wait
+ * in their bucket for the remaining number of rounds.
+ *
+ * Tasks run on the wheel thread and should return quickly.
+ * A timeout never fires early, and fires at most about one tick late.
+ */
+public class TimingWheel {
+
+    /**
+     * A scheduled task. Cancelling after it fired, or twice, does nothing.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline; // Nanoseconds since the wheel started
+        private long remainingRounds;
+        private volatile boolean cancelled;
+        // Bucket links, only touched by the wheel thread
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) timeout.prev.next = next;
+            if (next != null) next.prev = timeout.prev;
+            if (timeout == head) head = next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = timeout.next = null;
+            return next;
+        }
+
+        // Runs everything due by the given time; the rest lose one round
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                if (timeout.cancelled) {
+                    timeout = remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    Timeout next = remove(timeout);
+                    run(timeout);
+                    timeout = next;
+                } else {
+                    if (timeout.remainingRounds > 0) {
+                        timeout.remainingRounds--;
+                    }
+                    timeout = timeout.next;
+                }
+            }
+        }
+
+        private static void run(Timeout timeout) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Timing wheel task failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * Creates the wheel and starts its thread.
+     * @param tickMillis Resolution of the wheel.
+     * @param wheelSize Number of buckets, rounded up to a power of two.
+     */
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = Thread.ofPlatform().name(name).daemon(true).start(this::run);
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay));
+        Timeout timeout = new Timeout(task, deadline);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    // Sleeps until the current tick has passed and returns its end time, or -1 if interrupted
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - (System.nanoTime() - startNanos);
+            if (sleepNanos <= 0) {
+                return deadline;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            // Already overdue timeouts go into the current bucket and fire on this tick
+            long slot = Math.max(ticks, tick);
+            wheel[(int) (slot & mask)].add(timeout);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ShavguLs.chess.server;
+
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * A player looking for a game: the connection, and what the matchmaker needs to pair it.
+ * @param in The stream the player's game messages arrive on.
+ * @param compress Whether the player's client accepts compressed frames.
+ * @param since System.nanoTime() when the player started waiting.
+ */
+record WaitingPlayer(Socket socket, InputStream in, boolean compress, String nickname, int rating, TimeControl timeControl, long since)
+        implements Matchmaker.Candidate { }
@@ -0,0 +1,31 @@
+package com.ShavguLs.chess.common.log;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRecordTest {
+
+    @Test
+    void format_shouldAppendFieldsAsNameValuePairs() {
+        LogRecord record = new LogRecord(0, Level.INFO, "GameSession", "game-events-1", "Move played",
+                new Object[] {"game", 12, "ply", 31, "san", "Nf3"}, null);
+        assertEquals("1970-01-01T00:00:00Z INFO  [game-events-1] GameSession - Move played game=12 ply=31 san=Nf3",
+                record.format());
+    }
+
+    @Test
+    void format_shouldQuoteValuesWithSpaces() {
+        LogRecord record = new LogRecord(0, Level.WARN, "Outbox", "main", "Closed",
+                new Object[] {"result", "1-0 (Ana wins)", "empty", ""}, new IllegalStateException("gone"));
+        assertTrue(record.format().endsWith(
+                "Closed result=\"1-0 (Ana wins)\" empty=\"\" error=\"java.lang.IllegalStateException: gone\""));
+    }
+
+    @Test
+    void parseLevel_shouldIgnoreCaseAndFallBackOnUnknownNames() {
+        assertEquals(Level.DEBUG, Log.parseLevel(" debug ", Level.INFO));
+        assertEquals(Level.INFO, Log.parseLevel("verbose", Level.INFO));
+        assertEquals(Level.WARN, Log.parseLevel(null, Level.WARN));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ShavguLs.chess.common.log;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    void capacity_shouldRoundUpToPowerOfTwo() {
+        assertEquals(8, new RingBuffer<String>(5).capacity());
+        assertEquals(8, new RingBuffer<String>(8).capacity());
+    }
+
+    @Test
+    void poll_shouldReturnItemsInOfferOrder() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(round * 10 + i));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(round * 10 + i), buffer.poll());
+            }
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void offer_shouldFailWhenFullUntilConsumerCatchesUp() {
+        RingBuffer<String> buffer = new RingBuffer<>(2);
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertFalse(buffer.offer("c"));
+        assertEquals("a", buffer.poll());
+        assertTrue(buffer.offer("d"));
+        assertEquals("b", buffer.poll());
+        assertEquals("d", buffer.poll());
+    }
+
+    @Test
+    void offer_shouldKeepEveryItemFromConcurrentProducers() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1 << 16);
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            int base = p * 10_000;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    buffer.offer(base + i);
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        boolean[] seen = new boolean[40_000];
+        Integer item;
+        int count = 0;
+        while ((item = buffer.poll()) != null) {
+            assertFalse(seen[item]);
+            seen[item] = true;
+            count++;
+        }
+        assertEquals(40_000, count);
+    }
+}
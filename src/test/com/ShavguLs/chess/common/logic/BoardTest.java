@@ -2,6 +2,9 @@ package com.ShavguLs.chess.common.logic;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class BoardTest {
@@ -401,4 +404,31 @@ class BoardTest {
         // Assert
         assertFalse(wasSuccessful, "Cannot perform en passant if it leaves the king in check.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void generateLegalMoves_shouldFindTwentyMovesInStartingPosition() {
+        board.setupStandardBoard();
+
+        List<Integer> moves = board.generateLegalMoves(true);
+
+        assertEquals(20, moves.size(), "White has 16 pawn moves and 4 knight moves at the start.");
+        assertTrue(moves.contains(MoveCodec.encode(6, 4, 4, 4, ' ')), "e2-e4 should be listed.");
+    }
+
+    @Test
+    void generateLegalMoves_shouldListEachPromotionPieceAndSkipPinnedPieces() {
+        board.setPiece(7, 4, new King(true));    // Ke1
+        board.setPiece(6, 4, new Rook(true));    // Re2, pinned on the e-file
+        board.setPiece(0, 4, new Rook(false));   // black Re8
+        board.setPiece(1, 0, new Pawn(true));    // a7, about to promote
+        board.setPiece(2, 7, new King(false));   // black Kh6
+
+        List<Integer> moves = board.generateLegalMoves(true);
+
+        assertTrue(moves.contains(MoveCodec.encode(1, 0, 0, 0, 'Q')));
+        assertTrue(moves.contains(MoveCodec.encode(1, 0, 0, 0, 'N')));
+        assertFalse(moves.contains(MoveCodec.encode(6, 4, 6, 0, ' ')), "The pinned rook must not leave the e-file.");
+        assertTrue(moves.contains(MoveCodec.encode(6, 4, 0, 4, ' ')), "The pinned rook may capture its attacker.");
+        assertTrue(board.hasLegalMoves(true));
+    }
+}
@@ -106,4 +106,77 @@ class ClockTest {
         assertEquals(3661, totalSeconds1, "1h, 1m, 1s should be 3661 seconds.");
         assertEquals(600, totalSeconds2, "10m should be 600 seconds.");
     }
-}
\ No newline at end of file
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void stop_shouldChargeExactlyTheTimeUsed() {
+        Clock clock = new Clock(0, 1, 0);
+        clock.start(0);
+        assertEquals(59_750, clock.remainingMillis(250_000_000L), "A running clock should count down between readings.");
+        assertTrue(clock.stop(1_500_000_000L));
+
+        assertEquals(58_500, clock.getRemainingMillis(), "A move made mid-second should be charged to the millisecond.");
+        assertFalse(clock.isRunning());
+    }
+
+    @Test
+    void stop_shouldAddTheFischerIncrement() {
+        Clock clock = new Clock(0, 1, 0, 2, 0);
+        clock.start(0);
+        clock.stop(5 * SECOND);
+
+        assertEquals(57_000, clock.getRemainingMillis(), "60s - 5s used + 2s increment.");
+    }
+
+    @Test
+    void stop_shouldGiveBackTheTimeUsedUpToTheBronsteinDelay() {
+        Clock clock = new Clock(0, 1, 0, 0, 3);
+        clock.start(0);
+        clock.stop(2 * SECOND);
+        assertEquals(60_000, clock.getRemainingMillis(), "A move faster than the delay costs nothing.");
+
+        clock.start(10 * SECOND);
+        clock.stop(15 * SECOND);
+        assertEquals(58_000, clock.getRemainingMillis(), "Only the part of the move beyond the delay is charged.");
+    }
+
+    @Test
+    void stop_shouldReportTheFlagAndCreditNothing() {
+        Clock clock = new Clock(0, 0, 1, 5, 5);
+        clock.start(0);
+        assertEquals(0, clock.remainingNanos(2 * SECOND));
+
+        assertFalse(clock.stop(2 * SECOND), "Using more than the remaining time should flag.");
+        assertTrue(clock.outOfTime());
+        assertEquals("00:00:00", clock.getTime(), "No increment or delay should be credited after the flag.");
+    }
+
+    @Test
+    void halt_shouldChargeWithoutIncrement() {
+        Clock clock = new Clock(0, 1, 0, 10, 0);
+        clock.start(0);
+        clock.halt(SECOND);
+
+        assertEquals(59_000, clock.getRemainingMillis());
+    }
+
+    @Test
+    void formatTime_shouldWriteIntoTheBuffer() {
+        char[] buffer = new char[16];
+        int length = Clock.formatTime(3_725_999, buffer);
+
+        assertEquals("01:02:05", new String(buffer, 0, length));
+        assertEquals("01:02:05", Clock.formatTime(3_725_999));
+        assertEquals("120:00:00", Clock.formatTime(120 * 3_600_000L), "Hours beyond 99 should not be cut off.");
+        assertEquals("00:00:00", Clock.formatTime(-5), "A negative time should show as zero.");
+    }
+
+    @Test
+    void appendTime_shouldMatchFormatTime() {
+        StringBuilder out = new StringBuilder("W ");
+        Clock.appendTime(out, 599_250);
+
+        assertEquals("W 00:09:59", out.toString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.ShavguLs.chess.common.logic;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameRecorderTest {
+
+    private GameRecorder recorder;
+
+    @BeforeEach
+    void setUp() {
+        recorder = new GameRecorder();
+        recorder.setPlayerNames("Alice", "Bob");
+    }
+
+    @Test
+    void createPGNText_shouldNumberMovesAndEndWithResult() {
+        recorder.addMove("e4");
+        recorder.addMove("e5");
+        recorder.addMove("Nf3");
+        recorder.setGameResult("1-0");
+
+        String pgn = recorder.createPGNText();
+
+        assertTrue(pgn.contains("[White \"Alice\"]"));
+        assertTrue(pgn.contains("[Result \"1-0\"]"));
+        assertTrue(pgn.endsWith("\n1. e4 e5 2. Nf3 1-0\n"), "Unexpected movetext: " + pgn);
+    }
+
+    @Test
+    void addMove_shouldProduceSameTextAsSetAllMoves() {
+        List<String> moves = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            moves.add(i % 2 == 0 ? "Nf3" : "Nf6");
+        }
+        GameRecorder bulk = new GameRecorder();
+        bulk.setPlayerNames("Alice", "Bob");
+        bulk.setAllMoves(new ArrayList<>(moves));
+
+        for (String move : moves) {
+            recorder.addMove(move);
+        }
+
+        assertEquals(bulk.createPGNText(), recorder.createPGNText());
+    }
+
+    @Test
+    void createPGNText_shouldWrapLongMovetext() {
+        for (int i = 0; i < 40; i++) {
+            recorder.addMove(i % 2 == 0 ? "Nf3" : "Nf6");
+        }
+
+        String movetext = recorder.createPGNText().split("\n\n", 2)[1];
+
+        for (String line : movetext.split("\n")) {
+            assertTrue(line.length() <= 85, "Line should have been wrapped: " + line);
+        }
+        assertTrue(movetext.split("\n").length > 1, "Forty plies should not fit on one line.");
+    }
+
+    @Test
+    void createPGNText_shouldReuseTextUntilSomethingChanges() {
+        recorder.addMove("e4");
+        String first = recorder.createPGNText();
+
+        assertSame(first, recorder.createPGNText(), "An unchanged game should return the cached text.");
+
+        recorder.addMove("c5");
+        String afterMove = recorder.createPGNText();
+        assertTrue(afterMove.contains("1. e4 c5"));
+
+        recorder.setGameResult("0-1");
+        assertTrue(recorder.createPGNText().contains("[Result \"0-1\"]"));
+    }
+
+    @Test
+    void pgnManager_shouldPickUpMovesAddedToTracker() {
+        MoveTracker tracker = new MoveTracker();
+        PGNManager manager = new PGNManager(tracker);
+
+        tracker.addMove("d4");
+        assertTrue(manager.getPGNText().contains("1. d4"));
+
+        tracker.addMove("d5");
+        assertTrue(manager.getPGNText().contains("1. d4 d5"));
+
+        tracker.reset();
+        tracker.addMove("c4");
+        assertTrue(manager.getPGNText().contains("1. c4 *"), "A reset tracker should restart the movetext.");
+    }
+
+    @Test
+    void pgnManager_shouldRebuildWhenTrackerRegrowsAfterReset() {
+        MoveTracker tracker = new MoveTracker();
+        PGNManager manager = new PGNManager(tracker);
+
+        tracker.addMove("e4");
+        tracker.addMove("e5");
+        assertTrue(manager.getPGNText().contains("1. e4 e5"));
+
+        // Back to as many moves as before, so the move count alone cannot tell
+        tracker.reset();
+        tracker.addMove("d4");
+        tracker.addMove("d5");
+        tracker.addMove("c4");
+        String pgn = manager.getPGNText();
+        assertTrue(pgn.contains("1. d4 d5 2. c4"), "The movetext should come from the reset tracker.");
+        assertFalse(pgn.contains("e4"));
+    }
+}
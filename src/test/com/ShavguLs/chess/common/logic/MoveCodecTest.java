@@ -0,0 +1,77 @@
+package com.ShavguLs.chess.common.logic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveCodecTest {
+
+    @Test
+    void encode_shouldRoundTripSquaresAndPromotion() {
+        int code = MoveCodec.encode(1, 4, 0, 5, 'q');
+
+        assertEquals(1, MoveCodec.srcRow(code));
+        assertEquals(4, MoveCodec.srcCol(code));
+        assertEquals(0, MoveCodec.destRow(code));
+        assertEquals(5, MoveCodec.destCol(code));
+        assertEquals('Q', MoveCodec.promotionChar(code), "Promotion should be normalized to upper case.");
+        assertTrue(code <= 0xFFFF, "A move must fit in 16 bits.");
+        assertEquals("e7f8q", MoveCodec.toUci(code));
+    }
+
+    @Test
+    void encode_withoutPromotion_shouldReportBlankPromotion() {
+        int code = MoveCodec.encode(6, 4, 4, 4, ' ');
+
+        assertEquals(' ', MoveCodec.promotionChar(code));
+        assertNull(MoveCodec.promotionPiece(code, true));
+        assertEquals("e2e4", MoveCodec.toUci(code));
+    }
+
+    @Test
+    void encodeSanMoves_shouldUseTwoBytesPerMove() {
+        List<String> moves = List.of("e4", "e5", "Nf3", "Nc6", "Bb5", "a6");
+
+        byte[] data = MoveCodec.encodeSanMoves(moves);
+
+        assertEquals(12, data.length);
+        assertEquals(6, MoveCodec.moveCount(data));
+        assertEquals("g1f3", MoveCodec.toUci(MoveCodec.moveAt(data, 2)));
+    }
+
+    @Test
+    void replay_shouldReachSamePositionAsSanReplay() {
+        List<String> moves = List.of("e4", "e5", "Nf3", "Nc6", "Bc4", "Bc5", "O-O", "Nf6", "d4", "exd4", "e5", "d5");
+
+        Board sanBoard = new Board();
+        sanBoard.setupStandardBoard();
+        MoveInterpreter interpreter = new MoveInterpreter(sanBoard);
+        for (String move : moves) {
+            interpreter.interpretMove(move);
+        }
+
+        Board replayed = MoveCodec.replay(MoveCodec.encodeSanMoves(moves));
+
+        assertEquals(sanBoard.generateFen(), replayed.generateFen());
+    }
+
+    @Test
+    void replay_shouldHandleEnPassantAndPromotion() {
+        List<String> moves = List.of("e4", "d5", "e5", "f5", "exf6", "e6", "fxg7", "Ke7", "gxh8=N");
+
+        Board replayed = MoveCodec.replay(MoveCodec.encodeSanMoves(moves));
+
+        assertTrue(replayed.getPieceAt(0, 7) instanceof Knight && replayed.getPieceAt(0, 7).isWhite(),
+                "White should have promoted to a knight on h8.");
+        assertNull(replayed.getPieceAt(3, 5), "The pawn captured en passant should be gone from f5.");
+    }
+
+    @Test
+    void replay_shouldRejectIllegalMove() {
+        short[] codes = { (short) MoveCodec.encode(6, 4, 3, 4, ' ') }; // e2-e5 is not a pawn move
+
+        assertThrows(IllegalMoveException.class, () -> MoveCodec.replay(MoveCodec.toBytes(codes, 1)));
+    }
+}
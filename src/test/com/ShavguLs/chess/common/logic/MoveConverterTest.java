@@ -3,6 +3,9 @@ package com.ShavguLs.chess.common.logic;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class MoveConverterTest {
@@ -155,5 +158,32 @@ class MoveConverterTest {
             String notation = MoveConverter.convertMoveToNotation(knightB, 7, 1, 6, 3, board, false, false, false, false, null);
             assertEquals("Nbd2", notation);
         }
+    
+        @Test
+        void testNoDisambiguationWhenOtherPieceIsPinned() {
+            board.setPiece(7, 4, new King(true));    // Ke1
+            board.setPiece(6, 4, new Knight(true));  // Ne2, pinned by the rook on e8
+            board.setPiece(0, 4, new Rook(false));   // black Re8
+            board.setPiece(0, 0, new King(false));   // black Ka8
+            Knight knightB = new Knight(true);
+            board.setPiece(7, 1, knightB);           // Nb1
+
+            // Both knights could jump to c3, but Ne2 is pinned, so "Nc3" is enough.
+            String notation = MoveConverter.convertMoveToNotation(knightB, 7, 1, 5, 2, board, false, false, false, false, null);
+            assertEquals("Nc3", notation);
+        }
+
+        @Test
+        void testDisambiguationFromLegalMovesAfterMoveWasMade() {
+            Rook rookA = new Rook(true);
+            board.setPiece(7, 0, rookA); // Ra1
+            board.setPiece(7, 7, new Rook(true)); // Rh1
+            List<Integer> legalMoves = board.generateLegalMoves(true);
+
+            // Notation is generated after the board has executed the move, as GameSession does
+            board.attemptMove(7, 0, 7, 3, true);
+            String notation = MoveConverter.convertMoveToNotation(rookA, 7, 0, 7, 3, board, false, false, false, false, null, legalMoves);
+            assertEquals("Rad1", notation);
+        }
     }
-}
\ No newline at end of file
+}
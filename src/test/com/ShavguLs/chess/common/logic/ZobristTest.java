@@ -0,0 +1,48 @@
+package com.ShavguLs.chess.common.logic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZobristTest {
+
+    private Board play(List<String> moves) {
+        Board board = new Board();
+        board.setupStandardBoard();
+        MoveInterpreter interpreter = new MoveInterpreter(board);
+        for (String move : moves) {
+            interpreter.interpretMove(move);
+        }
+        return board;
+    }
+
+    @Test
+    void hash_shouldBeEqualForTranspositions() {
+        Board viaKnightFirst = play(List.of("Nf3", "d5", "d4"));
+        Board viaPawnFirst = play(List.of("d4", "d5", "Nf3"));
+
+        assertEquals(Zobrist.hash(viaKnightFirst), Zobrist.hash(viaPawnFirst));
+    }
+
+    @Test
+    void hash_shouldDependOnSideToMove() {
+        Board whiteToMove = new Board();
+        whiteToMove.loadFen("4k3/8/8/8/8/8/8/4K3 w");
+        Board blackToMove = new Board();
+        blackToMove.loadFen("4k3/8/8/8/8/8/8/4K3 b");
+
+        assertNotEquals(Zobrist.hash(whiteToMove), Zobrist.hash(blackToMove));
+    }
+
+    @Test
+    void hash_shouldMatchAfterFenRoundTrip() {
+        Board played = play(List.of("e4", "c5", "Nf3", "d6"));
+        Board loaded = new Board();
+        loaded.loadFen(played.generateFen());
+
+        assertEquals(Zobrist.hash(played), Zobrist.hash(loaded));
+        assertNotEquals(Zobrist.hash(played), Zobrist.hash(play(List.of("e4", "c5", "Nf3"))));
+    }
+}
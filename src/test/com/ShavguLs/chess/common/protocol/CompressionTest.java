@@ -0,0 +1,52 @@
+package com.ShavguLs.chess.common.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+
+    private static String gameList(int games) {
+        StringBuilder list = new StringBuilder("GAMES:");
+        for (int id = 1; id <= games; id++) {
+            if (id > 1) {
+                list.append('|');
+            }
+            list.append(id).append(",alice").append(id).append(",bob").append(id)
+                    .append(",White to move,00:05:00 / 00:04:58,5+0,1500,1520,0");
+        }
+        return list.toString();
+    }
+
+    @Test
+    void compressLine_shouldRoundTripALargeGameList() throws ProtocolException {
+        String list = gameList(50);
+
+        String compressed = Compression.compressLine(list);
+
+        assertTrue(compressed.startsWith(Compression.DEFLATED_PREFIX));
+        assertTrue(compressed.length() < list.length() / 3, "The list should shrink to under a third.");
+        assertEquals(list, Compression.decompressLine(compressed, 1 << 20));
+    }
+
+    @Test
+    void compressLine_shouldLeaveShortLinesAlone() throws ProtocolException {
+        String list = gameList(1);
+
+        assertEquals(list, Compression.compressLine(list));
+        assertEquals(list, Compression.decompressLine(list, 1 << 20));
+    }
+
+    @Test
+    void inflate_shouldRejectOversizedAndDamagedData() {
+        byte[] deflated = Compression.deflate(new byte[100_000]);
+        assertThrows(ProtocolException.class, () -> Compression.inflate(deflated, 10_000));
+
+        byte[] damaged = "not deflated at all".getBytes(StandardCharsets.UTF_8);
+        assertThrows(ProtocolException.class, () -> Compression.inflate(damaged, 10_000));
+        assertThrows(ProtocolException.class, () -> Compression.decompressLine("ZD:%%%", 10_000));
+    }
+}
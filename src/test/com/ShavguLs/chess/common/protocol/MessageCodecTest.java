@@ -0,0 +1,97 @@
+package com.ShavguLs.chess.common.protocol;
+
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    @Test
+    void read_shouldReturnEveryWrittenMessageInOrder() throws IOException {
+        List<Message> messages = List.of(
+                new Message.RequestNickname(),
+                new Message.Welcome(false, "Ana", "7.9f86d081884c7d65"),
+                new Message.MoveMade(1, MoveCodec.encode(6, 4, 4, 4, ' '), 0x8000_0000_0000_0001L),
+                new Message.ClockUpdate(600_000, 599_250, false, true),
+                new Message.InvalidMove("The move is illegal."),
+                new Message.GameOver("1-0 (Ana wins by checkmate)"),
+                new Message.FinalPgn("[Event \"Casual\"]\n\n1. e4 e5 *\n"),
+                new Message.ServerError("boom"),
+                new Message.SpectatorWelcome("Ana", "Bea"),
+                new Message.GameNotFound(),
+                new Message.Redirect("node2.local", 8889, "JOIN_GAME:3f2a9c:Ana"),
+                new Message.Nickname("Žofia"),
+                new Message.Move(MoveCodec.encode(1, 4, 0, 4, 'n')),
+                new Message.ResyncRequest());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Message message : messages) {
+            MessageCodec.write(out, message);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        for (Message message : messages) {
+            assertEquals(message, MessageCodec.read(in));
+        }
+        assertThrows(EOFException.class, () -> MessageCodec.read(in), "A closed stream should end with EOF.");
+    }
+
+    @Test
+    void snapshot_shouldCarryTheMoveList() throws IOException {
+        byte[] moves = MoveCodec.encodeSanMoves(List.of("e4", "e5", "Nf3"));
+
+        byte[] frame = MessageCodec.encode(new Message.Snapshot(moves));
+        Message decoded = MessageCodec.read(new DataInputStream(new ByteArrayInputStream(frame)));
+
+        assertArrayEquals(moves, ((Message.Snapshot) decoded).moves());
+    }
+
+    @Test
+    void encode_moveShouldBeFiveBytes() {
+        byte[] frame = MessageCodec.encode(new Message.Move(MoveCodec.encode(6, 4, 4, 4, ' ')));
+
+        assertEquals(5, frame.length);
+        assertEquals(3, ((frame[0] & 0xFF) << 8) | (frame[1] & 0xFF), "Length prefix should not count itself.");
+    }
+
+    @Test
+    void decode_shouldRejectUnknownAndTruncatedFrames() {
+        assertThrows(ProtocolException.class, () -> MessageCodec.decode(ByteBuffer.wrap(new byte[] { 99 })));
+
+        byte[] frame = MessageCodec.encode(new Message.SpectatorWelcome("Ana", "Bea"));
+        ByteBuffer truncated = ByteBuffer.wrap(frame, MessageCodec.LENGTH_BYTES, frame.length - MessageCodec.LENGTH_BYTES - 1);
+        assertThrows(ProtocolException.class, () -> MessageCodec.decode(truncated));
+    }
+
+    @Test
+    void compress_shouldShrinkALongPgnAndDecodeToTheSameMessage() throws IOException {
+        StringBuilder pgn = new StringBuilder("[Event \"Casual Game\"]\n[White \"Ana\"]\n[Black \"Bea\"]\n\n");
+        for (int move = 1; move <= 60; move++) {
+            pgn.append(move).append(". Nf3 Nf6 ").append(move).append(". Ng1 Ng8 ");
+        }
+        Message message = new Message.FinalPgn(pgn.toString());
+        byte[] frame = MessageCodec.encode(message);
+
+        byte[] compressed = MessageCodec.compress(frame);
+
+        assertTrue(compressed.length < frame.length / 2, "A repetitive PGN should compress well.");
+        assertEquals(message, MessageCodec.read(new DataInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    void compress_shouldLeaveSmallFramesAlone() {
+        byte[] frame = MessageCodec.encode(new Message.GameOver("Checkmate"));
+
+        assertSame(frame, MessageCodec.compress(frame));
+    }
+}
@@ -0,0 +1,93 @@
+package com.ShavguLs.chess.server;
+
+import com.ShavguLs.chess.common.logic.Board;
+import com.ShavguLs.chess.common.logic.MoveCodec;
+import com.ShavguLs.chess.common.logic.Zobrist;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionIndexTest {
+
+    private static final byte[] RUY = MoveCodec.encodeSanMoves(List.of("e4", "e5", "Nf3"));
+    private static final byte[] SICILIAN = MoveCodec.encodeSanMoves(List.of("e4", "c5"));
+    // Returns to the starting position at ply 4, then plays e4 from it
+    private static final byte[] KNIGHTS_BACK = MoveCodec.encodeSanMoves(List.of("Nf3", "Nf6", "Ng1", "Ng8", "e4"));
+
+    private static final List<PositionIndex.IndexedGame> GAMES = List.of(
+            new PositionIndex.IndexedGame(1, "1-0", RUY),
+            new PositionIndex.IndexedGame(2, "0-1", SICILIAN),
+            new PositionIndex.IndexedGame(3, "1/2-1/2", KNIGHTS_BACK));
+
+    private static long hashAfter(byte[] moves, int plies) {
+        Board board = new Board();
+        board.setupStandardBoard();
+        for (int ply = 0; ply < plies; ply++) {
+            assertTrue(MoveCodec.applyMove(board, MoveCodec.moveAt(moves, ply)));
+        }
+        return Zobrist.hash(board);
+    }
+
+    private static void deleteIndex(Path dir) throws IOException {
+        Files.deleteIfExists(dir.resolve("positions.idx"));
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * Builds with tiny runs and segments, so the merge and the segment mapping are both exercised.
+     */
+    private static PositionIndex buildSmallIndex(Path dir) throws IOException {
+        Path file = dir.resolve("positions.idx");
+        long entries = PositionIndex.build(GAMES.iterator(), file, 4);
+        assertEquals(4 + 3 + 6, entries, "Every position of every game, final ones included.");
+        return PositionIndex.open(file, 3);
+    }
+
+    @Test
+    void lookup_shouldCountGamesOnceButEveryVisitAsAContinuation() throws IOException {
+        Path dir = Files.createTempDirectory("position-index-test");
+        try (PositionIndex index = buildSmallIndex(dir)) {
+            PositionIndex.Stats start = index.lookup(hashAfter(RUY, 0));
+
+            assertEquals(3, start.games());
+            assertEquals(1, start.whiteWins());
+            assertEquals(1, start.draws());
+            assertEquals(1, start.blackWins());
+            assertEquals(List.of(1, 2, 3), start.sampleGameIds());
+            Map<Integer, Integer> continuations = start.continuations();
+            assertEquals(Integer.valueOf(3), continuations.get(MoveCodec.moveAt(RUY, 0)), "e4 in games 1, 2 and 3.");
+            assertEquals(Integer.valueOf(1), continuations.get(MoveCodec.moveAt(KNIGHTS_BACK, 0)));
+            assertEquals(Integer.valueOf(MoveCodec.moveAt(RUY, 0)), continuations.keySet().iterator().next(), "Most played first.");
+        } finally {
+            deleteIndex(dir);
+        }
+    }
+
+    @Test
+    void lookup_shouldFindPositionsAcrossSegmentsAndFinalPositions() throws IOException {
+        Path dir = Files.createTempDirectory("position-index-test");
+        try (PositionIndex index = buildSmallIndex(dir)) {
+            assertEquals(13, index.size());
+
+            PositionIndex.Stats afterE4 = index.lookup(hashAfter(RUY, 1));
+            assertEquals(3, afterE4.games(), "Game 3 ends in this position.");
+            assertEquals(Map.of(MoveCodec.moveAt(RUY, 1), 1, MoveCodec.moveAt(SICILIAN, 1), 1), afterE4.continuations());
+
+            PositionIndex.Stats ruyEnd = index.lookup(hashAfter(RUY, 3));
+            assertEquals(1, ruyEnd.games());
+            assertTrue(ruyEnd.continuations().isEmpty());
+            assertEquals(List.of(1), ruyEnd.sampleGameIds());
+
+            PositionIndex.Stats unknown = index.lookup(hashAfter(KNIGHTS_BACK, 1) ^ 1);
+            assertEquals(0, unknown.games());
+        } finally {
+            deleteIndex(dir);
+        }
+    }
+}